@@ -0,0 +1,124 @@
+package org.rtf.bench;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Creates the documents measured by {@link RtfBenchmark}. Each shape stresses
+ * another part of the reader and the formatter.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class BenchmarkDocuments {
+	/**
+	 * Paragraphs of text with hardly any formatting
+	 */
+	public static final String PLAIN = "plain";
+
+	/**
+	 * Output of word processors with many runs, fonts and colors
+	 */
+	public static final String STYLED = "styled";
+
+	/**
+	 * Paragraphs interleaved with PNG pictures
+	 */
+	public static final String IMAGES = "images";
+
+	/**
+	 * Groups nested a hundred levels deep
+	 */
+	public static final String NESTED = "nested";
+
+	/**
+	 * Cyrillic and Japanese text as \'hh and \\uN
+	 */
+	public static final String UNICODE = "unicode";
+
+	/**
+	 * Mixed content of the {@link RtfGenerator}
+	 */
+	public static final String GENERATED = "generated";
+
+	private static final String LOREM = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod "
+			+ "tempor incididunt ut labore et dolore magna aliqua. ";
+
+	private BenchmarkDocuments() {
+	}
+
+	/**
+	 * Creates a document.
+	 *
+	 * @param shape
+	 *            one of the shape constants
+	 * @param size
+	 *            approximate number of characters
+	 * @return RTF string
+	 */
+	public static String create(String shape, int size) {
+		if (shape.equals(GENERATED)) {
+			StringWriter writer = new StringWriter(size + 65536);
+			try {
+				new RtfGenerator(42).setSize(size).generate(writer);
+			} catch (IOException e) {
+				// A StringWriter never throws, so this cannot happen.
+				throw new UncheckedIOException(e);
+			}
+			return writer.toString();
+		}
+
+		StringBuilder rtf = new StringBuilder(size + 4096);
+		rtf.append("{\\rtf1\\ansi\\ansicpg1252\\deff0");
+		rtf.append("{\\fonttbl{\\f0\\fswiss\\fcharset0 Arial;}{\\f1\\froman\\fcharset0 Times New Roman;}");
+		rtf.append("{\\f2\\fnil\\fcharset204 Tahoma;}{\\f3\\fnil\\fcharset128 MS Mincho;}}\r\n");
+		rtf.append("{\\colortbl ;\\red0\\green0\\blue0;\\red192\\green80\\blue77;\\red31\\green73\\blue125;}\r\n");
+		rtf.append("{\\*\\generator Riched20 10.0.19041}\\viewkind4\\uc1\r\n");
+
+		int i = 0;
+		while (rtf.length() < size) {
+			switch (shape) {
+			case PLAIN:
+				rtf.append("\\pard\\f0\\fs22 ").append(LOREM).append(LOREM).append("\\par\r\n");
+				break;
+			case STYLED:
+				rtf.append("\\pard\\plain\\sa200\\sl276\\slmult1\\f0\\fs22\\lang1033 ");
+				rtf.append("{\\rtlch\\fcs1 \\af0\\ltrch\\fcs0 \\b\\f1\\fs24\\cf2\\insrsid").append(i).append(" Lorem }");
+				rtf.append("{\\rtlch\\fcs1 \\af0\\ltrch\\fcs0 \\i\\cf3\\insrsid").append(i).append(" ipsum dolor}");
+				rtf.append(" sit {\\ul amet}, \\cf1\\highlight").append(i % 4).append(" consectetur\\cf0\\highlight0 ");
+				rtf.append("{\\strike adipiscing} elit{\\super ").append(i % 10).append("}, sed\\fs").append(18 + i % 8);
+				rtf.append(" do\\fs22  {\\dn4 eiusmod} tempor\\par\r\n");
+				break;
+			case IMAGES:
+				rtf.append("\\pard\\f0\\fs22 ").append(LOREM).append("\\par\r\n");
+				rtf.append("{\\pict\\pngblip\\picw1000\\pich500\\picwgoal600\\pichgoal300\r\n");
+				rtf.append("89504e470d0a1a0a");
+				for (int j = 0; j < 64; j++) {
+					rtf.append("0123456789abcdeffedcba98765432100123456789abcdeffedcba9876543210\r\n");
+				}
+				rtf.append("}\\par\r\n");
+				break;
+			case NESTED:
+				for (int j = 0; j < 100; j++) {
+					rtf.append(j % 2 == 0 ? "{\\b " : "{\\i0 ");
+				}
+				rtf.append("Lorem ipsum");
+				for (int j = 0; j < 100; j++) {
+					rtf.append('}');
+				}
+				rtf.append("\\par\r\n");
+				break;
+			case UNICODE:
+				rtf.append("\\pard\\f2\\fs22 \\'cf\\'f0\\'e8\\'e2\\'e5\\'f2 \\'ec\\'e8\\'f0 ");
+				rtf.append("\\u1055?\\u1088?\\u1080?\\u1074?\\u1077?\\u1090? ");
+				rtf.append("\\f3 \\'82\\'a0\\'83\\'65\\'83\\'58\\'83\\'67 \\u12354?\\u12356?\\u12358?\\par\r\n");
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown shape: " + shape);
+			}
+			i++;
+		}
+		rtf.append('}');
+		return rtf.toString();
+	}
+}
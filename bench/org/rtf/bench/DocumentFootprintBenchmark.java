@@ -0,0 +1,79 @@
+package org.rtf.bench;
+
+import org.rtf.RtfDocument;
+import org.rtf.RtfGroup;
+import org.rtf.RtfParseException;
+import org.rtf.RtfReader;
+
+/**
+ * Compares the retained heap of the element tree with that of an
+ * {@link RtfDocument} for the same synthetic input. The source characters are
+ * counted for the document, because its texts refer to them.
+ *
+ * <pre>
+ * java -cp classes org.rtf.bench.DocumentFootprintBenchmark 1 4 16
+ * </pre>
+ *
+ * The arguments are input sizes in megabytes.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class DocumentFootprintBenchmark {
+	private static final String HEADER = "{\\rtf1\\ansi\\ansicpg1252\\deff0"
+			+ "{\\fonttbl{\\f0\\fswiss\\fcharset0 Arial;}{\\f1\\froman Times New Roman;}}\r\n"
+			+ "{\\colortbl ;\\red143\\green176\\blue140;}\r\n";
+	private static final String PARAGRAPH = "\\pard\\sa200\\sl276\\slmult1\\f0\\fs22 Lorem ipsum dolor sit amet, "
+			+ "{\\b consectetur} adipiscing elit, \\cf1 sed do\\cf0  eiusmod \\i tempor\\i0  incididunt "
+			+ "ut labore et dolore magna aliqua. Schr\\'f6er \\{x\\}\\par\r\n";
+
+	public static void main(String[] args) throws RtfParseException {
+		String[] sizes = args.length > 0 ? args : new String[] { "1", "4", "16" };
+
+		System.out.println("size [MB]  tree [MB]  document [MB]  ratio");
+		for (String size : sizes) {
+			char[] rtf = createDocument(Integer.parseInt(size) * 1024 * 1024);
+
+			long base = usedHeap();
+			RtfReader reader = new RtfReader();
+			reader.parse(rtf, 0, rtf.length);
+			RtfGroup root = reader.root;
+			long tree = usedHeap() - base;
+			if (root == null) {
+				throw new IllegalStateException();
+			}
+			reader = null;
+			root = null;
+
+			base = usedHeap();
+			RtfDocument document = RtfDocument.parse(rtf, 0, rtf.length);
+			long compact = usedHeap() - base + rtf.length * 2L;
+			if (document.size() == 0) {
+				throw new IllegalStateException();
+			}
+			document = null;
+
+			System.out.printf("%-10s %-10.1f %-14.1f %.1f%n", size, tree / 1048576.0, compact / 1048576.0,
+					(double) tree / compact);
+		}
+	}
+
+	private static char[] createDocument(int size) {
+		StringBuilder rtf = new StringBuilder(size + PARAGRAPH.length() * 2);
+		rtf.append(HEADER);
+		while (rtf.length() < size) {
+			rtf.append(PARAGRAPH);
+		}
+		rtf.append('}');
+		char[] chars = new char[rtf.length()];
+		rtf.getChars(0, chars.length, chars, 0);
+		return chars;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
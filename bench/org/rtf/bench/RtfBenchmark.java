@@ -0,0 +1,93 @@
+package org.rtf.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rtf.RtfGroup;
+import org.rtf.RtfHtml;
+import org.rtf.RtfParseException;
+import org.rtf.RtfPlainText;
+import org.rtf.RtfReader;
+
+/**
+ * Measures the throughput of parsing, formatting, both in one pass and the
+ * extraction of plain text for the document shapes of
+ * {@link BenchmarkDocuments}. The allocation rate is reported by the GC
+ * profiler:
+ *
+ * <pre>
+ * mvn -f bench/pom.xml package
+ * java -jar bench/target/benchmarks.jar -prof gc
+ * </pre>
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class RtfBenchmark {
+	@Param({ BenchmarkDocuments.PLAIN, BenchmarkDocuments.STYLED, BenchmarkDocuments.IMAGES,
+			BenchmarkDocuments.NESTED, BenchmarkDocuments.UNICODE, BenchmarkDocuments.GENERATED })
+	public String shape;
+
+	@Param({ "262144" })
+	public int size;
+
+	private String rtf;
+	private RtfGroup root;
+	private RtfReader reader;
+	private RtfHtml formatter;
+	private RtfPlainText extractor;
+	private StringBuilder html;
+
+	@Setup
+	public void setUp() throws RtfParseException {
+		rtf = BenchmarkDocuments.create(shape, size);
+		reader = new RtfReader();
+		reader.parse(rtf);
+		root = reader.root;
+		formatter = new RtfHtml();
+		extractor = new RtfPlainText();
+		html = new StringBuilder();
+	}
+
+	@Benchmark
+	public RtfGroup parse() throws RtfParseException {
+		reader.parse(rtf);
+		return reader.root;
+	}
+
+	@Benchmark
+	public int format() throws Exception {
+		html.setLength(0);
+		formatter.format(root, html, false);
+		return html.length();
+	}
+
+	@Benchmark
+	public int parseAndFormat() throws RtfParseException {
+		html.setLength(0);
+		reader.parse(rtf, formatter.handler(html, false));
+		return html.length();
+	}
+
+	@Benchmark
+	public int parseAndExtractText() throws RtfParseException {
+		html.setLength(0);
+		reader.parse(rtf, extractor.handler(html));
+		return html.length();
+	}
+}
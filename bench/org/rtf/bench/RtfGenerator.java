@@ -0,0 +1,402 @@
+package org.rtf.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic RTF documents for benchmarks and stress tests. The
+ * output only depends on the seed and the settings, so a document can be
+ * recreated instead of being stored. It is written in chunks while it is
+ * generated, so documents of any size take no memory:
+ *
+ * <pre>
+ * java -cp classes org.rtf.bench.RtfGenerator out.rtf 1024 42
+ * </pre>
+ *
+ * The arguments are the output file, the size in megabytes and the seed.
+ * <p>
+ * The documents contain font and color tables, styled runs with fonts, sizes,
+ * colors, sub- and superscript and vertical offsets, nested groups, \'hh
+ * characters in the code page of the current font, \\uN characters, special
+ * characters and escaped braces, pictures with hex data and pictures with
+ * binary data following \binN.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfGenerator {
+	private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+			"elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna",
+			"aliqua" };
+	private static final int[] CHARSETS = { 0, 204, 238, 128, 0, 2 };
+	private static final String[] FONT_NAMES = { "Arial", "Times New Roman", "Tahoma", "MS Mincho", "Calibri",
+			"Symbol" };
+	private static final int CHUNK_SIZE = 8192;
+
+	private final long seed;
+	private long size = 1024 * 1024;
+	private int maxDepth = 8;
+	private double styleChurn = 0.3;
+	private int fonts = 4;
+	private int colors = 8;
+	private double unicodeDensity = 0.05;
+	private double pictureRate = 0.02;
+	private double binaryRate = 0.01;
+	private int blobSize = 4096;
+
+	private Random random;
+	private Writer writer;
+	private StringBuilder chunk;
+	private long count;
+	private int depth;
+	private int font;
+
+	/**
+	 * Creates a new generator.
+	 *
+	 * @param seed
+	 *            seed of the random numbers; the same seed and settings
+	 *            always generate the same document
+	 */
+	public RtfGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "generated.rtf";
+		long megabytes = args.length > 1 ? Long.parseLong(args[1]) : 16;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+		RtfGenerator generator = new RtfGenerator(seed).setSize(megabytes * 1024 * 1024);
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)) {
+			generator.generate(out);
+		}
+	}
+
+	/**
+	 * Sets the approximate size of the documents.
+	 *
+	 * @param size
+	 *            number of characters; the document ends with the first
+	 *            paragraph beyond it
+	 * @return this generator
+	 */
+	public RtfGenerator setSize(long size) {
+		this.size = size;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum nesting depth of groups in the body.
+	 *
+	 * @param maxDepth
+	 *            number of groups below the root group
+	 * @return this generator
+	 */
+	public RtfGenerator setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Sets how often the style changes.
+	 *
+	 * @param styleChurn
+	 *            probability of a formatting control word before each word
+	 * @return this generator
+	 */
+	public RtfGenerator setStyleChurn(double styleChurn) {
+		this.styleChurn = styleChurn;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the font table.
+	 *
+	 * @param fonts
+	 *            number of fonts
+	 * @return this generator
+	 */
+	public RtfGenerator setFonts(int fonts) {
+		this.fonts = Math.max(1, fonts);
+		return this;
+	}
+
+	/**
+	 * Sets the size of the color table.
+	 *
+	 * @param colors
+	 *            number of colors besides the default color
+	 * @return this generator
+	 */
+	public RtfGenerator setColors(int colors) {
+		this.colors = Math.max(1, colors);
+		return this;
+	}
+
+	/**
+	 * Sets the share of words written as \'hh or \\uN characters.
+	 *
+	 * @param unicodeDensity
+	 *            probability of a non-Latin word
+	 * @return this generator
+	 */
+	public RtfGenerator setUnicodeDensity(double unicodeDensity) {
+		this.unicodeDensity = unicodeDensity;
+		return this;
+	}
+
+	/**
+	 * Sets how often pictures with hex data occur.
+	 *
+	 * @param pictureRate
+	 *            probability of a picture after each paragraph
+	 * @return this generator
+	 */
+	public RtfGenerator setPictureRate(double pictureRate) {
+		this.pictureRate = pictureRate;
+		return this;
+	}
+
+	/**
+	 * Sets how often pictures with binary data occur.
+	 *
+	 * @param binaryRate
+	 *            probability of a \binN picture after each paragraph
+	 * @return this generator
+	 */
+	public RtfGenerator setBinaryRate(double binaryRate) {
+		this.binaryRate = binaryRate;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the picture data.
+	 *
+	 * @param blobSize
+	 *            number of bytes per picture
+	 * @return this generator
+	 */
+	public RtfGenerator setBlobSize(int blobSize) {
+		this.blobSize = blobSize;
+		return this;
+	}
+
+	/**
+	 * Generates a document. Binary data consists of characters between 0
+	 * and 255, so the writer should encode them as ISO-8859-1.
+	 *
+	 * @param out
+	 *            receiver of the document
+	 * @throws IOException
+	 *             is thrown if the writer fails
+	 */
+	public void generate(Writer out) throws IOException {
+		random = new Random(seed);
+		writer = out;
+		chunk = new StringBuilder(CHUNK_SIZE + 1024);
+		count = 0;
+		depth = 0;
+		font = 0;
+
+		writeHeader();
+		while (count + chunk.length() < size) {
+			writeParagraph();
+			if (random.nextDouble() < pictureRate) {
+				writePicture();
+			}
+			if (random.nextDouble() < binaryRate) {
+				writeBinaryPicture();
+			}
+			flushChunk(false);
+		}
+		chunk.append('}');
+		flushChunk(true);
+		writer = null;
+		chunk = null;
+	}
+
+	private void writeHeader() {
+		chunk.append("{\\rtf1\\ansi\\ansicpg1252\\deff0{\\fonttbl");
+		for (int i = 0; i < fonts; i++) {
+			int n = i % CHARSETS.length;
+			chunk.append("{\\f").append(i).append("\\fnil\\fcharset").append(CHARSETS[n]).append(' ')
+					.append(FONT_NAMES[n]);
+			if (i >= CHARSETS.length) {
+				chunk.append(' ').append(i);
+			}
+			chunk.append(";}");
+		}
+		chunk.append("}\r\n{\\colortbl ;");
+		for (int i = 0; i < colors; i++) {
+			chunk.append("\\red").append(random.nextInt(256)).append("\\green").append(random.nextInt(256))
+					.append("\\blue").append(random.nextInt(256)).append(';');
+		}
+		chunk.append("}\r\n{\\*\\generator RtfGenerator}\\viewkind4\\uc1\r\n");
+	}
+
+	private void writeParagraph() {
+		chunk.append("\\pard\\sa200\\sl276\\slmult1");
+		setFont(random.nextInt(fonts));
+		chunk.append("\\fs22 ");
+
+		int words = 20 + random.nextInt(60);
+		for (int i = 0; i < words; i++) {
+			if (random.nextDouble() < styleChurn) {
+				writeStyle();
+			}
+			if (depth < maxDepth && random.nextInt(10) == 0) {
+				chunk.append('{');
+				depth++;
+			} else if (depth > 0 && random.nextInt(8) == 0) {
+				chunk.append('}');
+				depth--;
+				// The font of the enclosing group is not tracked.
+				setFont(font);
+				chunk.append(' ');
+			}
+
+			if (random.nextDouble() < unicodeDensity) {
+				writeNonLatinWord();
+			} else {
+				writeWord();
+			}
+		}
+
+		while (depth > 0) {
+			chunk.append('}');
+			depth--;
+		}
+		chunk.append("\\par\r\n");
+	}
+
+	private void writeStyle() {
+		switch (random.nextInt(14)) {
+		case 0:
+			chunk.append(random.nextBoolean() ? "\\b" : "\\b0");
+			break;
+		case 1:
+			chunk.append(random.nextBoolean() ? "\\i" : "\\i0");
+			break;
+		case 2:
+			chunk.append(random.nextBoolean() ? "\\ul" : "\\ulnone");
+			break;
+		case 3:
+			chunk.append(random.nextBoolean() ? "\\strike" : "\\strike0");
+			break;
+		case 4:
+			setFont(random.nextInt(fonts));
+			break;
+		case 5:
+			chunk.append("\\fs").append(16 + 2 * random.nextInt(12));
+			break;
+		case 6:
+			chunk.append("\\cf").append(random.nextInt(colors + 1));
+			break;
+		case 7:
+			chunk.append("\\highlight").append(random.nextInt(colors + 1));
+			break;
+		case 8:
+			chunk.append(random.nextBoolean() ? "\\sub" : "\\super");
+			break;
+		case 9:
+			chunk.append("\\nosupersub");
+			break;
+		case 10:
+			chunk.append(random.nextBoolean() ? "\\dn" : "\\up").append(2 + random.nextInt(6));
+			break;
+		case 11:
+			chunk.append("\\plain");
+			font = 0;
+			break;
+		case 12:
+			chunk.append(random.nextBoolean() ? "\\~" : "\\tab");
+			break;
+		default:
+			chunk.append(random.nextBoolean() ? "\\{" : "\\}");
+			break;
+		}
+		chunk.append(' ');
+	}
+
+	private void setFont(int newFont) {
+		font = newFont;
+		chunk.append("\\f").append(font);
+	}
+
+	private void writeWord() {
+		chunk.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+	}
+
+	private void writeNonLatinWord() {
+		int length = 2 + random.nextInt(6);
+		switch (CHARSETS[font % CHARSETS.length]) {
+		case 204:
+		case 238:
+			// Cyrillic letters of code page 1251 or Latin letters with
+			// diacritics of code page 1250
+			for (int i = 0; i < length; i++) {
+				appendHex(0xc0 + random.nextInt(64));
+			}
+			break;
+		case 128:
+			// Hiragana of code page 932, which are double-byte characters
+			for (int i = 0; i < length; i++) {
+				appendHex(0x82);
+				appendHex(0x9f + random.nextInt(83));
+			}
+			break;
+		default:
+			// Greek, Cyrillic, CJK or Hangul as \\uN with a fallback
+			int[] starts = { 0x391, 0x410, 0x4e00, 0xac00 };
+			int start = starts[random.nextInt(starts.length)];
+			for (int i = 0; i < length; i++) {
+				chunk.append("\\u").append(start + random.nextInt(32)).append('?');
+			}
+			break;
+		}
+		chunk.append(' ');
+	}
+
+	private void appendHex(int b) {
+		chunk.append("\\'").append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+	}
+
+	private void writePicture() throws IOException {
+		chunk.append("{\\pict\\pngblip\\picw").append(100 + random.nextInt(1000)).append("\\pich")
+				.append(100 + random.nextInt(1000)).append("\\picwgoal").append(1500 + random.nextInt(4500))
+				.append("\\pichgoal").append(1500 + random.nextInt(4500)).append("\r\n");
+		chunk.append("89504e470d0a1a0a");
+		for (int i = 8; i < blobSize; i++) {
+			int b = random.nextInt(256);
+			chunk.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+			if (i % 64 == 63) {
+				chunk.append("\r\n");
+			}
+			flushChunk(false);
+		}
+		chunk.append("}\r\n");
+	}
+
+	private void writeBinaryPicture() throws IOException {
+		chunk.append("{\\pict\\wmetafile8\\picw").append(100 + random.nextInt(1000)).append("\\pich")
+				.append(100 + random.nextInt(1000)).append("\\bin").append(blobSize).append(' ');
+		for (int i = 0; i < blobSize; i++) {
+			// Braces and backslashes are part of the data here.
+			chunk.append((char) random.nextInt(256));
+			flushChunk(false);
+		}
+		chunk.append("}\r\n");
+	}
+
+	private void flushChunk(boolean force) throws IOException {
+		if (force || chunk.length() >= CHUNK_SIZE) {
+			writer.append(chunk);
+			count += chunk.length();
+			chunk.setLength(0);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.rtf.bench;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import org.rtf.RtfLexer;
+
+/**
+ * Tokenizes synthetic RTF streams of several hundred megabytes and reports
+ * throughput and peak heap usage. As the lexer only keeps one buffer, the
+ * peak heap stays the same for all input sizes, which can also be checked by
+ * running with a small heap:
+ *
+ * <pre>
+ * java -Xmx32m -cp classes org.rtf.bench.StreamingParseBenchmark 100 200 400
+ * </pre>
+ *
+ * The arguments are input sizes in megabytes.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class StreamingParseBenchmark {
+	public static void main(String[] args) throws IOException {
+		String[] sizes = args.length > 0 ? args : new String[] { "100", "200", "400" };
+
+		System.out.println("size [MB]  tokens      time [ms]  throughput [MB/s]  peak heap [MB]");
+		for (String size : sizes) {
+			long bytes = Long.parseLong(size) * 1024 * 1024;
+
+			System.gc();
+			resetPeakHeap();
+
+			long start = System.nanoTime();
+			RtfLexer lexer = new RtfLexer(new SyntheticReader(bytes));
+			long tokens = 0;
+			while (lexer.next() != RtfLexer.END) {
+				tokens++;
+			}
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			System.out.printf("%-10s %-11d %-10d %-18.1f %.1f%n", size, tokens, millis,
+					bytes / 1048576.0 / Math.max(millis, 1) * 1000, peakHeap() / 1048576.0);
+		}
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Produces a styled document of the requested size without holding it in
+	 * memory.
+	 */
+	private static class SyntheticReader extends Reader {
+		private static final char[] HEADER = ("{\\rtf1\\ansi\\ansicpg1252\\deff0"
+				+ "{\\fonttbl{\\f0\\fswiss\\fcharset0 Arial;}{\\f1\\froman Times New Roman;}}\r\n"
+				+ "{\\colortbl ;\\red143\\green176\\blue140;}\r\n").toCharArray();
+		private static final char[] PARAGRAPH = ("\\pard\\sa200\\sl276\\slmult1\\f0\\fs22 Lorem ipsum dolor sit amet, "
+				+ "{\\b consectetur} adipiscing elit, \\cf1 sed do\\cf0  eiusmod \\i tempor\\i0  incididunt "
+				+ "ut labore et dolore magna aliqua. Schr\\'f6er \\{x\\}\\par\r\n").toCharArray();
+		private static final char[] FOOTER = "}".toCharArray();
+
+		private final long size;
+		private long written;
+
+		SyntheticReader(long size) {
+			this.size = size;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			int n = 0;
+			while (n < len) {
+				char[] part;
+				long partPos;
+				long sectionLeft;
+				if (written < HEADER.length) {
+					part = HEADER;
+					partPos = written;
+					sectionLeft = HEADER.length - written;
+				} else if (written < HEADER.length + size) {
+					part = PARAGRAPH;
+					partPos = (written - HEADER.length) % PARAGRAPH.length;
+					sectionLeft = HEADER.length + size - written;
+				} else if (written < HEADER.length + size + FOOTER.length) {
+					part = FOOTER;
+					partPos = written - HEADER.length - size;
+					sectionLeft = FOOTER.length - partPos;
+				} else {
+					break;
+				}
+				int count = (int) Math.min(Math.min(len - n, part.length - partPos), sectionLeft);
+				System.arraycopy(part, (int) partPos, cbuf, off + n, count);
+				n += count;
+				written += count;
+			}
+			return n > 0 ? n : -1;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.rtf.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rtf.RtfHtml;
+import org.rtf.RtfParseException;
+import org.rtf.RtfReader;
+
+/**
+ * Compares the size of complete HTML pages written with inline styles and
+ * with CSS classes. The arguments are RTF files or directories of a corpus:
+ *
+ * <pre>
+ * java -cp classes org.rtf.bench.StyleClassSizeBenchmark corpus/
+ * </pre>
+ *
+ * Without arguments, a synthetic document is measured.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class StyleClassSizeBenchmark {
+	private static final String HEADER = "{\\rtf1\\ansi\\ansicpg1252\\deff0"
+			+ "{\\fonttbl{\\f0\\fswiss\\fcharset0 Arial;}{\\f1\\froman Times New Roman;}}\r\n"
+			+ "{\\colortbl ;\\red143\\green176\\blue140;}\r\n";
+	private static final String PARAGRAPH = "\\pard\\sa200\\sl276\\slmult1\\f0\\fs22 Lorem ipsum dolor sit amet, "
+			+ "{\\b consectetur} adipiscing elit, \\cf1 sed do\\cf0  eiusmod \\i tempor\\i0  incididunt "
+			+ "ut labore et dolore magna aliqua. {\\f1 Schr\\'f6er}\\par\r\n";
+
+	public static void main(String[] args) throws RtfParseException {
+		List<File> files = new ArrayList<>();
+		for (String arg : args) {
+			collect(new File(arg), files);
+		}
+
+		long inlineTotal = 0;
+		long classTotal = 0;
+		System.out.println("inline [KB]  classes [KB]  reduction  file");
+		if (files.isEmpty()) {
+			StringBuilder rtf = new StringBuilder(HEADER);
+			for (int i = 0; i < 1000; i++) {
+				rtf.append(PARAGRAPH);
+			}
+			rtf.append('}');
+			RtfReader reader = new RtfReader();
+			reader.parse(rtf.toString());
+			long[] sizes = measure(reader);
+			print(sizes[0], sizes[1], "(synthetic)");
+			return;
+		}
+
+		for (File file : files) {
+			RtfReader reader = new RtfReader();
+			reader.parse(file);
+			long[] sizes = measure(reader);
+			print(sizes[0], sizes[1], file.getPath());
+			inlineTotal += sizes[0];
+			classTotal += sizes[1];
+		}
+		print(inlineTotal, classTotal, "(total)");
+	}
+
+	private static long[] measure(RtfReader reader) {
+		RtfHtml formatter = new RtfHtml();
+		long inline = formatter.format(reader.root, true).length();
+		formatter.setStyleClasses(true);
+		long classes = formatter.format(reader.root, true).length();
+		return new long[] { inline, classes };
+	}
+
+	private static void print(long inline, long classes, String name) {
+		System.out.printf("%-12.1f %-13.1f %-10s %s%n", inline / 1024.0, classes / 1024.0,
+				String.format("%.0f%%", 100.0 - 100.0 * classes / Math.max(inline, 1)), name);
+	}
+
+	private static void collect(File file, List<File> files) {
+		File[] children = file.listFiles();
+		if (children == null) {
+			if (file.getName().toLowerCase().endsWith(".rtf")) {
+				files.add(file);
+			}
+			return;
+		}
+		for (File child : children) {
+			collect(child, files);
+		}
+	}
+}
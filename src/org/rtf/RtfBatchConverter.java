@@ -0,0 +1,367 @@
+package org.rtf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class converts many documents in parallel with an
+ * {@link RtfConverter}. The documents are converted on a given executor, e.g.
+ * a {@link java.util.concurrent.ForkJoinPool} or an executor of virtual
+ * threads, and the results are passed to a {@link Sink}:
+ *
+ * <pre>
+ * RtfBatchConverter batch = new RtfBatchConverter(converter, ForkJoinPool.commonPool(), 64);
+ * RtfBatchConverter.Statistics statistics = batch.convert(directory, sink);
+ * </pre>
+ *
+ * The sources are collected and sorted by size first, so that the largest
+ * documents are started first and do not delay the end of the batch. Only a
+ * limited number of documents is converted or waiting for the executor at
+ * once, which bounds the memory taken by their results. A document that
+ * cannot be converted is reported to the sink, and the batch continues.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfBatchConverter {
+	private final RtfConverter converter;
+	private final Executor executor;
+	private final int maxInFlight;
+
+	/**
+	 * Creates a new batch converter.
+	 *
+	 * @param converter
+	 *            converter used for all documents
+	 * @param executor
+	 *            executor running the conversions
+	 * @param maxInFlight
+	 *            maximum number of documents that are converted or waiting
+	 *            for the executor at once
+	 */
+	public RtfBatchConverter(RtfConverter converter, Executor executor, int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one document has to be in flight.");
+		}
+		this.converter = converter;
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Converts all RTF files of a directory tree, i.e. all files ending with
+	 * ".rtf" regardless of case.
+	 *
+	 * @param directory
+	 *            root of the directory tree
+	 * @param sink
+	 *            receiver of the results
+	 * @return statistics of the batch
+	 * @throws IOException
+	 *             is thrown if the directory tree cannot be read
+	 * @throws InterruptedException
+	 *             is thrown if the thread is interrupted while waiting for
+	 *             the conversions
+	 */
+	public Statistics convert(Path directory, Sink<Path> sink) throws IOException, InterruptedException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			return convert(paths.filter(Files::isRegularFile)
+					.filter(path -> path.getFileName().toString().toLowerCase().endsWith(".rtf")), sink);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Converts RTF files.
+	 *
+	 * @param paths
+	 *            files to convert
+	 * @param sink
+	 *            receiver of the results
+	 * @return statistics of the batch
+	 * @throws InterruptedException
+	 *             is thrown if the thread is interrupted while waiting for
+	 *             the conversions
+	 */
+	public Statistics convert(Stream<Path> paths, Sink<Path> sink) throws InterruptedException {
+		return convert(paths.collect(Collectors.toList()), sink);
+	}
+
+	/**
+	 * Converts RTF files.
+	 *
+	 * @param paths
+	 *            files to convert
+	 * @param sink
+	 *            receiver of the results
+	 * @return statistics of the batch
+	 * @throws InterruptedException
+	 *             is thrown if the thread is interrupted while waiting for
+	 *             the conversions
+	 */
+	public Statistics convert(Iterable<Path> paths, Sink<Path> sink) throws InterruptedException {
+		List<Job<Path>> jobs = new ArrayList<>();
+		for (Path path : paths) {
+			long size;
+			try {
+				size = Files.size(path);
+			} catch (IOException e) {
+				// The error is reported when the file is converted.
+				size = 0;
+			}
+			jobs.add(new Job<>(path, size, () -> {
+				StringBuilder out = new StringBuilder();
+				converter.convert(path, out);
+				return out.toString();
+			}));
+		}
+		return run(jobs, sink);
+	}
+
+	/**
+	 * Converts RTF strings, e.g. the rows of a database table.
+	 *
+	 * @param sources
+	 *            rich texts by an identifier that is passed to the sink
+	 * @param sink
+	 *            receiver of the results
+	 * @param <K>
+	 *            type of the identifiers
+	 * @return statistics of the batch
+	 * @throws InterruptedException
+	 *             is thrown if the thread is interrupted while waiting for
+	 *             the conversions
+	 */
+	public <K> Statistics convertStrings(Map<K, String> sources, Sink<K> sink) throws InterruptedException {
+		List<Job<K>> jobs = new ArrayList<>();
+		for (Map.Entry<K, String> entry : sources.entrySet()) {
+			String rtf = entry.getValue();
+			jobs.add(new Job<>(entry.getKey(), rtf.length(), () -> converter.convert(rtf)));
+		}
+		return run(jobs, sink);
+	}
+
+	/**
+	 * Runs the jobs from the largest to the smallest document.
+	 *
+	 * @param jobs
+	 *            documents to convert
+	 * @param sink
+	 *            receiver of the results
+	 * @param <K>
+	 *            type of the identifiers
+	 * @return statistics of the batch
+	 * @throws InterruptedException
+	 *             is thrown if the thread is interrupted while waiting for
+	 *             the conversions
+	 */
+	private <K> Statistics run(List<Job<K>> jobs, Sink<K> sink) throws InterruptedException {
+		Collections.sort(jobs, Comparator.comparingLong((Job<K> job) -> job.size).reversed());
+
+		Statistics statistics = new Statistics();
+		Semaphore permits = new Semaphore(maxInFlight);
+		for (Job<K> job : jobs) {
+			permits.acquire();
+			try {
+				executor.execute(() -> {
+					try {
+						job.run(sink, statistics);
+					} finally {
+						permits.release();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				permits.release();
+				statistics.failures.incrementAndGet();
+				sink.failed(job.source, e);
+			}
+		}
+
+		// Wait for the last documents.
+		permits.acquire(maxInFlight);
+		permits.release(maxInFlight);
+		statistics.elapsedNanos = System.nanoTime() - statistics.startNanos;
+		return statistics;
+	}
+
+	/**
+	 * This interface receives the results of a batch. Its methods are called
+	 * by the threads of the executor, possibly at once.
+	 *
+	 * @param <K>
+	 *            type of the document identifiers
+	 */
+	public interface Sink<K> {
+		/**
+		 * Receives a converted document.
+		 *
+		 * @param source
+		 *            identifier of the document
+		 * @param html
+		 *            HTML string
+		 * @throws IOException
+		 *             is thrown if the HTML cannot be stored; the document is
+		 *             then reported as failed
+		 */
+		void converted(K source, String html) throws IOException;
+
+		/**
+		 * Receives the error of a document that could not be converted.
+		 *
+		 * @param source
+		 *            identifier of the document
+		 * @param error
+		 *            cause of the failure
+		 */
+		void failed(K source, Exception error);
+	}
+
+	/**
+	 * This class holds the statistics of a batch.
+	 */
+	public static final class Statistics {
+		private final AtomicLong documents = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong inputSize = new AtomicLong();
+		private final AtomicLong outputSize = new AtomicLong();
+		private final long startNanos = System.nanoTime();
+		private long elapsedNanos;
+
+		private Statistics() {
+		}
+
+		/**
+		 * Gets the number of converted documents.
+		 *
+		 * @return number of documents passed to the sink
+		 */
+		public long getDocuments() {
+			return documents.get();
+		}
+
+		/**
+		 * Gets the number of failed documents.
+		 *
+		 * @return number of errors passed to the sink
+		 */
+		public long getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * Gets the size of the converted documents.
+		 *
+		 * @return number of bytes or characters of the sources
+		 */
+		public long getInputSize() {
+			return inputSize.get();
+		}
+
+		/**
+		 * Gets the size of the results.
+		 *
+		 * @return number of HTML characters
+		 */
+		public long getOutputSize() {
+			return outputSize.get();
+		}
+
+		/**
+		 * Gets the duration of the batch.
+		 *
+		 * @return wall-clock time in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return elapsedNanos / 1000000;
+		}
+
+		/**
+		 * Gets the throughput in documents.
+		 *
+		 * @return converted documents per second
+		 */
+		public double getDocumentsPerSecond() {
+			return elapsedNanos > 0 ? documents.get() * 1e9 / elapsedNanos : 0;
+		}
+
+		/**
+		 * Gets the throughput in bytes.
+		 *
+		 * @return megabytes (or million characters) of sources per second
+		 */
+		public double getMegabytesPerSecond() {
+			return elapsedNanos > 0 ? inputSize.get() / 1048576.0 * 1e9 / elapsedNanos : 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("%d documents, %d failures, %d ms, %.1f documents/s, %.1f MB/s", getDocuments(),
+					getFailures(), getElapsedMillis(), getDocumentsPerSecond(), getMegabytesPerSecond());
+		}
+	}
+
+	/**
+	 * This interface converts a single document.
+	 */
+	private interface Conversion {
+		String convert() throws RtfParseException;
+	}
+
+	/**
+	 * This class holds a document of a batch.
+	 *
+	 * @param <K>
+	 *            type of the identifier
+	 */
+	private static class Job<K> {
+		private final K source;
+		private final long size;
+		private final Conversion conversion;
+
+		Job(K source, long size, Conversion conversion) {
+			this.source = source;
+			this.size = size;
+			this.conversion = conversion;
+		}
+
+		void run(Sink<K> sink, Statistics statistics) {
+			String html;
+			try {
+				html = conversion.convert();
+			} catch (RtfParseException | RuntimeException e) {
+				statistics.failures.incrementAndGet();
+				sink.failed(source, e);
+				return;
+			}
+
+			try {
+				sink.converted(source, html);
+			} catch (IOException | RuntimeException e) {
+				statistics.failures.incrementAndGet();
+				sink.failed(source, e);
+				return;
+			}
+			statistics.documents.incrementAndGet();
+			statistics.inputSize.addAndGet(size);
+			statistics.outputSize.addAndGet(html.length());
+		}
+	}
+}
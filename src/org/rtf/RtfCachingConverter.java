@@ -0,0 +1,459 @@
+package org.rtf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class caches the results of an {@link RtfConverter}, so that documents
+ * that occur again and again, e.g. signatures and templates, are only
+ * converted once:
+ *
+ * <pre>
+ * RtfCachingConverter cache = new RtfCachingConverter(converter, 64 * 1024 * 1024, directory);
+ * String html = cache.convert(rtf);
+ * </pre>
+ *
+ * The results are found by a 128-bit hash (MurmurHash3) of the document and
+ * the options of the converter. A file and a string with the same characters
+ * share their result. The results are kept in memory up to a number of bytes,
+ * and the least recently used results are evicted beyond it. Optionally, the results
+ * are also stored as files in a local directory, which survive evictions and
+ * restarts. Files are written to a temporary file first and then moved, so a
+ * file never contains half a result. The directory is not cleaned up by the
+ * cache.
+ * <p>
+ * If several threads convert the same document at once, only one of them
+ * converts it and the others wait for its result. The cache can be used by
+ * any number of threads at once.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfCachingConverter {
+	// Approximate size of a map entry and its strings besides the characters
+	private static final int ENTRY_OVERHEAD = 128;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final int BUFFER_SIZE = 8192;
+	// Forms in which documents are hashed
+	private static final byte BYTES = 0;
+	private static final byte CHARS = 1;
+
+	private final RtfConverter converter;
+	private final long maxMemorySize;
+	private final Path directory;
+	private final byte[] options;
+	private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private final ConcurrentHashMap<String, CompletableFuture<String>> running = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private long memorySize;
+
+	/**
+	 * Creates a new cache that keeps the results in memory only.
+	 *
+	 * @param converter
+	 *            converter of the documents that are not cached
+	 * @param maxMemorySize
+	 *            maximum number of bytes taken by the results in memory
+	 */
+	public RtfCachingConverter(RtfConverter converter, long maxMemorySize) {
+		this(converter, maxMemorySize, null);
+	}
+
+	/**
+	 * Creates a new cache that keeps the results in memory and in a
+	 * directory.
+	 *
+	 * @param converter
+	 *            converter of the documents that are not cached
+	 * @param maxMemorySize
+	 *            maximum number of bytes taken by the results in memory
+	 * @param directory
+	 *            existing local directory for the results or {@code null}
+	 */
+	public RtfCachingConverter(RtfConverter converter, long maxMemorySize, Path directory) {
+		this.converter = converter;
+		this.maxMemorySize = maxMemorySize;
+		this.directory = directory;
+		options = converter.getOptions().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Converts RTF into HTML or gets the result of an earlier conversion.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public String convert(String rtfSource) throws RtfParseException {
+		return get(key(rtfSource), () -> converter.convert(rtfSource));
+	}
+
+	/**
+	 * Converts RTF into HTML or gets the result of an earlier conversion. The
+	 * file is read twice on a miss, first to find the result and then by the
+	 * memory-mapped reader of the converter.
+	 *
+	 * @param rtfPath
+	 *            local file containing the rich text
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings or the
+	 *             file cannot be read
+	 */
+	public String convert(Path rtfPath) throws RtfParseException {
+		return get(key(rtfPath), () -> {
+			StringBuilder out = new StringBuilder();
+			converter.convert(rtfPath, out);
+			return out.toString();
+		});
+	}
+
+	/**
+	 * Removes all results from memory. The files in the directory are kept.
+	 */
+	public void clear() {
+		synchronized (memory) {
+			memory.clear();
+			memorySize = 0;
+		}
+	}
+
+	/**
+	 * Gets the number of results found in memory.
+	 *
+	 * @return number of hits in memory
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of results found in the directory.
+	 *
+	 * @return number of hits in the directory
+	 */
+	public long getDiskHits() {
+		return diskHits.sum();
+	}
+
+	/**
+	 * Gets the number of conversions.
+	 *
+	 * @return number of documents that were converted
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the number of requests that waited for the conversion of another
+	 * thread.
+	 *
+	 * @return number of coalesced requests
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Gets the number of results evicted from memory.
+	 *
+	 * @return number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Gets the size of the results in memory.
+	 *
+	 * @return approximate number of bytes
+	 */
+	public long getMemorySize() {
+		synchronized (memory) {
+			return memorySize;
+		}
+	}
+
+	/**
+	 * Gets a result from memory, from the directory or from a conversion.
+	 *
+	 * @param key
+	 *            hash of the document
+	 * @param conversion
+	 *            conversion of the document
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if the document cannot be converted
+	 */
+	private String get(String key, Conversion conversion) throws RtfParseException {
+		String html;
+		synchronized (memory) {
+			html = memory.get(key);
+		}
+		if (html != null) {
+			hits.increment();
+			return html;
+		}
+
+		CompletableFuture<String> future = new CompletableFuture<>();
+		CompletableFuture<String> other = running.putIfAbsent(key, future);
+		if (other != null) {
+			coalesced.increment();
+			try {
+				return other.join();
+			} catch (CompletionException e) {
+				// Throw the same exception as the converting thread.
+				Throwable cause = e.getCause();
+				if (cause instanceof RtfParseException) {
+					throw (RtfParseException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw e;
+			}
+		}
+
+		try {
+			// Another thread may have finished the same document in the
+			// meantime.
+			synchronized (memory) {
+				html = memory.get(key);
+			}
+			if (html != null) {
+				hits.increment();
+				future.complete(html);
+				return html;
+			}
+
+			html = read(key);
+			if (html != null) {
+				diskHits.increment();
+			} else {
+				misses.increment();
+				html = conversion.convert();
+				write(key, html);
+			}
+			put(key, html);
+			future.complete(html);
+			return html;
+		} catch (Throwable e) {
+			// Waiting threads must also be released by errors like
+			// StackOverflowError.
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			running.remove(key, future);
+		}
+	}
+
+	/**
+	 * Puts a result into memory and evicts the least recently used results
+	 * beyond the maximum size.
+	 *
+	 * @param key
+	 *            hash of the document
+	 * @param html
+	 *            HTML string
+	 */
+	private void put(String key, String html) {
+		long size = size(key, html);
+		if (size > maxMemorySize) {
+			return;
+		}
+		synchronized (memory) {
+			String old = memory.put(key, html);
+			if (old != null) {
+				memorySize -= size(key, old);
+			}
+			memorySize += size;
+
+			Iterator<Map.Entry<String, String>> iterator = memory.entrySet().iterator();
+			while (memorySize > maxMemorySize) {
+				Map.Entry<String, String> eldest = iterator.next();
+				memorySize -= size(eldest.getKey(), eldest.getValue());
+				iterator.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * Reads a result from the directory.
+	 *
+	 * @param key
+	 *            hash of the document
+	 * @return HTML string or {@code null} if it is not stored
+	 */
+	private String read(String key) {
+		if (directory == null) {
+			return null;
+		}
+		Path file = directory.resolve(key + ".html");
+		try {
+			return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			// Missing and unreadable files are converted again.
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a result in the directory.
+	 *
+	 * @param key
+	 *            hash of the document
+	 * @param html
+	 *            HTML string
+	 */
+	private void write(String key, String html) {
+		if (directory == null) {
+			return;
+		}
+		Path temporary = null;
+		try {
+			temporary = Files.createTempFile(directory, key, ".tmp");
+			Files.write(temporary, html.getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, directory.resolve(key + ".html"), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// The directory is only a cache, the result is still returned.
+			if (temporary != null) {
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the key of a string. The reader takes each byte of a file as
+	 * one character, so strings with characters up to 0xff are hashed as these
+	 * bytes, which gives the same key as the file with the same content.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @return hash of the options and the document
+	 */
+	private String key(String rtfSource) {
+		RtfContentHash hash = hash(BYTES);
+		byte[] buffer = new byte[Math.min(rtfSource.length(), BUFFER_SIZE)];
+		int length = 0;
+		for (int i = 0; i < rtfSource.length(); i++) {
+			char c = rtfSource.charAt(i);
+			if (c > 0xff) {
+				return wideKey(rtfSource);
+			}
+			if (length == buffer.length) {
+				hash.update(buffer, 0, length);
+				length = 0;
+			}
+			buffer[length++] = (byte) c;
+		}
+		hash.update(buffer, 0, length);
+		return toHex(hash.digest());
+	}
+
+	/**
+	 * Computes the key of a string that cannot be stored in a file as it is,
+	 * by hashing all characters as UTF-16LE.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @return hash of the options and the document
+	 */
+	private String wideKey(String rtfSource) {
+		RtfContentHash hash = hash(CHARS);
+		byte[] buffer = new byte[Math.min(2 * rtfSource.length(), BUFFER_SIZE)];
+		int length = 0;
+		for (int i = 0; i < rtfSource.length(); i++) {
+			if (length == buffer.length) {
+				hash.update(buffer, 0, length);
+				length = 0;
+			}
+			char c = rtfSource.charAt(i);
+			buffer[length++] = (byte) c;
+			buffer[length++] = (byte) (c >> 8);
+		}
+		hash.update(buffer, 0, length);
+		return toHex(hash.digest());
+	}
+
+	/**
+	 * Computes the key of a file, which is read in chunks.
+	 *
+	 * @param rtfPath
+	 *            local file containing the rich text
+	 * @return hash of the options and the document
+	 * @throws RtfParseException
+	 *             is thrown if the file cannot be read
+	 */
+	private String key(Path rtfPath) throws RtfParseException {
+		RtfContentHash hash = hash(BYTES);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(rtfPath)) {
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				hash.update(buffer, 0, n);
+			}
+		} catch (IOException e) {
+			throw new RtfParseException(e.getMessage(), e);
+		}
+		return toHex(hash.digest());
+	}
+
+	/**
+	 * Creates a hash that already contains the options.
+	 *
+	 * @param form
+	 *            {@link #BYTES} or {@link #CHARS}, so that both forms of a
+	 *            document never share a key
+	 * @return hash to which the document is added
+	 */
+	private RtfContentHash hash(byte form) {
+		RtfContentHash hash = new RtfContentHash();
+		hash.update(options, 0, options.length);
+		hash.update(new byte[] { form }, 0, 1);
+		return hash;
+	}
+
+	private static long size(String key, String html) {
+		return 2L * (key.length() + html.length()) + ENTRY_OVERHEAD;
+	}
+
+	private static String toHex(byte[] hash) {
+		char[] hex = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * This interface converts a single document.
+	 */
+	private interface Conversion {
+		String convert() throws RtfParseException;
+	}
+}
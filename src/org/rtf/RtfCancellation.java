@@ -0,0 +1,29 @@
+package org.rtf;
+
+/**
+ * This class allows to stop a running conversion from another thread, e.g.
+ * when a request is abandoned. The reader and the formatter check the token
+ * every {@link RtfLimits#CHECK_INTERVAL} tokens or elements and then throw an
+ * {@link RtfLimitException}.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfCancellation {
+	private volatile boolean cancelled;
+
+	/**
+	 * Requests to stop the conversions using this token.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks if the conversions using this token are to be stopped.
+	 *
+	 * @return {@code true} if {@link #cancel()} was called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -0,0 +1,291 @@
+package org.rtf;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class decodes the bytes of \'hh control symbols according to a code
+ * page. Each code page is decoded once into a table of 256 characters, so
+ * that decoding a byte is a table lookup. For double-byte code pages like 932
+ * (Japanese) or 936 (Simplified Chinese), the characters of a lead byte are
+ * decoded into another table of 256 characters when the lead byte occurs
+ * first.
+ * <p>
+ * Code pages are shared and can be used by several threads at once.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class RtfCodePage {
+	/**
+	 * Code page of Western European documents
+	 */
+	public static final int DEFAULT = 1252;
+
+	/**
+	 * Code page of symbol fonts, whose bytes are taken as they are
+	 */
+	public static final int SYMBOL = 42;
+
+	private static final ConcurrentMap<Integer, RtfCodePage> CODE_PAGES = new ConcurrentHashMap<>();
+
+	private final int number;
+	private final char[] chars = new char[256];
+	private final boolean[] leadBytes = new boolean[256];
+	private final AtomicReferenceArray<char[]> trailChars;
+	private final CharsetDecoder decoder;
+
+	private RtfCodePage(int number, Charset charset) {
+		this.number = number;
+		if (charset == null) {
+			for (int i = 0; i < 256; i++) {
+				chars[i] = (char) i;
+			}
+			trailChars = null;
+			decoder = null;
+			return;
+		}
+
+		CharsetDecoder singleDecoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		boolean doubleByte = charset.newEncoder().maxBytesPerChar() > 1;
+		CharBuffer out = CharBuffer.allocate(2);
+		for (int i = 0; i < 256; i++) {
+			ByteBuffer in = ByteBuffer.wrap(new byte[] { (byte) i });
+			out.clear();
+			singleDecoder.reset();
+			singleDecoder.decode(in, out, false);
+			if (out.position() == 1) {
+				chars[i] = out.get(0);
+			} else {
+				// A byte that is not decoded on its own starts a double-byte
+				// character.
+				chars[i] = '\uFFFD';
+				leadBytes[i] = doubleByte && in.hasRemaining();
+			}
+		}
+		trailChars = doubleByte ? new AtomicReferenceArray<char[]>(256) : null;
+		decoder = doubleByte ? charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE) : null;
+	}
+
+	/**
+	 * Gets a code page.
+	 *
+	 * @param number
+	 *            number of the code page, e.g. 1252 as in \ansicpg1252
+	 * @return code page; unsupported code pages are replaced by
+	 *         {@link #DEFAULT}
+	 */
+	public static RtfCodePage get(int number) {
+		RtfCodePage codePage = CODE_PAGES.get(number);
+		if (codePage == null) {
+			// Two threads may create the same tables, but only one is kept.
+			// Unsupported numbers are not kept, so the cache stays small.
+			codePage = create(number);
+			if (codePage.number == number) {
+				RtfCodePage existing = CODE_PAGES.putIfAbsent(number, codePage);
+				if (existing != null) {
+					codePage = existing;
+				}
+			}
+		}
+		return codePage;
+	}
+
+	/**
+	 * Gets the code page of a font charset.
+	 *
+	 * @param charset
+	 *            charset as in \fcharsetN
+	 * @return number of the code page or 0 if the code page of the document
+	 *         applies
+	 */
+	public static int getNumber(int charset) {
+		switch (charset) {
+		case 2:
+			return SYMBOL;
+		case 77:
+			return 10000;
+		case 128:
+			return 932;
+		case 129:
+			return 949;
+		case 130:
+			return 1361;
+		case 134:
+			return 936;
+		case 136:
+			return 950;
+		case 161:
+			return 1253;
+		case 162:
+			return 1254;
+		case 163:
+			return 1258;
+		case 177:
+			return 1255;
+		case 178:
+			return 1256;
+		case 186:
+			return 1257;
+		case 204:
+			return 1251;
+		case 222:
+			return 874;
+		case 238:
+			return 1250;
+		case 254:
+			return 437;
+		case 255:
+			return 850;
+		default:
+			// 0 (ANSI) and 1 (default) refer to \ansicpgN.
+			return 0;
+		}
+	}
+
+	/**
+	 * Gets the number of the code page.
+	 *
+	 * @return number, e.g. 1252
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * Checks if a byte is the first of a double-byte character.
+	 *
+	 * @param b
+	 *            byte value between 0 and 255
+	 * @return {@code true} if the character is only complete with the next
+	 *         byte
+	 */
+	public boolean isLeadByte(int b) {
+		return leadBytes[b & 0xff];
+	}
+
+	/**
+	 * Decodes a single byte.
+	 *
+	 * @param b
+	 *            byte value between 0 and 255
+	 * @return character or U+FFFD if the byte has no character
+	 */
+	public char decode(int b) {
+		return chars[b & 0xff];
+	}
+
+	/**
+	 * Decodes a double-byte character.
+	 *
+	 * @param lead
+	 *            first byte value between 0 and 255
+	 * @param trail
+	 *            second byte value between 0 and 255
+	 * @return character or U+FFFD if the bytes have no character
+	 */
+	public char decode(int lead, int trail) {
+		if (trailChars == null) {
+			return '\uFFFD';
+		}
+		char[] row = trailChars.get(lead & 0xff);
+		if (row == null) {
+			row = decodeRow(lead & 0xff);
+		}
+		return row[trail & 0xff];
+	}
+
+	/**
+	 * Decodes all characters starting with a lead byte.
+	 *
+	 * @param lead
+	 *            first byte value
+	 * @return table of the characters by their second byte
+	 */
+	private synchronized char[] decodeRow(int lead) {
+		char[] row = trailChars.get(lead);
+		if (row != null) {
+			return row;
+		}
+
+		row = new char[256];
+		byte[] bytes = new byte[2];
+		ByteBuffer in = ByteBuffer.wrap(bytes);
+		CharBuffer out = CharBuffer.allocate(4);
+		for (int i = 0; i < 256; i++) {
+			bytes[0] = (byte) lead;
+			bytes[1] = (byte) i;
+			in.clear();
+			out.clear();
+			decoder.reset();
+			decoder.decode(in, out, true);
+			decoder.flush(out);
+			// Only a single character made of both bytes is valid.
+			row[i] = out.position() == 1 && !in.hasRemaining() ? out.get(0) : '\uFFFD';
+		}
+		trailChars.set(lead, row);
+		return row;
+	}
+
+	/**
+	 * Creates the tables of a code page.
+	 *
+	 * @param number
+	 *            number of the code page
+	 * @return code page
+	 */
+	private static RtfCodePage create(int number) {
+		if (number == SYMBOL) {
+			return new RtfCodePage(number, null);
+		}
+		Charset charset = findCharset(number);
+		if (charset == null) {
+			return number == DEFAULT ? new RtfCodePage(number, null) : get(DEFAULT);
+		}
+		return new RtfCodePage(number, charset);
+	}
+
+	/**
+	 * Finds the Java charset of a code page.
+	 *
+	 * @param number
+	 *            number of the code page
+	 * @return charset or {@code null} if it is not supported
+	 */
+	private static Charset findCharset(int number) {
+		if (number == 10000) {
+			return forName("x-MacRoman");
+		}
+		String[] names = { "windows-" + number, "x-windows-" + number, "MS" + number, "Cp" + number,
+				"x-IBM" + number };
+		for (String name : names) {
+			Charset charset = forName(name);
+			if (charset != null) {
+				return charset;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Looks up a charset without failing.
+	 *
+	 * @param name
+	 *            charset name
+	 * @return charset or {@code null} if it is not supported
+	 */
+	private static Charset forName(String name) {
+		try {
+			return Charset.isSupported(name) ? Charset.forName(name) : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
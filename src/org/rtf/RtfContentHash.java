@@ -0,0 +1,131 @@
+package org.rtf;
+
+/**
+ * This class computes the 128-bit MurmurHash3 (x64 variant) of a byte
+ * sequence that is passed in pieces. It is not cryptographic, but its keys are
+ * long enough that different documents do not collide in practice, and it
+ * hashes several GB per second.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+final class RtfContentHash {
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final byte[] block = new byte[16];
+	private int pending;
+	private long length;
+	private long h1;
+	private long h2;
+
+	/**
+	 * Adds bytes to the hashed sequence.
+	 *
+	 * @param bytes
+	 *            array containing the bytes
+	 * @param offset
+	 *            position of the first byte
+	 * @param count
+	 *            number of bytes
+	 */
+	void update(byte[] bytes, int offset, int count) {
+		length += count;
+		int end = offset + count;
+		if (pending > 0) {
+			int n = Math.min(16 - pending, count);
+			System.arraycopy(bytes, offset, block, pending, n);
+			pending += n;
+			offset += n;
+			if (pending < 16) {
+				return;
+			}
+			mix(getLong(block, 0), getLong(block, 8));
+			pending = 0;
+		}
+		while (end - offset >= 16) {
+			mix(getLong(bytes, offset), getLong(bytes, offset + 8));
+			offset += 16;
+		}
+		pending = end - offset;
+		System.arraycopy(bytes, offset, block, 0, pending);
+	}
+
+	/**
+	 * Finishes the hash. The instance must not be used afterwards.
+	 *
+	 * @return 16 bytes of the hash
+	 */
+	byte[] digest() {
+		long k1 = 0;
+		long k2 = 0;
+		for (int i = pending - 1; i >= 8; i--) {
+			k2 ^= (long) (block[i] & 0xff) << ((i - 8) * 8);
+		}
+		if (pending > 8) {
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+		}
+		for (int i = Math.min(pending, 8) - 1; i >= 0; i--) {
+			k1 ^= (long) (block[i] & 0xff) << (i * 8);
+		}
+		if (pending > 0) {
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		byte[] hash = new byte[16];
+		for (int i = 0; i < 8; i++) {
+			hash[i] = (byte) (h1 >>> (i * 8));
+			hash[i + 8] = (byte) (h2 >>> (i * 8));
+		}
+		return hash;
+	}
+
+	private void mix(long k1, long k2) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		h1 ^= k1;
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52dce729;
+
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		h2 ^= k2;
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495ab5;
+	}
+
+	private static long getLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 7; i >= 0; i--) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
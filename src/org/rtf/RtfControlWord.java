@@ -11,11 +11,28 @@ public class RtfControlWord extends RtfElement {
 	 */
 	public String word;
 
+	/**
+	 * Keyword of the control word, e.g. {@link RtfKeyword#FS}
+	 */
+	public RtfKeyword keyword;
+
 	/**
 	 * Word parameter, e.g. 22
 	 */
 	public int parameter;
 
+	/**
+	 * Gets the keyword of the control word.
+	 *
+	 * @return keyword set by the reader or otherwise looked up from the word
+	 */
+	public RtfKeyword getKeyword() {
+		if (keyword == null) {
+			keyword = RtfKeyword.lookup(word);
+		}
+		return keyword;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
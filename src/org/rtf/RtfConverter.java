@@ -0,0 +1,669 @@
+package org.rtf;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class converts RTF into HTML with a configuration that is fixed when
+ * the converter is built. A converter is immutable and can be used by any
+ * number of threads at once:
+ *
+ * <pre>
+ * RtfConverter converter = RtfConverter.builder().page(true).styleCache(new RtfStyleCache(100)).build();
+ * String html = converter.convert(rtf);
+ * </pre>
+ *
+ * Each conversion borrows a reader and a formatter from a pool and returns
+ * them afterwards, so their buffers, state stacks and output builders are
+ * reused by the following conversions. The pool is not bound to threads and
+ * therefore also serves short-lived and virtual threads.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class RtfConverter {
+	// Output builders beyond this capacity are not kept for the next
+	// conversion.
+	private static final int MAX_KEPT_CAPACITY = 1024 * 1024;
+
+	private final boolean page;
+	private final boolean styleClasses;
+	private final boolean inlinePictures;
+	private final RtfStyleCache styleCache;
+	private final RtfHeaderCache headerCache;
+	private final RtfLimits limits;
+	private final RtfMetrics metrics;
+	private final int poolSize;
+	private final ConcurrentLinkedQueue<Worker> pool = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	private RtfConverter(Builder builder) {
+		page = builder.page;
+		styleClasses = builder.styleClasses;
+		inlinePictures = builder.inlinePictures;
+		styleCache = builder.styleCache;
+		headerCache = builder.headerCache;
+		limits = builder.limits;
+		metrics = builder.metrics;
+		poolSize = builder.poolSize;
+	}
+
+	/**
+	 * Creates a builder for a converter.
+	 *
+	 * @return builder with the default configuration
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Converts RTF into HTML.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public String convert(String rtfSource) throws RtfParseException {
+		return convert(rtfSource, null);
+	}
+
+	/**
+	 * Converts RTF into HTML unless the conversion is cancelled.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, a limit
+	 *             is exceeded or the conversion is cancelled
+	 */
+	public String convert(String rtfSource, RtfCancellation cancellation) throws RtfParseException {
+		return run(null, null, cancellation, (reader, handler) -> reader.parse(rtfSource, handler));
+	}
+
+	/**
+	 * Converts RTF into HTML.
+	 *
+	 * @param rtf
+	 *            characters containing the rich text
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters to convert
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public String convert(char[] rtf, int offset, int length) throws RtfParseException {
+		return convert(rtf, offset, length, null);
+	}
+
+	/**
+	 * Converts RTF into HTML unless the conversion is cancelled.
+	 *
+	 * @param rtf
+	 *            characters containing the rich text
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters to convert
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, a limit
+	 *             is exceeded or the conversion is cancelled
+	 */
+	public String convert(char[] rtf, int offset, int length, RtfCancellation cancellation)
+			throws RtfParseException {
+		return run(null, null, cancellation, (reader, handler) -> reader.parse(rtf, offset, length, handler));
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink.
+	 *
+	 * @param rtfReader
+	 *            reader providing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings or the
+	 *             sink cannot be written
+	 */
+	public void convert(Reader rtfReader, Appendable out) throws RtfParseException {
+		convert(rtfReader, out, null);
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink unless the
+	 * conversion is cancelled.
+	 *
+	 * @param rtfReader
+	 *            reader providing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, the
+	 *             sink cannot be written, a limit is exceeded or the
+	 *             conversion is cancelled
+	 */
+	public void convert(Reader rtfReader, Appendable out, RtfCancellation cancellation) throws RtfParseException {
+		run(out, null, cancellation, (reader, handler) -> reader.parse(rtfReader, handler));
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink.
+	 *
+	 * @param rtfStream
+	 *            stream containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings or the
+	 *             sink cannot be written
+	 */
+	public void convert(InputStream rtfStream, Appendable out) throws RtfParseException {
+		convert(rtfStream, out, null);
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink unless the
+	 * conversion is cancelled.
+	 *
+	 * @param rtfStream
+	 *            stream containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, the
+	 *             sink cannot be written, a limit is exceeded or the
+	 *             conversion is cancelled
+	 */
+	public void convert(InputStream rtfStream, Appendable out, RtfCancellation cancellation)
+			throws RtfParseException {
+		run(out, null, cancellation, (reader, handler) -> reader.parse(rtfStream, handler));
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink.
+	 *
+	 * @param rtfPath
+	 *            local file containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings or the
+	 *             sink cannot be written
+	 */
+	public void convert(Path rtfPath, Appendable out) throws RtfParseException {
+		convert(rtfPath, out, null);
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink unless the
+	 * conversion is cancelled.
+	 *
+	 * @param rtfPath
+	 *            local file containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, the
+	 *             sink cannot be written, a limit is exceeded or the
+	 *             conversion is cancelled
+	 */
+	public void convert(Path rtfPath, Appendable out, RtfCancellation cancellation) throws RtfParseException {
+		run(out, null, cancellation, (reader, handler) -> reader.parse(rtfPath, handler));
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink.
+	 *
+	 * @param rtfFile
+	 *            local file containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings or the
+	 *             sink cannot be written
+	 */
+	public void convert(File rtfFile, Appendable out) throws RtfParseException {
+		convert(rtfFile.toPath(), out, null);
+	}
+
+	/**
+	 * Converts RTF into HTML that is written straight into a sink unless the
+	 * conversion is cancelled.
+	 *
+	 * @param rtfFile
+	 *            local file containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, the
+	 *             sink cannot be written, a limit is exceeded or the
+	 *             conversion is cancelled
+	 */
+	public void convert(File rtfFile, Appendable out, RtfCancellation cancellation) throws RtfParseException {
+		convert(rtfFile.toPath(), out, cancellation);
+	}
+
+	/**
+	 * Converts the start of a document into HTML, e.g. the first lines of a
+	 * message. The conversion ends with closed tags as soon as a limit of the
+	 * preview is reached.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @param preview
+	 *            limits of the preview
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public String preview(String rtfSource, RtfPreview preview) throws RtfParseException {
+		return preview(rtfSource, preview, null);
+	}
+
+	/**
+	 * Converts the start of a document into HTML unless the conversion is
+	 * cancelled.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @param preview
+	 *            limits of the preview
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @return HTML string
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, a limit
+	 *             is exceeded or the conversion is cancelled
+	 */
+	public String preview(String rtfSource, RtfPreview preview, RtfCancellation cancellation)
+			throws RtfParseException {
+		return run(null, preview, cancellation, (reader, handler) -> reader.parse(rtfSource, handler));
+	}
+
+	/**
+	 * Converts the start of a document into HTML that is written straight
+	 * into a sink. The reader is not read beyond the preview and the
+	 * following buffer, so the time taken does not depend on the size of the
+	 * document.
+	 *
+	 * @param rtfReader
+	 *            reader providing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param preview
+	 *            limits of the preview
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings or the
+	 *             sink cannot be written
+	 */
+	public void preview(Reader rtfReader, Appendable out, RtfPreview preview) throws RtfParseException {
+		preview(rtfReader, out, preview, null);
+	}
+
+	/**
+	 * Converts the start of a document into HTML that is written straight
+	 * into a sink unless the conversion is cancelled.
+	 *
+	 * @param rtfReader
+	 *            reader providing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param preview
+	 *            limits of the preview
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, the
+	 *             sink cannot be written, a limit is exceeded or the
+	 *             conversion is cancelled
+	 */
+	public void preview(Reader rtfReader, Appendable out, RtfPreview preview, RtfCancellation cancellation)
+			throws RtfParseException {
+		run(out, preview, cancellation, (reader, handler) -> reader.parse(rtfReader, handler));
+	}
+
+	/**
+	 * Converts the start of a document into HTML that is written straight
+	 * into a sink. The stream is not read beyond the preview and the
+	 * following buffer, so the time taken does not depend on the size of the
+	 * document.
+	 *
+	 * @param rtfStream
+	 *            stream containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param preview
+	 *            limits of the preview
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings or the
+	 *             sink cannot be written
+	 */
+	public void preview(InputStream rtfStream, Appendable out, RtfPreview preview) throws RtfParseException {
+		preview(rtfStream, out, preview, null);
+	}
+
+	/**
+	 * Converts the start of a document into HTML that is written straight
+	 * into a sink unless the conversion is cancelled.
+	 *
+	 * @param rtfStream
+	 *            stream containing the rich text
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer}
+	 * @param preview
+	 *            limits of the preview
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, the
+	 *             sink cannot be written, a limit is exceeded or the
+	 *             conversion is cancelled
+	 */
+	public void preview(InputStream rtfStream, Appendable out, RtfPreview preview, RtfCancellation cancellation)
+			throws RtfParseException {
+		run(out, preview, cancellation, (reader, handler) -> reader.parse(rtfStream, handler));
+	}
+
+	/**
+	 * Runs a conversion with a worker of the pool.
+	 *
+	 * @param out
+	 *            sink receiving the HTML or {@code null} for the output
+	 *            builder of the worker
+	 * @param preview
+	 *            limits of a preview or {@code null}
+	 * @param cancellation
+	 *            token that stops the conversion or {@code null}
+	 * @param parse
+	 *            call of the reader for the source
+	 * @return HTML string if it was written into the output builder,
+	 *         otherwise {@code null}
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings, the
+	 *             sink cannot be written, a limit is exceeded or the
+	 *             conversion is cancelled
+	 */
+	private String run(Appendable out, RtfPreview preview, RtfCancellation cancellation, Parse parse)
+			throws RtfParseException {
+		Worker worker = acquire();
+		try {
+			worker.setCancellation(cancellation);
+			worker.formatter.setPreview(preview);
+			parse.parse(worker.reader, worker.handler(out != null ? out : worker.output));
+			worker.record();
+			return out != null ? null : worker.output.toString();
+		} catch (RtfParseException | RuntimeException e) {
+			worker.recordFailure();
+			throw e;
+		} finally {
+			release(worker);
+		}
+	}
+
+	/**
+	 * Gets the options that change the HTML of a document, e.g. to be part of
+	 * the keys of cached results.
+	 *
+	 * @return options as string
+	 */
+	String getOptions() {
+		return "page=" + page + ";styleClasses=" + styleClasses + ";inlinePictures=" + inlinePictures;
+	}
+
+	/**
+	 * Takes a worker from the pool or creates a new one.
+	 *
+	 * @return worker for one conversion
+	 */
+	private Worker acquire() {
+		Worker worker = pool.poll();
+		if (worker == null) {
+			return new Worker();
+		}
+		pooled.decrementAndGet();
+		return worker;
+	}
+
+	/**
+	 * Returns a worker to the pool unless the pool is full.
+	 *
+	 * @param worker
+	 *            worker of a finished conversion
+	 */
+	private void release(Worker worker) {
+		worker.clear();
+		if (worker.output.capacity() > MAX_KEPT_CAPACITY) {
+			worker.output = new StringBuilder();
+		} else {
+			worker.output.setLength(0);
+		}
+		if (pooled.incrementAndGet() <= poolSize) {
+			pool.offer(worker);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+
+	/**
+	 * This interface passes a source to the reader of a worker.
+	 */
+	private interface Parse {
+		void parse(RtfReader reader, RtfHandler handler) throws RtfParseException;
+	}
+
+	/**
+	 * This class holds the reusable objects of a conversion.
+	 */
+	private class Worker {
+		private final RtfReader reader = new RtfReader();
+		private final RtfHtml formatter = new RtfHtml();
+		private StringBuilder output = new StringBuilder();
+		private RtfMetricsHandler counter;
+
+		Worker() {
+			formatter.setStyleClasses(styleClasses);
+			formatter.setInlinePictures(inlinePictures);
+			formatter.setStyleCache(styleCache);
+			formatter.setHeaderCache(headerCache);
+			reader.setLimits(limits);
+			formatter.setLimits(limits);
+		}
+
+		RtfHandler handler(Appendable out) {
+			// The reader is stopped by a preview.
+			RtfHandler handler = formatter.handler(out, page, reader);
+			if (metrics == null) {
+				return handler;
+			}
+			counter = new RtfMetricsHandler(handler);
+			return counter;
+		}
+
+		void record() {
+			if (metrics != null) {
+				metrics.record(reader.getInputSize(), counter);
+			}
+		}
+
+		void recordFailure() {
+			if (metrics != null) {
+				metrics.recordFailure();
+			}
+		}
+
+		void setCancellation(RtfCancellation cancellation) {
+			reader.setCancellation(cancellation);
+			formatter.setCancellation(cancellation);
+		}
+
+		/**
+		 * Drops everything of the caller, so that a pooled worker does not
+		 * keep the sink or the handler of a failed conversion alive.
+		 */
+		void clear() {
+			setCancellation(null);
+			formatter.setPreview(null);
+			formatter.clearOutput();
+			counter = null;
+		}
+	}
+
+	/**
+	 * This class collects the configuration of a converter.
+	 */
+	public static final class Builder {
+		private boolean page;
+		private boolean styleClasses;
+		private boolean inlinePictures;
+		private RtfStyleCache styleCache;
+		private RtfHeaderCache headerCache;
+		private RtfLimits limits = RtfLimits.NONE;
+		private RtfMetrics metrics;
+		private int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+
+		private Builder() {
+		}
+
+		/**
+		 * Defines whether complete HTML pages are generated.
+		 *
+		 * @param page
+		 *            {@code true} for pages, {@code false} for snippets
+		 *            (default)
+		 * @return this builder
+		 */
+		public Builder page(boolean page) {
+			this.page = page;
+			return this;
+		}
+
+		/**
+		 * Defines whether the layout is written as CSS classes, see
+		 * {@link RtfHtml#setStyleClasses(boolean)}. The style sheet of a
+		 * snippet is not available by the converter, so this is meant for
+		 * pages.
+		 *
+		 * @param styleClasses
+		 *            {@code true} to write CSS classes, {@code false} to write
+		 *            inline styles (default)
+		 * @return this builder
+		 */
+		public Builder styleClasses(boolean styleClasses) {
+			this.styleClasses = styleClasses;
+			return this;
+		}
+
+		/**
+		 * Defines whether PNG and JPEG pictures are embedded as data URIs,
+		 * see {@link RtfHtml#setInlinePictures(boolean)}.
+		 *
+		 * @param inlinePictures
+		 *            {@code true} to embed pictures, {@code false} to leave
+		 *            them out (default)
+		 * @return this builder
+		 */
+		public Builder inlinePictures(boolean inlinePictures) {
+			this.inlinePictures = inlinePictures;
+			return this;
+		}
+
+		/**
+		 * Sets a cache for the span tags that is shared by all conversions.
+		 *
+		 * @param styleCache
+		 *            shared cache or {@code null} to use a cache per
+		 *            conversion (default)
+		 * @return this builder
+		 */
+		public Builder styleCache(RtfStyleCache styleCache) {
+			this.styleCache = styleCache;
+			return this;
+		}
+
+		/**
+		 * Sets a cache for the font and color tables that is shared by all
+		 * conversions.
+		 *
+		 * @param headerCache
+		 *            shared cache or {@code null} to extract the tables of
+		 *            each document (default)
+		 * @return this builder
+		 */
+		public Builder headerCache(RtfHeaderCache headerCache) {
+			this.headerCache = headerCache;
+			return this;
+		}
+
+		/**
+		 * Sets the limits of each conversion. A conversion that exceeds them
+		 * fails with an {@link RtfLimitException}.
+		 *
+		 * @param limits
+		 *            limits of input, nesting, nodes, output and time, or
+		 *            {@link RtfLimits#NONE} (default)
+		 * @return this builder
+		 */
+		public Builder limits(RtfLimits limits) {
+			this.limits = limits;
+			return this;
+		}
+
+		/**
+		 * Sets a registry that records the figures of each conversion.
+		 * Without a registry, conversions are not counted or timed at all.
+		 *
+		 * @param metrics
+		 *            registry shared by all conversions or {@code null}
+		 *            (default)
+		 * @return this builder
+		 */
+		public Builder metrics(RtfMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of idle readers and formatters that are
+		 * kept for reuse.
+		 *
+		 * @param poolSize
+		 *            number of idle workers; twice the number of processors
+		 *            by default
+		 * @return this builder
+		 */
+		public Builder poolSize(int poolSize) {
+			this.poolSize = poolSize;
+			return this;
+		}
+
+		/**
+		 * Creates a converter with the current configuration.
+		 *
+		 * @return new converter
+		 */
+		public RtfConverter build() {
+			return new RtfConverter(this);
+		}
+	}
+}
@@ -0,0 +1,425 @@
+package org.rtf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a compact alternative to the element tree. All nodes are
+ * stored in document order in primitive arrays, and texts are ranges of the
+ * source characters instead of strings. Per node only a kind byte and two int
+ * values are kept:
+ * <ul>
+ * <li>group: index after its last descendant</li>
+ * <li>control word: keyword ordinal (or negative index of an unknown word) and
+ * parameter</li>
+ * <li>control symbol: symbol and parameter</li>
+ * <li>text: offset and length in the source</li>
+ * <li>data: offset and length of the picture, object or binary data in the
+ * source</li>
+ * </ul>
+ * The children of a group are visited by
+ *
+ * <pre>
+ * for (int child = group + 1; child &lt; doc.getEnd(group); child = doc.getEnd(child)) {
+ * 	...
+ * }
+ * </pre>
+ *
+ * The whole document can be reported to an {@link RtfHandler} by
+ * {@link #accept(RtfHandler)}, and {@link #toGroup()} builds the element tree
+ * for existing callers.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfDocument {
+	/**
+	 * Node kind of a group
+	 */
+	public static final byte GROUP = 1;
+
+	/**
+	 * Node kind of a control word
+	 */
+	public static final byte CONTROL_WORD = 2;
+
+	/**
+	 * Node kind of a control symbol
+	 */
+	public static final byte CONTROL_SYMBOL = 3;
+
+	/**
+	 * Node kind of a text
+	 */
+	public static final byte TEXT = 4;
+
+	/**
+	 * Node kind of picture, object or binary data the reader has jumped over
+	 */
+	public static final byte DATA = 5;
+
+	private static final RtfKeyword[] KEYWORDS = RtfKeyword.values();
+
+	private final char[] source;
+	private byte[] kinds;
+	private int[] values;
+	private int[] parameters;
+	private int size;
+	private final List<String> unknownWords = new ArrayList<>();
+
+	private RtfDocument(char[] source, int capacity) {
+		this.source = source;
+		kinds = new byte[capacity];
+		values = new int[capacity];
+		parameters = new int[capacity];
+	}
+
+	/**
+	 * Parses RTF into a compact document.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @return document
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public static RtfDocument parse(String rtfSource) throws RtfParseException {
+		char[] rtf = rtfSource.toCharArray();
+		return parse(rtf, 0, rtf.length);
+	}
+
+	/**
+	 * Parses RTF into a compact document. The characters are referenced by
+	 * the document and must not be changed afterwards.
+	 *
+	 * @param rtf
+	 *            characters containing the rich text
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters to parse
+	 * @return document
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public static RtfDocument parse(char[] rtf, int offset, int length) throws RtfParseException {
+		// Word documents have roughly one node per eight characters.
+		RtfDocument document = new RtfDocument(rtf, Math.max(length / 8, 16));
+		new RtfReader().parse(rtf, offset, length, document.new Builder());
+		document.trimToSize();
+		return document;
+	}
+
+	/**
+	 * Gets the characters to which the text ranges refer.
+	 *
+	 * @return source characters
+	 */
+	public char[] getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the number of nodes. The root group is node 0.
+	 *
+	 * @return number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the kind of a node.
+	 *
+	 * @param node
+	 *            node index
+	 * @return one of {@link #GROUP}, {@link #CONTROL_WORD},
+	 *         {@link #CONTROL_SYMBOL}, {@link #TEXT} or {@link #DATA}
+	 */
+	public byte getKind(int node) {
+		return kinds[node];
+	}
+
+	/**
+	 * Gets the index after a node and all its descendants, which is the next
+	 * sibling if it is less than the end of the parent group.
+	 *
+	 * @param node
+	 *            node index
+	 * @return index after the node
+	 */
+	public int getEnd(int node) {
+		return kinds[node] == GROUP ? values[node] : node + 1;
+	}
+
+	/**
+	 * Gets the keyword of a control word node.
+	 *
+	 * @param node
+	 *            node index
+	 * @return keyword or {@link RtfKeyword#UNKNOWN}
+	 */
+	public RtfKeyword getKeyword(int node) {
+		int value = values[node];
+		return value >= 0 ? KEYWORDS[value] : RtfKeyword.UNKNOWN;
+	}
+
+	/**
+	 * Gets the name of a control word node.
+	 *
+	 * @param node
+	 *            node index
+	 * @return control word, e.g. fs
+	 */
+	public String getWord(int node) {
+		int value = values[node];
+		return value >= 0 ? KEYWORDS[value].word : unknownWords.get(-value - 1);
+	}
+
+	/**
+	 * Gets the symbol of a control symbol node.
+	 *
+	 * @param node
+	 *            node index
+	 * @return control symbol, e.g. &#42;
+	 */
+	public char getSymbol(int node) {
+		return (char) values[node];
+	}
+
+	/**
+	 * Gets the parameter of a control word or control symbol node.
+	 *
+	 * @param node
+	 *            node index
+	 * @return parameter
+	 */
+	public int getParameter(int node) {
+		return parameters[node];
+	}
+
+	/**
+	 * Gets the start of a text or data node in the source.
+	 *
+	 * @param node
+	 *            node index
+	 * @return position within {@link #getSource()}
+	 */
+	public int getTextOffset(int node) {
+		return values[node];
+	}
+
+	/**
+	 * Gets the length of a text or data node.
+	 *
+	 * @param node
+	 *            node index
+	 * @return number of characters
+	 */
+	public int getTextLength(int node) {
+		return parameters[node];
+	}
+
+	/**
+	 * Creates a string from a text node.
+	 *
+	 * @param node
+	 *            node index
+	 * @return plain text
+	 */
+	public String getText(int node) {
+		return new String(source, values[node], parameters[node]);
+	}
+
+	/**
+	 * Reports all nodes in document order to a handler.
+	 *
+	 * @param handler
+	 *            receiver of the content
+	 * @throws RtfParseException
+	 *             is thrown by the handler to stop
+	 */
+	public void accept(RtfHandler handler) throws RtfParseException {
+		int[] groups = new int[16];
+		int depth = 0;
+
+		handler.startDocument();
+		for (int node = 0; node < size; node++) {
+			while (depth > 0 && values[groups[depth - 1]] == node) {
+				depth--;
+				handler.endGroup();
+			}
+
+			switch (kinds[node]) {
+			case GROUP:
+				if (depth == groups.length) {
+					groups = Arrays.copyOf(groups, depth * 2);
+				}
+				groups[depth++] = node;
+				handler.startGroup();
+				break;
+			case CONTROL_WORD:
+				handler.controlWord(getKeyword(node), getWord(node), parameters[node]);
+				break;
+			case CONTROL_SYMBOL:
+				handler.controlSymbol((char) values[node], parameters[node]);
+				break;
+			case DATA:
+				handler.data(getDataDestination(node, groups[depth - 1]), values[node], parameters[node]);
+				break;
+			default:
+				handler.text(source, values[node], parameters[node]);
+				break;
+			}
+		}
+		while (depth > 0) {
+			depth--;
+			handler.endGroup();
+		}
+		handler.endDocument();
+	}
+
+	/**
+	 * Builds an element tree from the document.
+	 *
+	 * @return root element or {@code null} if the document is empty
+	 */
+	public RtfGroup toGroup() {
+		RtfTreeBuilder builder = new RtfTreeBuilder();
+		try {
+			accept(builder);
+		} catch (RtfParseException e) {
+			// The tree builder never throws, so this cannot happen.
+			throw new IllegalStateException(e);
+		}
+		return builder.root;
+	}
+
+	/**
+	 * Finds out to what a data node belongs. The data of \binN follows the
+	 * control word, otherwise it is the data of the group.
+	 *
+	 * @param node
+	 *            index of the data node
+	 * @param group
+	 *            index of its group
+	 * @return {@link RtfKeyword#BIN} or the destination of the group
+	 */
+	private RtfKeyword getDataDestination(int node, int group) {
+		if (kinds[node - 1] == CONTROL_WORD && getKeyword(node - 1) == RtfKeyword.BIN) {
+			return RtfKeyword.BIN;
+		}
+		int first = group + 1;
+		if (kinds[first] == CONTROL_SYMBOL && values[first] == '*') {
+			first++;
+		}
+		return first < size && kinds[first] == CONTROL_WORD ? getKeyword(first) : RtfKeyword.UNKNOWN;
+	}
+
+	/**
+	 * Appends a node.
+	 *
+	 * @param kind
+	 *            node kind
+	 * @param value
+	 *            first value
+	 * @param parameter
+	 *            second value
+	 * @return index of the new node
+	 */
+	private int add(byte kind, int value, int parameter) {
+		if (size == kinds.length) {
+			int capacity = size + (size >> 1) + 1;
+			kinds = Arrays.copyOf(kinds, capacity);
+			values = Arrays.copyOf(values, capacity);
+			parameters = Arrays.copyOf(parameters, capacity);
+		}
+		kinds[size] = kind;
+		values[size] = value;
+		parameters[size] = parameter;
+		return size++;
+	}
+
+	/**
+	 * Releases unused capacity after parsing.
+	 */
+	private void trimToSize() {
+		if (size < kinds.length) {
+			kinds = Arrays.copyOf(kinds, size);
+			values = Arrays.copyOf(values, size);
+			parameters = Arrays.copyOf(parameters, size);
+		}
+	}
+
+	/**
+	 * This class fills the arrays from the events of the reader.
+	 */
+	private class Builder implements RtfHandler {
+		private int[] openGroups = new int[16];
+		private int depth;
+		// Indexes of the unknown words, only needed while building
+		private final Map<String, Integer> unknownIndexes = new HashMap<>();
+
+		@Override
+		public void startDocument() {
+			depth = 0;
+		}
+
+		@Override
+		public void endDocument() {
+			// Groups left open end with the document.
+			while (depth > 0) {
+				values[openGroups[--depth]] = size;
+			}
+		}
+
+		@Override
+		public void startGroup() {
+			if (depth == openGroups.length) {
+				openGroups = Arrays.copyOf(openGroups, depth * 2);
+			}
+			openGroups[depth++] = add(GROUP, 0, 0);
+		}
+
+		@Override
+		public void endGroup() {
+			values[openGroups[--depth]] = size;
+		}
+
+		@Override
+		public void controlWord(RtfKeyword keyword, String word, int parameter) {
+			int value;
+			if (keyword != RtfKeyword.UNKNOWN) {
+				value = keyword.ordinal();
+			} else {
+				Integer index = unknownIndexes.get(word);
+				if (index == null) {
+					index = unknownWords.size();
+					unknownWords.add(word);
+					unknownIndexes.put(word, index);
+				}
+				value = -index - 1;
+			}
+			add(CONTROL_WORD, value, parameter);
+		}
+
+		@Override
+		public void controlSymbol(char symbol, int parameter) {
+			add(CONTROL_SYMBOL, symbol, parameter);
+		}
+
+		@Override
+		public void text(char[] buffer, int offset, int length) {
+			// The lexer scans the source array directly, so the ranges
+			// already refer to it.
+			add(TEXT, offset, length);
+		}
+
+		@Override
+		public void data(RtfKeyword destination, long offset, long length) {
+			add(DATA, (int) offset, (int) length);
+		}
+	}
+}
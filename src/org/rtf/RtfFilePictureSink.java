@@ -0,0 +1,53 @@
+package org.rtf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class stores pictures as files in a directory. The files are named by
+ * a prefix, the picture number and the extension of the picture type, e.g.
+ * image0.png, and the image tags refer to them by this name.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfFilePictureSink implements RtfPictureSink {
+	private final File directory;
+	private final String prefix;
+
+	/**
+	 * Creates a new sink for the given directory.
+	 *
+	 * @param directory
+	 *            directory in which the pictures are stored, usually the
+	 *            directory of the HTML file
+	 * @param prefix
+	 *            start of the file names, e.g. image
+	 */
+	public RtfFilePictureSink(File directory, String prefix) {
+		this.directory = directory;
+		this.prefix = prefix;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfPictureSink#open(int, java.lang.String)
+	 */
+	@Override
+	public OutputStream open(int index, String type) throws IOException {
+		return new BufferedOutputStream(new FileOutputStream(new File(directory, getSource(index, type))));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfPictureSink#getSource(int, java.lang.String)
+	 */
+	@Override
+	public String getSource(int index, String type) {
+		return prefix + index + (type.equals("image/png") ? ".png" : ".jpg");
+	}
+}
@@ -1,6 +1,7 @@
 package org.rtf;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -19,12 +20,25 @@ public class RtfGroup extends RtfElement {
 	 */
 	public List<RtfElement> children;
 
+	/**
+	 * Position of the picture, object or binary data of this group in the
+	 * source or -1 if the group has no data
+	 */
+	public long dataOffset;
+
+	/**
+	 * Number of characters of the picture, object or binary data
+	 */
+	public long dataLength;
+
 	/**
 	 * Creates a new group element.
 	 */
 	public RtfGroup() {
 		parent = null;
 		children = new ArrayList<>();
+		dataOffset = -1;
+		dataLength = 0;
 	}
 
 	/**
@@ -82,44 +96,75 @@ public class RtfGroup extends RtfElement {
 	 */
 	@Override
 	public void dump(int level) {
-		System.out.println("<div>");
-		indent(level);
-		System.out.println("{");
-		System.out.println("</div>");
+		// Nested groups are walked with a stack on the heap, so that deeply
+		// nested documents cannot overflow the thread stack.
+		RtfGroup[] groups = new RtfGroup[16];
+		int[] positions = new int[16];
+		int top = 0;
+		groups[0] = this;
+		dumpBrace(level, "{");
+
+		while (top >= 0) {
+			RtfGroup group = groups[top];
+			int groupLevel = level + 2 * top;
+			if (positions[top] == group.children.size()) {
+				dumpBrace(groupLevel, "}");
+				groups[top--] = null;
+				continue;
+			}
+
+			RtfElement child = group.children.get(positions[top]++);
+			if (!(child instanceof RtfGroup)) {
+				child.dump(groupLevel + 2);
+				continue;
+			}
 
-		for (RtfElement child : children) {
-			if (child instanceof RtfGroup) {
-				RtfGroup group = (RtfGroup) child;
-
-				// Can we ignore this group?
-				if (group.getType().equals("fonttbl")) {
-					continue;
-				}
-				if (group.getType().equals("colortbl")) {
-					continue;
-				}
-				if (group.getType().equals("stylesheet")) {
-					continue;
-				}
-				if (group.getType().equals("info")) {
-					continue;
-				}
-
-				// Skip any pictures and destinations.
-				if (group.getType().length() >= 4 && group.getType().substring(0, 4).equals("pict")) {
-					continue;
-				}
-				if (group.isDestination()) {
-					continue;
-				}
+			RtfGroup childGroup = (RtfGroup) child;
+
+			// Can we ignore this group?
+			if (childGroup.getType().equals("fonttbl")) {
+				continue;
+			}
+			if (childGroup.getType().equals("colortbl")) {
+				continue;
+			}
+			if (childGroup.getType().equals("stylesheet")) {
+				continue;
+			}
+			if (childGroup.getType().equals("info")) {
+				continue;
+			}
+
+			// Skip any pictures and destinations.
+			if (childGroup.getType().length() >= 4 && childGroup.getType().substring(0, 4).equals("pict")) {
+				continue;
+			}
+			if (childGroup.isDestination()) {
+				continue;
 			}
 
-			child.dump(level + 2);
+			if (++top == groups.length) {
+				groups = Arrays.copyOf(groups, top * 2);
+				positions = Arrays.copyOf(positions, top * 2);
+			}
+			groups[top] = childGroup;
+			positions[top] = 0;
+			dumpBrace(groupLevel + 2, "{");
 		}
+	}
 
+	/**
+	 * Outputs an opening or closing brace.
+	 *
+	 * @param level
+	 *            number of spaces by which the brace is indented
+	 * @param brace
+	 *            "{" or "}"
+	 */
+	private void dumpBrace(int level, String brace) {
 		System.out.println("<div>");
 		indent(level);
-		System.out.println("}");
+		System.out.println(brace);
 		System.out.println("</div>");
 	}
 }
\ No newline at end of file
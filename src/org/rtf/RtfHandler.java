@@ -0,0 +1,123 @@
+package org.rtf;
+
+/**
+ * This interface receives the content of an RTF document as a sequence of
+ * events while it is being read, so that no element tree has to be built.
+ * The reader guarantees that all events except the document events occur
+ * within a group.
+ * <p>
+ * A handler that writes its results may throw
+ * {@link java.io.UncheckedIOException}; the reader reports it as
+ * {@link RtfParseException}.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public interface RtfHandler {
+	/**
+	 * Receives notification of the beginning of the document.
+	 *
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void startDocument() throws RtfParseException;
+
+	/**
+	 * Receives notification of the end of the document. It is also sent if
+	 * groups are left open.
+	 *
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void endDocument() throws RtfParseException;
+
+	/**
+	 * Receives notification of an opening brace.
+	 *
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void startGroup() throws RtfParseException;
+
+	/**
+	 * Receives notification of a closing brace.
+	 *
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void endGroup() throws RtfParseException;
+
+	/**
+	 * Receives notification of a control word.
+	 *
+	 * @param keyword
+	 *            keyword of the control word, e.g. {@link RtfKeyword#FS}, or
+	 *            {@link RtfKeyword#UNKNOWN}
+	 * @param word
+	 *            control word, e.g. fs
+	 * @param parameter
+	 *            word parameter, e.g. 22, or 1 if omitted
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void controlWord(RtfKeyword keyword, String word, int parameter) throws RtfParseException;
+
+	/**
+	 * Receives notification of a control symbol.
+	 *
+	 * @param symbol
+	 *            control symbol, e.g. &#42;
+	 * @param parameter
+	 *            value of a \'hh symbol, otherwise 0
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void controlSymbol(char symbol, int parameter) throws RtfParseException;
+
+	/**
+	 * Receives notification of plain text. A text may be split into several
+	 * consecutive notifications, e.g. around escaped braces.
+	 *
+	 * @param buffer
+	 *            characters; they are only valid during this call
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void text(char[] buffer, int offset, int length) throws RtfParseException;
+
+	/**
+	 * Receives notification of data the reader has jumped over: the hex data
+	 * of a picture or object or the binary data following \binN. Only its
+	 * position is reported, so that it can be read from the source later if
+	 * needed.
+	 *
+	 * @param destination
+	 *            {@link RtfKeyword#PICT}, {@link RtfKeyword#OBJDATA} or
+	 *            {@link RtfKeyword#BIN}
+	 * @param offset
+	 *            index in the parsed array or number of characters read from
+	 *            the stream or reader before the data
+	 * @param length
+	 *            number of characters
+	 * @throws RtfParseException
+	 *             can be thrown to stop parsing
+	 */
+	void data(RtfKeyword destination, long offset, long length) throws RtfParseException;
+
+	/**
+	 * Decides whether the hex data of a picture or object is reported by
+	 * {@link #text(char[], int, int)} instead of being jumped over. It is
+	 * asked for each part of the data.
+	 *
+	 * @param destination
+	 *            {@link RtfKeyword#PICT} or {@link RtfKeyword#OBJDATA}
+	 * @return {@code true} to receive the data as text; by default the data
+	 *         is jumped over
+	 */
+	default boolean isDataRequested(RtfKeyword destination) {
+		return false;
+	}
+}
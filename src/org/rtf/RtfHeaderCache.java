@@ -0,0 +1,287 @@
+package org.rtf;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps the font and color tables extracted by {@link RtfHtml}, so
+ * that documents with the same tables, e.g. from the same generator, do not
+ * extract them again. It can be used by several formatters and threads at
+ * once:
+ *
+ * <pre>
+ * RtfHeaderCache cache = new RtfHeaderCache(1000);
+ * formatter.setHeaderCache(cache);
+ * </pre>
+ *
+ * The tables are found by their source, i.e. the group written as RTF again.
+ * Equal sources always give equal tables, so hash collisions cannot mix up
+ * tables. The cached tables are immutable, and the least recently used
+ * tables are evicted beyond the maximum size.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfHeaderCache {
+	/**
+	 * Maximum length of a table source that is cached
+	 */
+	public static final int MAX_SOURCE_LENGTH = 64 * 1024;
+
+	private final Tables<FontTable> fontTables;
+	private final Tables<List<String>> colorTables;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maximumSize
+	 *            maximum number of distinct font tables and of distinct color
+	 *            tables
+	 */
+	public RtfHeaderCache(int maximumSize) {
+		fontTables = new Tables<>(maximumSize);
+		colorTables = new Tables<>(maximumSize);
+	}
+
+	/**
+	 * Removes all tables.
+	 */
+	public void clear() {
+		synchronized (fontTables) {
+			fontTables.clear();
+		}
+		synchronized (colorTables) {
+			colorTables.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of tables that were found.
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of tables that were not found.
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets a font table.
+	 *
+	 * @param source
+	 *            font table group as RTF
+	 * @return font table or {@code null} if it is not cached
+	 */
+	FontTable getFontTable(String source) {
+		return get(fontTables, source);
+	}
+
+	/**
+	 * Stores a font table.
+	 *
+	 * @param source
+	 *            font table group as RTF
+	 * @param families
+	 *            font families by font number
+	 * @param codePages
+	 *            code pages by font number
+	 */
+	void putFontTable(String source, List<String> families, List<RtfCodePage> codePages) {
+		put(fontTables, source, new FontTable(families, codePages));
+	}
+
+	/**
+	 * Gets a color table.
+	 *
+	 * @param source
+	 *            color table group as RTF
+	 * @return colors or {@code null} if they are not cached
+	 */
+	List<String> getColorTable(String source) {
+		return get(colorTables, source);
+	}
+
+	/**
+	 * Stores a color table.
+	 *
+	 * @param source
+	 *            color table group as RTF
+	 * @param colors
+	 *            colors by color number
+	 */
+	void putColorTable(String source, List<String> colors) {
+		put(colorTables, source, Collections.unmodifiableList(colors));
+	}
+
+	private <T> T get(Tables<T> tables, String source) {
+		T table;
+		synchronized (tables) {
+			table = tables.get(source);
+		}
+		if (table != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return table;
+	}
+
+	private <T> void put(Tables<T> tables, String source, T table) {
+		if (source.length() > MAX_SOURCE_LENGTH) {
+			return;
+		}
+		synchronized (tables) {
+			tables.putIfAbsent(source, table);
+		}
+	}
+
+	/**
+	 * Appends a control word to a table source.
+	 *
+	 * @param source
+	 *            table source
+	 * @param word
+	 *            name of the control word
+	 * @param parameter
+	 *            parameter of the control word
+	 */
+	static void appendControlWord(StringBuilder source, String word, int parameter) {
+		// The data of \binN would be taken from the following text.
+		source.append('\\').append(word).append(word.equals("bin") ? 0 : parameter).append(' ');
+		if (word.equals("u")) {
+			// The lexer jumps over the replacement character.
+			source.append('?');
+		}
+	}
+
+	/**
+	 * Appends a control symbol to a table source.
+	 *
+	 * @param source
+	 *            table source
+	 * @param symbol
+	 *            control symbol
+	 * @param parameter
+	 *            value of a \'hh symbol
+	 */
+	static void appendControlSymbol(StringBuilder source, char symbol, int parameter) {
+		source.append('\\').append(symbol);
+		if (symbol == '\'') {
+			source.append(Character.forDigit(parameter >> 4 & 0xf, 16)).append(Character.forDigit(parameter & 0xf, 16));
+		}
+	}
+
+	/**
+	 * Appends text to a table source.
+	 *
+	 * @param source
+	 *            table source
+	 * @param buffer
+	 *            characters of the text
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters
+	 */
+	static void appendText(StringBuilder source, char[] buffer, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			char c = buffer[i];
+			if (c == '\\' || c == '{' || c == '}') {
+				source.append('\\');
+			}
+			source.append(c);
+		}
+	}
+
+	/**
+	 * Appends a table group of an element tree to a table source.
+	 *
+	 * @param source
+	 *            table source
+	 * @param group
+	 *            font or color table group
+	 */
+	static void appendGroup(StringBuilder source, RtfGroup group) {
+		// The groups being written and the positions of their next child
+		RtfGroup[] groups = new RtfGroup[8];
+		int[] positions = new int[8];
+		int top = 0;
+		groups[0] = group;
+		source.append('{');
+
+		while (top >= 0) {
+			RtfGroup current = groups[top];
+			if (positions[top] == current.children.size()) {
+				source.append('}');
+				groups[top--] = null;
+				continue;
+			}
+
+			RtfElement child = current.children.get(positions[top]++);
+			if (child instanceof RtfGroup) {
+				if (++top == groups.length) {
+					groups = Arrays.copyOf(groups, top * 2);
+					positions = Arrays.copyOf(positions, top * 2);
+				}
+				groups[top] = (RtfGroup) child;
+				positions[top] = 0;
+				source.append('{');
+			} else if (child instanceof RtfControlWord) {
+				RtfControlWord word = (RtfControlWord) child;
+				appendControlWord(source, word.word, word.parameter);
+			} else if (child instanceof RtfControlSymbol) {
+				RtfControlSymbol symbol = (RtfControlSymbol) child;
+				appendControlSymbol(source, symbol.symbol, symbol.parameter);
+			} else if (child instanceof RtfText) {
+				String text = ((RtfText) child).text;
+				appendText(source, text.toCharArray(), 0, text.length());
+			}
+		}
+	}
+
+	/**
+	 * This class keeps the tables of one kind in the order of their last use
+	 * and evicts the eldest one beyond the maximum size.
+	 */
+	private static final class Tables<T> extends LinkedHashMap<String, T> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maximumSize;
+
+		Tables(int maximumSize) {
+			super(16, 0.75f, true);
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+			return size() > maximumSize;
+		}
+	}
+
+	/**
+	 * This class holds an extracted font table.
+	 */
+	static final class FontTable {
+		final List<String> families;
+		final List<RtfCodePage> codePages;
+
+		FontTable(List<String> families, List<RtfCodePage> codePages) {
+			this.families = Collections.unmodifiableList(families);
+			this.codePages = Collections.unmodifiableList(codePages);
+		}
+	}
+}
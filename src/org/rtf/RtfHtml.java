@@ -1,25 +1,58 @@
 package org.rtf;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 /**
- * This class is the HTML formatter.
+ * This class is the HTML formatter. It either walks an element tree or, as
+ * {@link RtfHandler} obtained by {@link #handler(Appendable, boolean)},
+ * converts the events of an {@link RtfReader} in one pass without any tree.
  *
  * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
  */
 public class RtfHtml {
-	private String output;
-	private Stack<RtfState> states;
-	private RtfState state;
-	private RtfState previousState;
+	private Appendable output;
+	private RtfPackedState.Table stateTable;
+	private RtfPackedState[] states = new RtfPackedState[64];
+	private int depth;
+	private RtfPackedState state;
+	private RtfPackedState previousState;
 	private Map<String, Boolean> openedTags;
 	private List<String> fonttbl;
 	private List<String> colortbl;
 	private boolean newRootPar;
+	private final RtfTextDecoder decoder = new RtfTextDecoder();
+	private Map<RtfPackedState, String> spans;
+	private RtfStyleCache styleCache;
+	private RtfHeaderCache headerCache;
+	private final StringBuilder tableSource = new StringBuilder();
+	private boolean inlinePictures;
+	private RtfPictureSink pictureSink;
+	private int pictureCount;
+	private boolean classes;
+	private Map<String, String> styleClasses;
+	private Appendable pageOutput;
+	private RtfLimits limits = RtfLimits.NONE;
+	private RtfCancellation cancellation;
+	private long outputSize;
+	private long maxOutputSize;
+	private long deadline;
+	private int countdown;
+	private RtfPreview preview = RtfPreview.NONE;
+	private RtfReader previewReader;
+	private long characters;
+	private long paragraphs;
+	private boolean truncated;
 
 	/**
 	 * Transforms an RTF group with all children into HTML tags.
@@ -43,27 +76,335 @@ public class RtfHtml {
 	 * @return HTML string
 	 */
 	public String format(RtfGroup root, boolean page) {
-		// Keeping track of style modifications.
+		StringBuilder builder = new StringBuilder();
+		try {
+			format(root, builder, page);
+		} catch (IOException e) {
+			// A StringBuilder never throws, so this cannot happen.
+			throw new UncheckedIOException(e);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Transforms an RTF group with all children into HTML tags and writes them
+	 * straight into the given sink, so that no string of the complete document
+	 * is built in memory.
+	 *
+	 * @param root
+	 *            element from which the formatting should be started
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer} or a
+	 *            {@link StringBuilder}
+	 * @param page
+	 *            defines whether a complete HTML page should be generated or
+	 *            the new tags should be written as snippet
+	 * @throws IOException
+	 *             is thrown if the sink cannot be written
+	 * @throws UncheckedRtfLimitException
+	 *             is thrown if one of the {@link #setLimits(RtfLimits)
+	 *             limits} is exceeded
+	 */
+	public void format(RtfGroup root, Appendable out, boolean page) throws IOException {
+		try {
+			begin(out, page);
+			formatGroup(root);
+			end(page);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			output = null;
+			pageOutput = null;
+		}
+	}
+
+	/**
+	 * Creates a handler that transforms the events of an {@link RtfReader}
+	 * into HTML tags while the document is read, without building an element
+	 * tree:
+	 *
+	 * <pre>
+	 * reader.parse(file, formatter.handler(writer, true));
+	 * </pre>
+	 *
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer} or a
+	 *            {@link StringBuilder}
+	 * @param page
+	 *            defines whether a complete HTML page should be generated or
+	 *            the new tags should be written as snippet
+	 * @return handler to pass to the reader
+	 */
+	public RtfHandler handler(Appendable out, boolean page) {
+		return new HtmlHandler(out, page, null);
+	}
+
+	/**
+	 * Creates a handler that transforms the events of an {@link RtfReader}
+	 * into HTML tags and stops the reader as soon as the
+	 * {@link #setPreview(RtfPreview) preview} is complete, so that the rest
+	 * of the document is not read:
+	 *
+	 * <pre>
+	 * reader.parse(stream, formatter.handler(writer, false, reader));
+	 * </pre>
+	 *
+	 * @param out
+	 *            sink receiving the HTML, e.g. a {@link java.io.Writer} or a
+	 *            {@link StringBuilder}
+	 * @param page
+	 *            defines whether a complete HTML page should be generated or
+	 *            the new tags should be written as snippet
+	 * @param reader
+	 *            reader passing its events to the handler
+	 * @return handler to pass to the reader
+	 */
+	public RtfHandler handler(Appendable out, boolean page, RtfReader reader) {
+		return new HtmlHandler(out, page, reader);
+	}
+
+	/**
+	 * Sets a cache for the span tags that is shared with other conversions.
+	 * Documents with the same font and color tables then reuse the tags
+	 * created for their states. Without a shared cache, the tags are only
+	 * reused within a conversion.
+	 *
+	 * @param cache
+	 *            shared cache or {@code null} to use a cache per conversion
+	 *            (default)
+	 */
+	public void setStyleCache(RtfStyleCache cache) {
+		styleCache = cache;
+	}
+
+	/**
+	 * Sets a cache for the font and color tables that is shared with other
+	 * conversions. Documents with the same tables then skip their
+	 * extraction. The cached tables are those of
+	 * {@link #extractFontTable(List)} and {@link #extractColorTable(List)}, so
+	 * subclasses overriding these methods should not use a cache.
+	 *
+	 * @param cache
+	 *            shared cache or {@code null} to extract the tables of each
+	 *            document (default)
+	 */
+	public void setHeaderCache(RtfHeaderCache cache) {
+		headerCache = cache;
+	}
+
+	/**
+	 * Sets the limits of the following conversions. The formatter checks the
+	 * output size and the time; the input is checked by the
+	 * {@link RtfReader#setLimits(RtfLimits) reader}. As the formatting
+	 * methods cannot throw an {@link RtfLimitException}, it is wrapped into
+	 * an {@link UncheckedRtfLimitException}, which a reader passing its
+	 * events to the {@link #handler(Appendable, boolean) handler} unwraps
+	 * again.
+	 *
+	 * @param limits
+	 *            limits of output size and time, or {@link RtfLimits#NONE}
+	 *            (default)
+	 */
+	public void setLimits(RtfLimits limits) {
+		this.limits = limits != null ? limits : RtfLimits.NONE;
+	}
+
+	/**
+	 * Sets a token that stops the following conversions when it is
+	 * cancelled.
+	 *
+	 * @param cancellation
+	 *            token or {@code null} if the conversions cannot be
+	 *            cancelled (default)
+	 */
+	public void setCancellation(RtfCancellation cancellation) {
+		this.cancellation = cancellation;
+	}
+
+	/**
+	 * Sets the limits of a preview for the following conversions. When a
+	 * limit is reached, the text is cut off, the open tags are closed and the
+	 * conversion ends; a reader is only stopped if it was passed to the
+	 * {@link #handler(Appendable, boolean, RtfReader) handler}.
+	 *
+	 * @param preview
+	 *            limits of the preview, or {@link RtfPreview#NONE} to convert
+	 *            complete documents (default)
+	 */
+	public void setPreview(RtfPreview preview) {
+		this.preview = preview != null ? preview : RtfPreview.NONE;
+	}
+
+	/**
+	 * Checks if the last conversion was cut off by the
+	 * {@link #setPreview(RtfPreview) preview}.
+	 *
+	 * @return {@code true} if a limit of the preview was reached
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Defines whether the layout is written as CSS classes instead of inline
+	 * styles. Each distinct style of a conversion gets a short class name like
+	 * {@code r3}, and the span tags only refer to it, so that long style
+	 * declarations are not repeated throughout the HTML.
+	 * <p>
+	 * A complete page contains the rules in a style block in its head. As the
+	 * head precedes the body, the body of a page is kept in memory until the
+	 * conversion has finished. Snippets are written straight away, and their
+	 * rules are available by {@link #getStyleSheet()} afterwards.
+	 * <p>
+	 * Class names are only valid within a conversion, so a
+	 * {@link #setStyleCache(RtfStyleCache) shared cache} is not used in this
+	 * mode.
+	 *
+	 * @param classes
+	 *            {@code true} to write CSS classes, {@code false} to write
+	 *            inline styles (default)
+	 */
+	public void setStyleClasses(boolean classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * Gets the style sheet of the last conversion in CSS class mode, one rule
+	 * per line:
+	 *
+	 * <pre>
+	 * .r0{font-family:'Arial';font-size:15px;}
+	 * .r1{font-family:'Arial';font-weight:bold;font-size:15px;}
+	 * </pre>
+	 *
+	 * @return CSS rules or an empty string if no classes were written
+	 */
+	public String getStyleSheet() {
+		if (styleClasses == null) {
+			return "";
+		}
+
+		StringBuilder css = new StringBuilder();
+		for (Map.Entry<String, String> entry : styleClasses.entrySet()) {
+			css.append('.').append(entry.getValue()).append('{').append(entry.getKey()).append("}\n");
+		}
+		return css.toString();
+	}
+
+	/**
+	 * Defines whether PNG and JPEG pictures are embedded into the HTML as
+	 * base64 data URIs. The hex data is decoded and encoded while it is read,
+	 * so a picture is never held in memory as a whole.
+	 * <p>
+	 * Pictures are only converted by the {@link #handler(Appendable, boolean)
+	 * handler}, as the reader does not keep picture data in the element tree.
+	 *
+	 * @param inline
+	 *            {@code true} to embed pictures, {@code false} to leave them
+	 *            out (default)
+	 */
+	public void setInlinePictures(boolean inline) {
+		inlinePictures = inline;
+	}
+
+	/**
+	 * Sets a sink that stores PNG and JPEG pictures outside of the HTML; the
+	 * image tags refer to them by the address the sink returns. A sink takes
+	 * precedence over inline pictures.
+	 * <p>
+	 * Pictures are only converted by the {@link #handler(Appendable, boolean)
+	 * handler}, as the reader does not keep picture data in the element tree.
+	 *
+	 * @param sink
+	 *            receiver of the pictures, e.g. a {@link RtfFilePictureSink},
+	 *            or {@code null} to leave them out (default)
+	 */
+	public void setPictureSink(RtfPictureSink sink) {
+		pictureSink = sink;
+	}
+
+	/**
+	 * Drops the sink of the last conversion, which the handler keeps if the
+	 * document ends with an error.
+	 */
+	void clearOutput() {
+		output = null;
+		pageOutput = null;
+		previewReader = null;
+	}
+
+	/**
+	 * Prepares a new conversion and writes the opening tags.
+	 *
+	 * @param out
+	 *            sink receiving the HTML
+	 * @param page
+	 *            defines whether a complete HTML page should be generated
+	 */
+	private void begin(Appendable out, boolean page) {
+		// Keeping track of style modifications. The states are kept for the
+		// next conversion unless there are too many.
+		if (stateTable == null || stateTable.size() > RtfStyleCache.MAX_STATES) {
+			stateTable = new RtfPackedState.Table();
+		}
 		previousState = null;
+		spans = null;
 		openedTags = new LinkedHashMap<>();
 		openedTags.put("span", false);
 		openedTags.put("p", true);
 
-		// Create a stack of states and put an initial standard state onto the
-		// stack.
-		states = new Stack<>();
-		state = new RtfState();
-		states.push(state);
+		// Documents without font or color table use the defaults.
+		fonttbl = new ArrayList<>();
+		colortbl = new ArrayList<>();
+		decoder.reset();
 
-		// Do the job.
-		output = "<p>";
-		newRootPar = true;
-		formatGroup(root);
+		// Start with an empty stack and the standard state.
+		depth = 0;
+		state = stateTable.getDefault();
+
+		// Do the job. In CSS class mode, the head of a page is written after
+		// the body, when all classes are known.
+		styleClasses = classes ? new LinkedHashMap<String, String>() : null;
+		outputSize = 0;
+		maxOutputSize = limits.getMaxOutputSize();
+		deadline = limits.getDeadline(System.nanoTime());
+		countdown = RtfLimits.CHECK_INTERVAL;
+		characters = 0;
+		paragraphs = 0;
+		truncated = false;
+		output = out;
+		pictureCount = 0;
 		if (page) {
-			wrapTags();
+			if (classes) {
+				pageOutput = out;
+				output = new StringBuilder();
+			} else {
+				beginPage();
+			}
 		}
+		write("<p>");
+		newRootPar = true;
+	}
 
-		return output;
+	/**
+	 * Writes the closing tags of a conversion.
+	 *
+	 * @param page
+	 *            defines whether a complete HTML page is generated
+	 */
+	private void end(boolean page) {
+		if (page) {
+			endPage();
+		}
+		if (pageOutput != null) {
+			CharSequence body = (CharSequence) output;
+			output = pageOutput;
+			pageOutput = null;
+			beginPage();
+			// The body has already been counted.
+			outputSize -= body.length();
+			write(body.toString());
+		}
 	}
 
 	/**
@@ -77,6 +418,7 @@ public class RtfHtml {
 		// }
 		// index 0 is the "default" font (in fact: default font is declared by /deffN in RTF header section)
 		List<String> fonttbl = new ArrayList<>();
+		List<RtfCodePage> fontCodePages = new ArrayList<>();
 		
 		int c = fontTblGrp.size();
 		
@@ -85,6 +427,8 @@ public class RtfHtml {
 			if (fontTblGrp.get(i) instanceof RtfGroup) {
 				RtfGroup fontDesc = (RtfGroup) fontTblGrp.get(i);
 				String fontFamily = "";
+				int charsetCodePage = 0;
+				int fontCodePage = 0;
 				// process font description group
 				List<RtfElement> fontAttrs = fontDesc.children;
 				// assume that the font index is the first (at least) RtfElement in the font descriptor RtfGroup.
@@ -95,39 +439,40 @@ public class RtfHtml {
 						// font attribute
 						RtfControlWord fontAttr = (RtfControlWord) faElem;
 						// font family (has only one of):
-						if (fontAttr.word.equals("fnil")) {
+						switch (fontAttr.getKeyword()) {
+						case FNIL:
 							// font family Unknown/Default -> no font name applicable so far
-						} else 
-						if (fontAttr.word.equals("froman")) {
+							break;
+						case FROMAN:
 							// font family Roman (proportionally spaced, serif)
 							fontFamily = "Times,serif";
-						} else 
-						if (fontAttr.word.equals("fswiss")) {
+							break;
+						case FSWISS:
 							// font family Swiss (proportionally spaced, sans-serif)
 							fontFamily = "Helvetica,Swiss,sans-serif";
-						} else 
-						if (fontAttr.word.equals("fmodern")) {
+							break;
+						case FMODERN:
 							// font family Fixed-pitch (typewriter)
 							fontFamily = "Courier,monospace";
-						} else 
-						if (fontAttr.word.equals("fscript")) {
+							break;
+						case FSCRIPT:
 							// font family Script (like handwritten)
 							fontFamily = "Cursive";
-						} else 
-						if (fontAttr.word.equals("fdecor")) {
+							break;
+						case FDECOR:
 							// font family Decorative
 							fontFamily = "'ITC Zapf Chancery'";
-						} else 
-						if (fontAttr.word.equals("ftech")) {
+							break;
+						case FTECH:
 							// font family Non-Unicode, technical, symbol
 							fontFamily = "Symbol,Wingdings";
-						} else 
-						if (fontAttr.word.equals("fbidi")) {
+							break;
+						case FBIDI:
 							// font family bi-directional
 							fontFamily = "Miriam";
-						} else 
+							break;
 						// charset (after font family setting):
-						if (fontAttr.word.equals("fcharset")) {
+						case FCHARSET:
 							// font charset reference (with parameter)
 							// 0 = default charset as defined in RTF header (assume ANSI, CP1252)
 							// 2 = SYMBOL_CHARSET (CP42)
@@ -135,8 +480,16 @@ public class RtfHtml {
 								// supersede font family by forcing "Symbol" font
 								fontFamily = "Symbol";
 							}
+							// the charset decides how \'hh is decoded
+							charsetCodePage = RtfCodePage.getNumber(fontAttr.parameter);
+							break;
+						case CPG:
+							// explicit code page (with parameter), supersedes the charset
+							fontCodePage = fontAttr.parameter;
+							break;
+						default:
+							break;
 						}
-						// /cpgN (code page) is ignored. 42 however would equal /fcharset2 (Symbol)
 					}
 					if (faElem instanceof RtfText) {
 						// font name
@@ -157,10 +510,13 @@ public class RtfHtml {
 					}
 				}
 				fonttbl.add(fontFamily);
+				fontCodePages.add(RtfTextDecoder.getFontCodePage(charsetCodePage, fontCodePage));
 			}
 		}
 		
 		this.fonttbl = fonttbl;
+		decoder.setFontCodePages(fontCodePages);
+		spans = null;
 	}
 
 	/**
@@ -196,51 +552,123 @@ public class RtfHtml {
 		}
 
 		this.colortbl = colortbl;
+		spans = null;
 	}
 
 	/**
-	 * Formats an RTF group.
+	 * Extracts a font or color table of an element tree, or takes it from
+	 * the header cache.
 	 *
+	 * @param type
+	 *            {@link RtfKeyword#FONTTBL} or {@link RtfKeyword#COLORTBL}
 	 * @param group
-	 *            group element to process
+	 *            table group
 	 */
-	protected void formatGroup(RtfGroup group) {
-		// Can we ignore this group?
-		// Font table extraction.
-		if (group.getType().equals("fonttbl")) {
-			extractFontTable(group.children);
+	private void extractTable(RtfKeyword type, RtfGroup group) {
+		if (headerCache == null) {
+			extractTable(type, group.children);
 			return;
 		}
-		// Extract color table.
-		if (group.getType().equals("colortbl")) {
-			extractColorTable(group.children);
-			return;
+		tableSource.setLength(0);
+		RtfHeaderCache.appendGroup(tableSource, group);
+		String source = tableSource.toString();
+		if (!useCachedTable(type, source)) {
+			extractTable(type, group.children);
+			cacheTable(type, source);
 		}
-		// Stylesheet extraction not yet supported.
-		if (group.getType().equals("stylesheet")) {
-			return;
+	}
+
+	private void extractTable(RtfKeyword type, List<RtfElement> children) {
+		if (type == RtfKeyword.FONTTBL) {
+			extractFontTable(children);
+		} else {
+			extractColorTable(children);
 		}
-		// Info extraction not yet supported.
-		if (group.getType().equals("info")) {
-			return;
+	}
+
+	/**
+	 * Takes a font or color table from the header cache.
+	 *
+	 * @param type
+	 *            {@link RtfKeyword#FONTTBL} or {@link RtfKeyword#COLORTBL}
+	 * @param source
+	 *            table group as RTF
+	 * @return {@code true} if the table was cached
+	 */
+	private boolean useCachedTable(RtfKeyword type, String source) {
+		if (type == RtfKeyword.FONTTBL) {
+			RtfHeaderCache.FontTable table = headerCache.getFontTable(source);
+			if (table == null) {
+				return false;
+			}
+			fonttbl = table.families;
+			decoder.setFontCodePages(table.codePages);
+		} else {
+			List<String> table = headerCache.getColorTable(source);
+			if (table == null) {
+				return false;
+			}
+			colortbl = table;
 		}
-		// Picture extraction not yet supported.
-		if (group.getType().length() >= 4 && group.getType().substring(0, 4).equals("pict")) {
-			return;
+		spans = null;
+		return true;
+	}
+
+	/**
+	 * Puts the extracted font or color table into the header cache.
+	 *
+	 * @param type
+	 *            {@link RtfKeyword#FONTTBL} or {@link RtfKeyword#COLORTBL}
+	 * @param source
+	 *            table group as RTF
+	 */
+	private void cacheTable(RtfKeyword type, String source) {
+		if (type == RtfKeyword.FONTTBL) {
+			headerCache.putFontTable(source, fonttbl, decoder.getFontCodePages());
+		} else {
+			headerCache.putColorTable(source, colortbl);
 		}
-		// Ignore destinations.
-		if (group.isDestination()) {
+	}
+
+	/**
+	 * Formats an RTF group. Nested groups are walked with a stack on the heap
+	 * instead of recursive calls, so that even deeply nested documents cannot
+	 * overflow the thread stack.
+	 *
+	 * @param group
+	 *            group element to process
+	 */
+	protected void formatGroup(RtfGroup group) {
+		if (!startGroup(group)) {
 			return;
 		}
 
-		// Push a new state onto the stack.
-		state = (RtfState) state.clone();
-		states.push(state);
+		// The groups being formatted and the positions of their next child
+		RtfGroup[] groups = new RtfGroup[16];
+		int[] positions = new int[16];
+		int top = 0;
+		groups[0] = group;
+
+		while (top >= 0 && !truncated) {
+			RtfGroup current = groups[top];
+			if (positions[top] == current.children.size()) {
+				// Pop state from stack.
+				popState();
+				groups[top--] = null;
+				continue;
+			}
 
-		// Format all group children.
-		for (RtfElement child : group.children) {
+			checkTime();
+			RtfElement child = current.children.get(positions[top]++);
 			if (child instanceof RtfGroup) {
-				formatGroup((RtfGroup) child);
+				if (startGroup((RtfGroup) child)) {
+					if (++top == groups.length) {
+						groups = Arrays.copyOf(groups, top * 2);
+						positions = Arrays.copyOf(positions, top * 2);
+					}
+					groups[top] = (RtfGroup) child;
+					positions[top] = 0;
+				}
 			} else if (child instanceof RtfControlWord) {
 				formatControlWord((RtfControlWord) child);
 			} else if (child instanceof RtfControlSymbol) {
@@ -249,10 +677,71 @@ public class RtfHtml {
 				formatText((RtfText) child);
 			}
 		}
+	}
 
-		// Pop state from stack.
-		states.pop();
-		state = states.peek();
+	/**
+	 * Starts formatting an RTF group unless it is a table or ignored.
+	 *
+	 * @param group
+	 *            group element to process
+	 * @return {@code true} if the children of the group are to be formatted
+	 */
+	private boolean startGroup(RtfGroup group) {
+		// Can we ignore this group?
+		// Font table extraction.
+		if (group.getType().equals("fonttbl")) {
+			extractTable(RtfKeyword.FONTTBL, group);
+			return false;
+		}
+		// Extract color table.
+		if (group.getType().equals("colortbl")) {
+			extractTable(RtfKeyword.COLORTBL, group);
+			return false;
+		}
+		// Stylesheet, info and picture extraction not yet supported.
+		if (isIgnored(group.getType())) {
+			return false;
+		}
+		// Ignore destinations.
+		if (group.isDestination()) {
+			return false;
+		}
+
+		// Push a new state onto the stack.
+		pushState();
+		return true;
+	}
+
+	/**
+	 * Checks if a group is skipped because its content is not supported yet.
+	 *
+	 * @param type
+	 *            group type, i.e. its first control word
+	 * @return {@code true} for stylesheets, info and pictures
+	 */
+	protected boolean isIgnored(String type) {
+		return RtfTextDecoder.isIgnored(type);
+	}
+
+	/**
+	 * Saves the current state at the start of a group. As states are
+	 * immutable, the group continues with the same instance.
+	 */
+	private void pushState() {
+		if (depth == states.length) {
+			states = Arrays.copyOf(states, depth * 2);
+		}
+		states[depth++] = state;
+	}
+
+	/**
+	 * Restores the state of the enclosing group.
+	 */
+	private void popState() {
+		if (depth > 0) {
+			state = states[--depth];
+			states[depth] = null;
+		}
 	}
 
 	/**
@@ -262,79 +751,143 @@ public class RtfHtml {
 	 *            word element to process
 	 */
 	protected void formatControlWord(RtfControlWord rtfWord) {
-		if (rtfWord.word.equals("plain") || rtfWord.word.equals("pard")) {
-			state.reset();
-		} else
+		formatControlWord(rtfWord.getKeyword(), rtfWord.parameter);
+	}
+
+	/**
+	 * Formats an RTF control word.
+	 *
+	 * @param keyword
+	 *            keyword of the control word, e.g. {@link RtfKeyword#FS}
+	 * @param parameter
+	 *            word parameter, e.g. 22
+	 */
+	protected void formatControlWord(RtfKeyword keyword, int parameter) {
+		// A double-byte character is not interrupted by control words.
+		decoder.interrupt();
+
+		switch (keyword) {
+		case PLAIN:
+		case PARD:
+			state = state.reset();
+			break;
+		case ANSICPG:
+			decoder.setCodePage(parameter);
+			break;
 		// state changers, not printed immediately:
-		if (rtfWord.word.equals("f")) {
-			state.font = rtfWord.parameter;
-		} else if (rtfWord.word.equals("b")) {
-			state.bold = rtfWord.parameter > 0;
-		} else if (rtfWord.word.equals("i")) {
-			state.italic = rtfWord.parameter > 0;
-		} else if (rtfWord.word.equals("ul")) {
-			state.underline = rtfWord.parameter > 0;
-		} else if (rtfWord.word.equals("ulnone")) {
-			state.underline = false;
-		} else if (rtfWord.word.equals("strike")) {
-			state.strike = rtfWord.parameter > 0;
-		} else if (rtfWord.word.equals("v")) {
-			state.hidden = rtfWord.parameter > 0;
-		} else if (rtfWord.word.equals("fs")) {
-			state.fontSize = (int) Math.ceil((rtfWord.parameter / 24.0) * 16.0);
-		} else if (rtfWord.word.equals("dn")) {
-			state.dnup = (int) Math.ceil((rtfWord.parameter / 24.0) * 16.0) * -1;
-		} else if (rtfWord.word.equals("up")) {
-			state.dnup = (int) Math.ceil((rtfWord.parameter / 24.0) * 16.0);
-		} else if (rtfWord.word.equals("sub")) {
-			state.subscript = true;
-			state.superscript = false;
-		} else if (rtfWord.word.equals("super")) {
-			state.subscript = false;
-			state.superscript = true;
-		} else if (rtfWord.word.equals("nosupersub")) {
-			state.subscript = false;
-			state.superscript = false;
-		} else if (rtfWord.word.equals("cf")) {
-			state.textColor = rtfWord.parameter;
-		} else if (rtfWord.word.equals("cb") || rtfWord.word.equals("chcbpat") || rtfWord.word.equals("highlight")) {
-			state.background = rtfWord.parameter;
-		} else
+		case F:
+			state = state.withFont(parameter);
+			break;
+		case B:
+			state = state.withBold(parameter > 0);
+			break;
+		case I:
+			state = state.withItalic(parameter > 0);
+			break;
+		case UL:
+			state = state.withUnderline(parameter > 0);
+			break;
+		case ULNONE:
+			state = state.withUnderline(false);
+			break;
+		case STRIKE:
+			state = state.withStrike(parameter > 0);
+			break;
+		case V:
+			state = state.withHidden(parameter > 0);
+			break;
+		case FS:
+			state = state.withFontSize((int) Math.ceil((parameter / 24.0) * 16.0));
+			break;
+		case DN:
+			state = state.withDnup((int) Math.ceil((parameter / 24.0) * 16.0) * -1);
+			break;
+		case UP:
+			state = state.withDnup((int) Math.ceil((parameter / 24.0) * 16.0));
+			break;
+		case SUB:
+			state = state.withSubSuper(true, false);
+			break;
+		case SUPER:
+			state = state.withSubSuper(false, true);
+			break;
+		case NOSUPERSUB:
+			state = state.withSubSuper(false, false);
+			break;
+		case CF:
+			state = state.withTextColor(parameter);
+			break;
+		case CB:
+		case CHCBPAT:
+		case HIGHLIGHT:
+			state = state.withBackground(parameter);
+			break;
 		// special characters, printed immediately:
-		if (rtfWord.word.equals("lquote")) {
-			applyStyle("&lsquo;");
-		} else if (rtfWord.word.equals("rquote")) {
-			applyStyle("&rsquo;");
-		} else if (rtfWord.word.equals("ldblquote")) {
-			applyStyle("&ldquo;");
-		} else if (rtfWord.word.equals("rdblquote")) {
-			applyStyle("&rdquo;");
-		} else if (rtfWord.word.equals("emdash")) {
-			applyStyle("&mdash;");
-		} else if (rtfWord.word.equals("endash")) {
-			applyStyle("&ndash;");
-		} else if (rtfWord.word.equals("emspace")) {
-			applyStyle("&emsp;");
-		} else if (rtfWord.word.equals("enspace")) {
-			applyStyle("&ensp;");
-		} else if (rtfWord.word.equals("tab")) {
-			applyStyle("&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;");
-		} else if (rtfWord.word.equals("line")) {
-			applyStyle("<br>");
-		} else if (rtfWord.word.equals("bullet")) {
-			applyStyle("&bull;");
-		} else if (rtfWord.word.equals("u")) {
-			applyStyle("&#" + rtfWord.parameter + ";");
-		} else if (rtfWord.word.equals("par") || rtfWord.word.equals("row")) {
+		case LQUOTE:
+			formatCharacter("&lsquo;");
+			break;
+		case RQUOTE:
+			formatCharacter("&rsquo;");
+			break;
+		case LDBLQUOTE:
+			formatCharacter("&ldquo;");
+			break;
+		case RDBLQUOTE:
+			formatCharacter("&rdquo;");
+			break;
+		case EMDASH:
+			formatCharacter("&mdash;");
+			break;
+		case ENDASH:
+			formatCharacter("&ndash;");
+			break;
+		case EMSPACE:
+			formatCharacter("&emsp;");
+			break;
+		case ENSPACE:
+			formatCharacter("&ensp;");
+			break;
+		case TAB:
+			formatCharacter("&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;");
+			break;
+		case LINE:
+			formatCharacter("<br>");
+			break;
+		case BULLET:
+			formatCharacter("&bull;");
+			break;
+		case U:
+			formatCharacter("&#" + parameter + ";");
+			break;
+		case PAR:
+		case ROW:
 			// Close previously opened tags.
 			closeTags();
 
-			output += "<p>";
+			if (++paragraphs >= preview.getMaxParagraphs()) {
+				truncate();
+				break;
+			}
+			write("<p>");
 			openedTags.put("p", true);
 			newRootPar = true;
+			break;
+		default:
+			break;
 		}
 	}
 
+	/**
+	 * Writes a special character and counts it for the preview.
+	 *
+	 * @param html
+	 *            entity or tag of the character
+	 */
+	private void formatCharacter(String html) {
+		applyStyle(html);
+		countCharacters(1, 1);
+	}
+
 	/**
 	 * Adds the new layout information using the span tag.
 	 *
@@ -342,69 +895,120 @@ public class RtfHtml {
 	 *            text to be formatted
 	 */
 	protected void applyStyle(String txt) {
-		// Create span only when a style change occurs or a root paragraph start was just inserted.
-		if (!state.equals(previousState) || newRootPar) {
-			String span = "";
+		applyStyle();
+		write(txt);
+	}
 
-			if (state.font >= 0) {
-				span += "font-family:" + printFontFamily(state.font) + ";";
-			}
-			if (state.bold) {
-				span += "font-weight:bold;";
-			}
-			if (state.italic) {
-				span += "font-style:italic;";
-			}
-			if (state.underline) {
-				span += "text-decoration:underline;";
-			}
-			if (state.strike) {
-				span += "text-decoration:strikethrough;";
-			}
-			if (state.hidden) {
-				span += "display:none;";
-			}
-			if (state.fontSize != 0) {
-				span += "font-size:" + state.fontSize + "px;";
-			}
-			// RTF dn/up:
-			// By spec, RTF fs and RTF dn/up are independent of each other; 
-			// there is no documented "auto-reducing" for the font size.
-			// In the wild, RTF dn/up often is given together with a "full" RTF fs but rendered with reduced font size.
-			// Thus, RTF dn/up is rendered with implicit font size reduction.
-			// This font-size setting supersedes the explicit "fs" font-size setting. 
-			if (state.dnup != 0) {
-				span += calculateReducedFontSize() + "vertical-align:" + state.dnup + "px;";
-			}
-			// RTF sub/super: 
-			// Reduced font-size and vertical-align supersede settings from fs,dn,up.
-			if (state.subscript) {
-				span += calculateReducedFontSize() + "vertical-align:sub;";
-			}
-			if (state.superscript) {
-				span += calculateReducedFontSize() + "vertical-align:super;";
-			}
-			if (state.textColor != 0) {
-				span += "color:" + printColor(state.textColor) + ";";
+	/**
+	 * Opens a new span tag if the layout has changed since the last text.
+	 */
+	protected void applyStyle() {
+		// Create span only when a style change occurs or a root paragraph start was just inserted.
+		if (state != previousState || newRootPar) {
+			// Span tags are created once per state.
+			if (spans == null) {
+				spans = styleCache != null && !classes ? styleCache.getSpans(fonttbl, colortbl)
+						: new HashMap<RtfPackedState, String>();
 			}
-			if (state.background != 0) {
-				span += "background-color:" + printColor(state.background) + ";";
+			String span = spans.get(state);
+			if (span == null) {
+				span = createSpan();
+				if (spans.size() < RtfStyleCache.MAX_STATES) {
+					spans.put(state, span);
+				}
 			}
 
 			// Keep track of preceding style.
-			previousState = (RtfState) state.clone();
+			previousState = state;
 
 			// Close previously opened "span" tag.
 			closeTag("span");
 
-			output += "<span style=\"" + span + "\">" + txt;
+			write(span);
 			openedTags.put("span", true);
-		} else {
-			output += txt;
 		}
 		newRootPar = false;
 	}
 
+	/**
+	 * Creates the opening span tag for the current state.
+	 *
+	 * @return span tag with the inline style or, in CSS class mode, with the
+	 *         class of the style
+	 */
+	protected String createSpan() {
+		String style = createStyle();
+		if (styleClasses == null) {
+			return "<span style=\"" + style + "\">";
+		}
+		if (style.isEmpty()) {
+			return "<span>";
+		}
+
+		String name = styleClasses.get(style);
+		if (name == null) {
+			name = "r" + styleClasses.size();
+			styleClasses.put(style, name);
+		}
+		return "<span class=\"" + name + "\">";
+	}
+
+	/**
+	 * Creates the CSS declarations for the current state.
+	 *
+	 * @return declarations, each terminated by a semicolon
+	 */
+	protected String createStyle() {
+		String span = "";
+
+		if (state.getFont() >= 0) {
+			span += "font-family:" + printFontFamily(state.getFont()) + ";";
+		}
+		if (state.isBold()) {
+			span += "font-weight:bold;";
+		}
+		if (state.isItalic()) {
+			span += "font-style:italic;";
+		}
+		if (state.isUnderline()) {
+			span += "text-decoration:underline;";
+		}
+		if (state.isStrike()) {
+			span += "text-decoration:strikethrough;";
+		}
+		if (state.isHidden()) {
+			span += "display:none;";
+		}
+		if (state.getFontSize() != 0) {
+			span += "font-size:" + state.getFontSize() + "px;";
+		}
+		// RTF dn/up:
+		// By spec, RTF fs and RTF dn/up are independent of each other; 
+		// there is no documented "auto-reducing" for the font size.
+		// In the wild, RTF dn/up often is given together with a "full" RTF fs but rendered with reduced font size.
+		// Thus, RTF dn/up is rendered with implicit font size reduction.
+		// This font-size setting supersedes the explicit "fs" font-size setting. 
+		if (state.getDnup() != 0) {
+			span += calculateReducedFontSize() + "vertical-align:" + state.getDnup() + "px;";
+		}
+		// RTF sub/super: 
+		// Reduced font-size and vertical-align supersede settings from fs,dn,up.
+		if (state.isSubscript()) {
+			span += calculateReducedFontSize() + "vertical-align:sub;";
+		}
+		if (state.isSuperscript()) {
+			span += calculateReducedFontSize() + "vertical-align:super;";
+		}
+		if (state.getTextColor() != 0) {
+			span += "color:" + printColor(state.getTextColor()) + ";";
+		}
+		if (state.getBackground() != 0) {
+			span += "background-color:" + printColor(state.getBackground()) + ";";
+		}
+
+		return span;
+	}
+
 	/**
 	 * Calculate reduced font size based on actual state.
 	 * If actual state defines a font size, then CSS fon-size with 2/3 of this is returned,
@@ -413,8 +1017,8 @@ public class RtfHtml {
 	 */
 	protected String calculateReducedFontSize() {
 		String css;
-		if (state.fontSize != 0) {
-			int reducedFontSize = (int) Math.ceil((state.fontSize / 3.0) * 2.0);
+		if (state.getFontSize() != 0) {
+			int reducedFontSize = (int) Math.ceil((state.getFontSize() / 3.0) * 2.0);
 			css = "font-size:" + reducedFontSize + "px;";
 		} else {
 			css = "font-size:smaller;";
@@ -454,7 +1058,9 @@ public class RtfHtml {
 	 */
 	protected void closeTag(String tag) {
 		if (openedTags.get(tag)) {
-			output += "</" + tag + ">";
+			write("</");
+			write(tag);
+			write(">");
 			openedTags.put(tag, false);
 		}
 	}
@@ -469,20 +1075,167 @@ public class RtfHtml {
 	}
 
 	/**
-	 * Wraps HTML head and body tags around the output string.
+	 * Writes the HTML head and the opening body tag ahead of the output.
 	 */
+	protected void beginPage() {
+		write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+		write("<html>\n");
+		write("  <head>\n");
+		write("    <meta content=\"text/html;charset=UTF-8\" http-equiv=\"content-type\"/>\n");
+		if (styleClasses != null && !styleClasses.isEmpty()) {
+			write("    <style type=\"text/css\">\n");
+			for (Map.Entry<String, String> entry : styleClasses.entrySet()) {
+				write("      ." + entry.getValue() + "{" + entry.getKey() + "}\n");
+			}
+			write("    </style>\n");
+		}
+		write("  </head>\n");
+		write("  <body>\n");
+	}
+
+	/**
+	 * Writes the closing body and html tags behind the output.
+	 */
+	protected void endPage() {
+		write("\n");
+		write("  </body>\n");
+		write("</html>\n");
+	}
+
+	/**
+	 * Wraps HTML head and body tags around the output written so far.
+	 *
+	 * @throws IllegalStateException
+	 *             is thrown if the output is not a {@link StringBuilder}, as
+	 *             other sinks cannot take back what has been written
+	 * @deprecated The output is streamed into the sink, so a page is written
+	 *             by {@link #beginPage()} and {@link #endPage()} while
+	 *             formatting; use {@code page = true} instead.
+	 */
+	@Deprecated
 	protected void wrapTags() {
-		StringBuilder source = new StringBuilder();
-		source.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
-		source.append("<html>\n");
-		source.append("  <head>\n");
-		source.append("    <meta content=\"text/html;charset=UTF-8\" http-equiv=\"content-type\"/>\n");
-		source.append("  </head>\n");
-		source.append("  <body>\n");
-		source.append(output + "\n");
-		source.append("  </body>\n");
-		source.append("</html>\n");
-		output = source.toString();
+		if (!(output instanceof StringBuilder)) {
+			throw new IllegalStateException("The output cannot be wrapped after it has been written.");
+		}
+		StringBuilder source = (StringBuilder) output;
+		String body = source.toString();
+		source.setLength(0);
+		// The body has already been counted.
+		outputSize -= body.length();
+		beginPage();
+		write(body);
+		endPage();
+	}
+
+	/**
+	 * Appends a piece of HTML to the output sink.
+	 *
+	 * @param html
+	 *            tags or text to be written
+	 * @throws UncheckedIOException
+	 *             is thrown if the sink cannot be written; it is unwrapped
+	 *             again by {@link #format(RtfGroup, Appendable, boolean)}
+	 */
+	protected void write(String html) {
+		countOutput(html.length());
+		try {
+			output.append(html);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends a decoded character to the output sink. HTML special
+	 * characters are replaced by entities.
+	 *
+	 * @param c
+	 *            character to be written
+	 * @throws UncheckedIOException
+	 *             is thrown if the sink cannot be written
+	 */
+	protected void write(char c) {
+		switch (c) {
+		case '<':
+			write("&lt;");
+			return;
+		case '>':
+			write("&gt;");
+			return;
+		case '&':
+			write("&amp;");
+			return;
+		default:
+			break;
+		}
+		countOutput(1);
+		try {
+			output.append(c);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends characters to the output sink.
+	 *
+	 * @param buffer
+	 *            characters to be written
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters
+	 * @throws UncheckedIOException
+	 *             is thrown if the sink cannot be written
+	 */
+	protected void write(char[] buffer, int offset, int length) {
+		countOutput(length);
+		try {
+			if (output instanceof StringBuilder) {
+				((StringBuilder) output).append(buffer, offset, length);
+			} else if (output instanceof Writer) {
+				((Writer) output).write(buffer, offset, length);
+			} else {
+				output.append(CharBuffer.wrap(buffer, offset, length));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Counts written characters against the output limit.
+	 *
+	 * @param length
+	 *            number of characters to be written
+	 * @throws UncheckedRtfLimitException
+	 *             is thrown if the output gets too large
+	 */
+	private void countOutput(int length) {
+		outputSize += length;
+		if (outputSize > maxOutputSize) {
+			throw new UncheckedRtfLimitException(new RtfLimitException(RtfLimitException.Limit.OUTPUT_SIZE,
+					"The HTML is larger than " + limits.getMaxOutputSize() + " characters."));
+		}
+	}
+
+	/**
+	 * Checks the deadline and the cancellation every
+	 * {@link RtfLimits#CHECK_INTERVAL} calls.
+	 *
+	 * @throws UncheckedRtfLimitException
+	 *             is thrown if the deadline has passed or the conversion was
+	 *             cancelled
+	 */
+	private void checkTime() {
+		if (--countdown == 0) {
+			countdown = RtfLimits.CHECK_INTERVAL;
+			try {
+				limits.checkTime(deadline, cancellation);
+			} catch (RtfLimitException e) {
+				throw new UncheckedRtfLimitException(e);
+			}
+		}
 	}
 
 	/**
@@ -492,11 +1245,32 @@ public class RtfHtml {
 	 *            symbol element to process
 	 */
 	protected void formatControlSymbol(RtfControlSymbol rtfSymbol) {
-		if (rtfSymbol.symbol == '\'') {
-			applyStyle("&#" + rtfSymbol.parameter + ";");
+		formatControlSymbol(rtfSymbol.symbol, rtfSymbol.parameter);
+	}
+
+	/**
+	 * Formats an RTF control symbol.
+	 *
+	 * @param symbol
+	 *            control symbol, e.g. ~
+	 * @param parameter
+	 *            symbol parameter, e.g. the value of \'hh
+	 */
+	protected void formatControlSymbol(char symbol, int parameter) {
+		if (symbol == '\'') {
+			int c = decoder.decode(state.getFont(), parameter);
+			// A first byte waits for the second one.
+			if (c >= 0) {
+				applyStyle();
+				write((char) c);
+				countCharacters(1, 1);
+			}
+			return;
 		}
-		if (rtfSymbol.symbol == '~') {
-			output += "&nbsp;";
+		decoder.interrupt();
+		if (symbol == '~') {
+			write("&nbsp;");
+			countCharacters(1, 1);
 		}
 	}
 
@@ -507,6 +1281,543 @@ public class RtfHtml {
 	 *            text element to process
 	 */
 	protected void formatText(RtfText rtfText) {
-		applyStyle(rtfText.text);
+		String text = rtfText.text;
+		if (decoder.hasLeadByte()) {
+			formatTrailByte(text.charAt(0));
+			text = text.substring(1);
+			if (text.isEmpty() || truncated) {
+				return;
+			}
+		}
+		int length = text.length();
+		int fit = fitPreview(length);
+		if (fit > 0 && fit < length && Character.isHighSurrogate(text.charAt(fit - 1))) {
+			// Do not split a surrogate pair.
+			fit--;
+		}
+		if (fit > 0) {
+			applyStyle(fit < length ? text.substring(0, fit) : text);
+		}
+		countCharacters(fit, length);
+	}
+
+	/**
+	 * Completes a double-byte character whose second byte is written as
+	 * plain character instead of \'hh.
+	 *
+	 * @param trail
+	 *            second byte
+	 */
+	private void formatTrailByte(char trail) {
+		applyStyle();
+		write(decoder.decodeTrailByte(state.getFont(), trail));
+		countCharacters(1, 1);
+	}
+
+	/**
+	 * Gets the number of characters of a text that fit into the preview.
+	 * Hidden text is only limited by the output size.
+	 *
+	 * @param length
+	 *            number of characters of the text
+	 * @return number of characters to be written
+	 */
+	private int fitPreview(int length) {
+		long fit = preview.getMaxOutputSize() - outputSize;
+		if (!state.isHidden()) {
+			fit = Math.min(fit, preview.getMaxCharacters() - characters);
+		}
+		return fit < length ? (int) Math.max(fit, 0) : length;
+	}
+
+	/**
+	 * Counts written characters for the preview and ends the conversion if a
+	 * limit is reached.
+	 *
+	 * @param written
+	 *            number of characters that were written
+	 * @param length
+	 *            number of characters that should have been written
+	 */
+	private void countCharacters(int written, int length) {
+		if (!state.isHidden()) {
+			characters += written;
+		}
+		if (written < length || characters >= preview.getMaxCharacters()
+				|| outputSize >= preview.getMaxOutputSize()) {
+			truncate();
+		}
+	}
+
+	/**
+	 * Ends the conversion when the preview is complete. The open tags are
+	 * closed, and the reader is stopped, so that the rest of the document is
+	 * not read.
+	 */
+	private void truncate() {
+		truncated = true;
+		closeTags();
+		if (previewReader != null) {
+			previewReader.stop();
+		}
+	}
+
+	/**
+	 * Checks if pictures are converted.
+	 *
+	 * @return {@code true} if pictures are embedded or stored by a sink
+	 */
+	private boolean hasPictures() {
+		return inlinePictures || pictureSink != null;
+	}
+
+	/**
+	 * This class turns the hex data of a picture into an image tag. The bytes
+	 * are decoded in small portions and passed on to the sink or to a base64
+	 * encoder that writes into the HTML.
+	 */
+	private class Picture {
+		private String type;
+		private int widthGoal;
+		private int heightGoal;
+		private int scaleX = 100;
+		private int scaleY = 100;
+		private OutputStream stream;
+		private int index;
+		private int high = -1;
+		private final byte[] bytes = new byte[4096];
+		private int count;
+
+		/**
+		 * Takes the picture properties.
+		 *
+		 * @param keyword
+		 *            keyword of the control word
+		 * @param parameter
+		 *            word parameter
+		 */
+		void controlWord(RtfKeyword keyword, int parameter) {
+			switch (keyword) {
+			case PNGBLIP:
+				type = "image/png";
+				break;
+			case JPEGBLIP:
+				type = "image/jpeg";
+				break;
+			case PICWGOAL:
+				widthGoal = parameter;
+				break;
+			case PICHGOAL:
+				heightGoal = parameter;
+				break;
+			case PICSCALEX:
+				scaleX = parameter;
+				break;
+			case PICSCALEY:
+				scaleY = parameter;
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * Checks if the picture can be shown by browsers.
+		 *
+		 * @return {@code true} for PNG and JPEG pictures
+		 */
+		boolean isSupported() {
+			return type != null;
+		}
+
+		/**
+		 * Decodes a part of the hex data.
+		 *
+		 * @param buffer
+		 *            characters containing hex digits
+		 * @param offset
+		 *            position of the first character
+		 * @param length
+		 *            number of characters
+		 * @throws UncheckedIOException
+		 *             is thrown if the picture cannot be written
+		 */
+		void write(char[] buffer, int offset, int length) {
+			try {
+				if (stream == null) {
+					start();
+				}
+				for (int i = offset; i < offset + length; i++) {
+					int c = buffer[i];
+					int value;
+					if (c >= '0' && c <= '9') {
+						value = c - '0';
+					} else if (c >= 'a' && c <= 'f') {
+						value = c - 'a' + 10;
+					} else if (c >= 'A' && c <= 'F') {
+						value = c - 'A' + 10;
+					} else {
+						// Skip line breaks and blanks.
+						continue;
+					}
+					if (high < 0) {
+						high = value;
+					} else {
+						bytes[count++] = (byte) (high << 4 | value);
+						high = -1;
+						if (count == bytes.length) {
+							stream.write(bytes, 0, count);
+							count = 0;
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Completes the image tag at the end of the picture group.
+		 *
+		 * @throws UncheckedIOException
+		 *             is thrown if the picture cannot be written
+		 */
+		void end() {
+			if (stream == null) {
+				return;
+			}
+			try {
+				stream.write(bytes, 0, count);
+				stream.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (pictureSink != null) {
+				RtfHtml.this.write("<img" + getSize() + " src=\""
+						+ pictureSink.getSource(index, type).replace("&", "&amp;").replace("\"", "&quot;") + "\">");
+			} else {
+				RtfHtml.this.write("\">");
+			}
+		}
+
+		/**
+		 * Opens the target of the decoded bytes.
+		 *
+		 * @throws IOException
+		 *             is thrown if the sink cannot be opened
+		 */
+		private void start() throws IOException {
+			applyStyle();
+			index = pictureCount++;
+			if (pictureSink != null) {
+				stream = pictureSink.open(index, type);
+			} else {
+				RtfHtml.this.write("<img" + getSize() + " src=\"data:" + type + ";base64,");
+				stream = Base64.getEncoder().wrap(new HtmlOutputStream());
+			}
+		}
+
+		/**
+		 * Gets the size attributes of the image tag.
+		 *
+		 * @return width and height in pixels or an empty string if unknown
+		 */
+		private String getSize() {
+			if (widthGoal <= 0 || heightGoal <= 0) {
+				return "";
+			}
+			// 15 twips are one pixel.
+			long width = Math.round(widthGoal * (scaleX / 100.0) / 15);
+			long height = Math.round(heightGoal * (scaleY / 100.0) / 15);
+			return " width=\"" + width + "\" height=\"" + height + "\"";
+		}
+	}
+
+	/**
+	 * This class passes the output of the base64 encoder to the HTML sink. As
+	 * base64 only consists of ASCII characters, each byte is one character.
+	 */
+	private class HtmlOutputStream extends OutputStream {
+		private final char[] chars = new char[1024];
+		private int count;
+
+		@Override
+		public void write(int b) {
+			if (count == chars.length) {
+				flush();
+			}
+			chars[count++] = (char) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				write(b[i]);
+			}
+		}
+
+		@Override
+		public void flush() {
+			RtfHtml.this.write(chars, 0, count);
+			count = 0;
+		}
+
+		@Override
+		public void close() {
+			// The HTML sink stays open.
+			flush();
+		}
+	}
+
+	/**
+	 * This class converts reader events into HTML tags using the state logic
+	 * of the formatter. Font and color tables are collected into small element
+	 * trees, so that they can be extracted like in the tree-based conversion.
+	 */
+	private class HtmlHandler implements RtfHandler {
+		private final Appendable out;
+		private final boolean page;
+		private final RtfReader reader;
+		private boolean groupStarted;
+		private int ignoredDepth;
+		private RtfTreeBuilder table;
+		private RtfKeyword tableType;
+		private boolean tableCached;
+		private Picture picture;
+		private boolean starred;
+
+		HtmlHandler(Appendable out, boolean page, RtfReader reader) {
+			this.out = out;
+			this.page = page;
+			this.reader = reader;
+		}
+
+		@Override
+		public void startDocument() {
+			groupStarted = false;
+			ignoredDepth = 0;
+			table = null;
+			tableCached = false;
+			picture = null;
+			starred = false;
+			previewReader = reader;
+			begin(out, page);
+		}
+
+		@Override
+		public void endDocument() {
+			end(page);
+			output = null;
+			previewReader = null;
+		}
+
+		@Override
+		public void startGroup() {
+			if (ignoredDepth > 0) {
+				ignoredDepth++;
+				starred = false;
+				if (table != null) {
+					table.startGroup();
+					if (tableCached) {
+						tableSource.append('{');
+					}
+				}
+				return;
+			}
+
+			// The group type is only known with the next event.
+			pushState();
+			groupStarted = true;
+		}
+
+		@Override
+		public void endGroup() {
+			groupStarted = false;
+			if (ignoredDepth > 0) {
+				if (table != null) {
+					table.endGroup();
+					if (tableCached) {
+						tableSource.append('}');
+					}
+				}
+				if (--ignoredDepth > 0) {
+					return;
+				}
+				if (table != null) {
+					endTable();
+				}
+				if (picture != null) {
+					picture.end();
+					picture = null;
+				}
+			}
+			popState();
+		}
+
+		@Override
+		public void controlWord(RtfKeyword keyword, String word, int parameter) {
+			checkTime();
+			if (truncated) {
+				// The reader was not stopped.
+				return;
+			}
+			if (ignoredDepth > 0) {
+				if (starred) {
+					// Pictures are also stored as shape pictures.
+					starred = false;
+					if (keyword == RtfKeyword.SHPPICT) {
+						ignoredDepth = 0;
+					}
+					return;
+				}
+				if (table != null) {
+					table.controlWord(keyword, word, parameter);
+					if (tableCached) {
+						RtfHeaderCache.appendControlWord(tableSource, word, parameter);
+					}
+				}
+				if (picture != null && ignoredDepth == 1) {
+					picture.controlWord(keyword, parameter);
+				}
+				return;
+			}
+			if (groupStarted) {
+				groupStarted = false;
+
+				// Can we ignore this group?
+				if (keyword == RtfKeyword.FONTTBL || keyword == RtfKeyword.COLORTBL) {
+					tableType = keyword;
+					table = new RtfTreeBuilder();
+					table.startDocument();
+					table.startGroup();
+					table.controlWord(keyword, word, parameter);
+					if (headerCache != null) {
+						// The table is also written as RTF again to look it
+						// up.
+						tableCached = true;
+						tableSource.setLength(0);
+						tableSource.append('{');
+						RtfHeaderCache.appendControlWord(tableSource, word, parameter);
+					}
+					ignoredDepth = 1;
+					return;
+				}
+				if (keyword == RtfKeyword.PICT && hasPictures()) {
+					picture = new Picture();
+					ignoredDepth = 1;
+					return;
+				}
+				// The alternative of a shape picture is not needed.
+				if (keyword == RtfKeyword.NONSHPPICT && hasPictures()) {
+					ignoredDepth = 1;
+					return;
+				}
+				if (isIgnored(word)) {
+					ignoredDepth = 1;
+					return;
+				}
+			}
+			formatControlWord(keyword, parameter);
+		}
+
+		@Override
+		public void controlSymbol(char symbol, int parameter) {
+			if (truncated) {
+				return;
+			}
+			if (ignoredDepth > 0) {
+				starred = false;
+				if (table != null) {
+					table.controlSymbol(symbol, parameter);
+					if (tableCached) {
+						RtfHeaderCache.appendControlSymbol(tableSource, symbol, parameter);
+					}
+				}
+				return;
+			}
+			if (groupStarted) {
+				groupStarted = false;
+
+				// Ignore destinations, except shape pictures that are
+				// recognized by the next control word.
+				if (symbol == '*') {
+					ignoredDepth = 1;
+					starred = hasPictures();
+					return;
+				}
+			}
+			formatControlSymbol(symbol, parameter);
+		}
+
+		@Override
+		public void text(char[] buffer, int offset, int length) {
+			checkTime();
+			if (truncated) {
+				return;
+			}
+			if (ignoredDepth > 0) {
+				starred = false;
+				if (table != null) {
+					table.text(buffer, offset, length);
+					if (tableCached) {
+						RtfHeaderCache.appendText(tableSource, buffer, offset, length);
+					}
+				}
+				if (picture != null && ignoredDepth == 1 && picture.isSupported()) {
+					picture.write(buffer, offset, length);
+				}
+				return;
+			}
+			groupStarted = false;
+			if (decoder.hasLeadByte()) {
+				formatTrailByte(buffer[offset]);
+				if (--length == 0 || truncated) {
+					return;
+				}
+				offset++;
+			}
+			int fit = fitPreview(length);
+			if (fit > 0 && fit < length && Character.isHighSurrogate(buffer[offset + fit - 1])) {
+				// Do not split a surrogate pair.
+				fit--;
+			}
+			if (fit > 0) {
+				applyStyle();
+				write(buffer, offset, fit);
+			}
+			countCharacters(fit, length);
+		}
+
+		@Override
+		public void data(RtfKeyword destination, long offset, long length) {
+			// Unsupported pictures and objects are not rendered.
+			groupStarted = false;
+			starred = false;
+		}
+
+		@Override
+		public boolean isDataRequested(RtfKeyword destination) {
+			return picture != null && ignoredDepth == 1 && picture.isSupported();
+		}
+
+		/**
+		 * Extracts the collected font or color table, or takes it from the
+		 * header cache.
+		 */
+		private void endTable() {
+			table.endDocument();
+			if (!tableCached) {
+				extractTable(tableType, table.root.children);
+			} else {
+				tableCached = false;
+				// A new table is extracted from the collected tree once.
+				String source = tableSource.toString();
+				if (!useCachedTable(tableType, source)) {
+					extractTable(tableType, table.root.children);
+					cacheTable(tableType, source);
+				}
+			}
+			table = null;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package org.rtf;
+
+import java.util.Locale;
+
+/**
+ * This enumeration lists the RTF control words known to this library. The
+ * lexer resolves every control word once into one of these keywords, so that
+ * it can be processed by a switch instead of string comparisons. Words that
+ * are not listed map to {@link #UNKNOWN}.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public enum RtfKeyword {
+	// Unknown control word; the word itself has to be taken from the text
+	UNKNOWN,
+
+	// Character formatting
+	PLAIN, B, I, UL, ULNONE, ULD, ULDB, ULW, STRIKE, STRIKED, V, CAPS, SCAPS,
+	OUTL, SHAD, F, FS, DN, UP, SUB, SUPER, NOSUPERSUB, CF, CB, CHCBPAT,
+	HIGHLIGHT, LANG, LANGFE, LANGNP, LANGFENP, NOPROOF, KERNING, EXPND,
+	EXPNDTW, CHARSCALEX, CGRID, RTLCH, LTRCH, LOCH, HICH, DBCH, FCS, AF, AFS,
+	AB, AI, ALANG, CS, INSRSID, CHARRSID, DELRSID,
+
+	// Special characters
+	LQUOTE, RQUOTE, LDBLQUOTE, RDBLQUOTE, EMDASH, ENDASH, EMSPACE, ENSPACE,
+	QMSPACE, TAB, LINE, BULLET, U, UC, UD, UPR, PAR, ROW, CELL, SECT, PAGE,
+	COLUMN, ZWJ, ZWNJ, LTRMARK, RTLMARK,
+
+	// Paragraph formatting
+	PARD, S, SA, SB, SL, SLMULT, LI, RI, FI, LIN, RIN, QL, QR, QC, QJ, KEEP,
+	KEEPN, WIDCTLPAR, NOWIDCTLPAR, HYPHPAR, NOHYPHPAR, ITAP, INTBL, LS, ILVL,
+	OUTLINELEVEL, ASPALPHA, ASPNUM, FAAUTO, ADJUSTRIGHT, TX, TQR, TQC, TQDEC,
+	TB, WRAPDEFAULT, PARARSID, CONTEXTUALSPACE, RTLPAR, LTRPAR, SBAUTO, SAAUTO,
+
+	// Tables
+	TROWD, TRGAPH, TRLEFT, TRQL, TRQR, TRQC, CELLX, CLVERTALT, CLBRDRT,
+	CLBRDRL, CLBRDRB, CLBRDRR, BRDRS, BRDRW, BRDRCF, BRDRNONE, NESTROW,
+	NESTCELL,
+
+	// Document and section formatting
+	RTF, ANSI, MAC, PC, PCA, ANSICPG, DEFF, ADEFF, STSHFDBCH, STSHFLOCH,
+	STSHFHICH, STSHFBI, DEFLANG, DEFLANGFE, ADEFLANG, NOUICOMPAT, VIEWKIND,
+	VIEWSCALE, SECTD, SBKNONE, MARGL, MARGR, MARGT, MARGB, PAPERW, PAPERH,
+	DEFTAB, WIDOWCTRL, FTNBJ, AENDDOC, SECTRSID, PGWSXN, PGHSXN, MARGLSXN,
+	MARGRSXN, MARGTSXN, MARGBSXN, HEADERY, FOOTERY, COLSX, LINEX,
+
+	// Destinations
+	FONTTBL, COLORTBL, STYLESHEET, INFO, PICT, PICTPROP, OBJECT, OBJDATA,
+	OBJCLASS, RESULT, GENERATOR, LISTTABLE, LISTOVERRIDETABLE, LIST, LISTLEVEL,
+	LISTOVERRIDE, RSIDTBL, THEMEDATA, COLORSCHEMEMAPPING, LATENTSTYLES,
+	LSDLOCKEDEXCEPT, DATASTORE, XMLNSTBL, PGDSCTBL, WGRFFMTFILTER, PNTEXT,
+	PNTXTA, PNTXTB, PN, LISTTEXT, FIELD, FLDINST, FLDRSLT, BKMKSTART, BKMKEND,
+	FOOTNOTE, HEADER, FOOTER, HEADERL, HEADERR, FOOTERL, FOOTERR, SHP, SHPINST,
+	SHPTXT, SP, SN, SV, SHPPICT, NONSHPPICT, BLIPUID, BLIPTAG, TITLE, SUBJECT,
+	AUTHOR, OPERATOR, KEYWORDS, COMMENT, DOCCOMM, COMPANY, MANAGER, CATEGORY,
+	CREATIM, REVTIM, PRINTIM, BUPTIM, VERSION, VERN, EDMINS, NOFPAGES,
+	NOFWORDS, NOFCHARS, NOFCHARSWS, ID,
+
+	// Date and time
+	YR, MO, DY, HR, MIN, SEC,
+
+	// Font table
+	FNIL, FROMAN, FSWISS, FMODERN, FSCRIPT, FDECOR, FTECH, FBIDI, FCHARSET,
+	FPRQ, CPG, PANOSE, FALT,
+
+	// Color table
+	RED, GREEN, BLUE,
+
+	// Pictures and objects
+	BIN, PNGBLIP, JPEGBLIP, EMFBLIP, WMETAFILE, DIBITMAP, WBITMAP, MACPICT,
+	PICW, PICH, PICWGOAL, PICHGOAL, PICSCALEX, PICSCALEY, PICCROPL, PICCROPR,
+	PICCROPT, PICCROPB, OBJEMB, OBJLINK, OBJW, OBJH;
+
+	private static final RtfKeyword[] TABLE;
+	private static final int MASK;
+
+	static {
+		// Open addressing table with a load factor of at most 1/4, so that
+		// lookups rarely need more than one probe.
+		RtfKeyword[] keywords = values();
+		int size = Integer.highestOneBit(keywords.length * 4 - 1) << 1;
+		TABLE = new RtfKeyword[size];
+		MASK = size - 1;
+		for (RtfKeyword keyword : keywords) {
+			if (keyword != UNKNOWN) {
+				int i = spread(keyword.word.hashCode()) & MASK;
+				while (TABLE[i] != null) {
+					i = (i + 1) & MASK;
+				}
+				TABLE[i] = keyword;
+			}
+		}
+	}
+
+	/**
+	 * Control word, e.g. fs
+	 */
+	public final String word;
+
+	private RtfKeyword() {
+		word = name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Finds the keyword of a control word.
+	 *
+	 * @param buffer
+	 *            characters containing the control word
+	 * @param offset
+	 *            position of the first letter
+	 * @param length
+	 *            number of letters
+	 * @return keyword or {@link #UNKNOWN}
+	 */
+	public static RtfKeyword lookup(char[] buffer, int offset, int length) {
+		// Same hash as String.hashCode(), so that both lookups agree.
+		int h = 0;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + buffer[i];
+		}
+
+		for (int i = spread(h) & MASK;; i = (i + 1) & MASK) {
+			RtfKeyword keyword = TABLE[i];
+			if (keyword == null) {
+				return UNKNOWN;
+			}
+			if (keyword.matches(buffer, offset, length)) {
+				return keyword;
+			}
+		}
+	}
+
+	/**
+	 * Finds the keyword of a control word.
+	 *
+	 * @param word
+	 *            control word, e.g. fs
+	 * @return keyword or {@link #UNKNOWN}
+	 */
+	public static RtfKeyword lookup(String word) {
+		for (int i = spread(word.hashCode()) & MASK;; i = (i + 1) & MASK) {
+			RtfKeyword keyword = TABLE[i];
+			if (keyword == null) {
+				return UNKNOWN;
+			}
+			if (keyword.word.equals(word)) {
+				return keyword;
+			}
+		}
+	}
+
+	/**
+	 * Compares the keyword with a range of characters.
+	 *
+	 * @param buffer
+	 *            characters containing the control word
+	 * @param offset
+	 *            position of the first letter
+	 * @param length
+	 *            number of letters
+	 * @return {@code true} if the characters spell this keyword
+	 */
+	private boolean matches(char[] buffer, int offset, int length) {
+		if (word.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != buffer[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Mixes the upper bits of a hash into the lower ones used as index.
+	 *
+	 * @param h
+	 *            string hash
+	 * @return spread hash
+	 */
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+}
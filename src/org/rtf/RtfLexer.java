@@ -0,0 +1,747 @@
+package org.rtf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * This class splits RTF characters into tokens: group starts and ends, control
+ * words, control symbols and plain text. Names and texts are not copied but
+ * reported as ranges of the scanned buffer, so no objects are created while
+ * reading the characters. Line breaks of the source are ignored, also
+ * within texts, as they are not part of the document in RTF.
+ * <p>
+ * The characters are either given as a complete array or pulled from a
+ * {@link Reader} in fixed-size chunks. In the latter case only the current
+ * token is kept when the buffer is refilled, and long texts are reported in
+ * several consecutive ranges.
+ * <p>
+ * Binary data following \binN and the rest of a group passed to
+ * {@link #skipGroup()} are jumped over without being buffered; only their
+ * position in the source is reported.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfLexer {
+	/**
+	 * No more tokens available
+	 */
+	public static final int END = 0;
+
+	/**
+	 * Opening brace
+	 */
+	public static final int GROUP_START = 1;
+
+	/**
+	 * Closing brace
+	 */
+	public static final int GROUP_END = 2;
+
+	/**
+	 * Control word, e.g. \fs22; the name is available as range, the value by
+	 * {@link #getParameter()}
+	 */
+	public static final int CONTROL_WORD = 3;
+
+	/**
+	 * Control symbol, e.g. \~ or \'f6; see {@link #getSymbol()} and
+	 * {@link #getParameter()}
+	 */
+	public static final int CONTROL_SYMBOL = 4;
+
+	/**
+	 * Plain text, either a run of characters or a single escaped character
+	 * like \{; the text is available as range
+	 */
+	public static final int TEXT = 5;
+
+	/**
+	 * Data that has been jumped over, either the binary data following \binN
+	 * or the rest of a group passed to {@link #skipGroup()}; see
+	 * {@link #getDataOffset()} and {@link #getDataLength()}
+	 */
+	public static final int DATA = 6;
+
+	/**
+	 * Default number of characters read from a {@link Reader} at once
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private Reader source;
+	private char[] window;
+	private char[] buf;
+	private int pos;
+	private int limit;
+	private int offset;
+	private int length;
+	private int parameter;
+	private char symbol;
+	private RtfKeyword keyword;
+	private int token;
+	private long base;
+	private int binaryLength;
+	private long dataOffset;
+	private long dataLength;
+	private final String[] unknownWords = new String[64];
+	private RtfLimits limits = RtfLimits.NONE;
+	private long deadline = Long.MAX_VALUE;
+	private RtfCancellation cancellation;
+	private long start;
+
+	/**
+	 * Creates a new lexer for the given characters.
+	 *
+	 * @param buffer
+	 *            characters containing the rich text; they are not copied
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters to scan
+	 */
+	public RtfLexer(char[] buffer, int offset, int length) {
+		reset(buffer, offset, length);
+	}
+
+	/**
+	 * Creates a new lexer that reads the characters in chunks.
+	 *
+	 * @param reader
+	 *            source of the rich text
+	 */
+	public RtfLexer(Reader reader) {
+		this(reader, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new lexer that reads the characters in chunks.
+	 *
+	 * @param reader
+	 *            source of the rich text
+	 * @param bufferSize
+	 *            number of characters read at once
+	 */
+	public RtfLexer(Reader reader, int bufferSize) {
+		window = new char[Math.max(bufferSize, 16)];
+		reset(reader);
+	}
+
+	/**
+	 * Restarts the lexer on another source, so that an instance and its
+	 * buffer can be reused for several documents.
+	 *
+	 * @param reader
+	 *            source of the rich text
+	 */
+	public void reset(Reader reader) {
+		if (window == null) {
+			window = new char[DEFAULT_BUFFER_SIZE];
+		}
+		reset(window, 0, 0);
+		source = reader;
+	}
+
+	/**
+	 * Restarts the lexer on other characters, so that an instance can be
+	 * reused for several documents.
+	 *
+	 * @param buffer
+	 *            characters containing the rich text; they are not copied
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters to scan
+	 */
+	public void reset(char[] buffer, int offset, int length) {
+		source = null;
+		buf = buffer;
+		pos = offset;
+		limit = offset + length;
+		this.offset = 0;
+		this.length = 0;
+		parameter = 0;
+		symbol = 0;
+		keyword = RtfKeyword.UNKNOWN;
+		token = END;
+		base = 0;
+		binaryLength = 0;
+		dataOffset = 0;
+		dataLength = 0;
+		limits = RtfLimits.NONE;
+		deadline = Long.MAX_VALUE;
+		cancellation = null;
+		start = 0;
+	}
+
+	/**
+	 * Sets the limits that are checked whenever characters are read from the
+	 * source, so that they also apply while binary data or the rest of a
+	 * group is skipped. The input size is counted from the current position.
+	 *
+	 * @param limits
+	 *            limits of input size and time
+	 * @param deadline
+	 *            deadline as of {@link System#nanoTime()}
+	 * @param cancellation
+	 *            token of the conversion or {@code null}
+	 */
+	void setLimits(RtfLimits limits, long deadline, RtfCancellation cancellation) {
+		this.limits = limits;
+		this.deadline = deadline;
+		this.cancellation = cancellation;
+		start = base + pos;
+	}
+
+	/**
+	 * Reads the next token.
+	 *
+	 * @return one of {@link #GROUP_START}, {@link #GROUP_END},
+	 *         {@link #CONTROL_WORD}, {@link #CONTROL_SYMBOL}, {@link #TEXT},
+	 *         {@link #DATA} or {@link #END} if all characters have been read
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	public int next() throws IOException {
+		if (binaryLength > 0) {
+			// The binary data following \binN is not scanned at all.
+			long start = base + pos;
+			skip(binaryLength);
+			binaryLength = 0;
+			return setData(start);
+		}
+		return token = scan();
+	}
+
+	/**
+	 * Jumps over the rest of the current group up to, but not including, its
+	 * closing brace. Nested groups are skipped by counting braces, binary data
+	 * by its length. If the current token is a text, it is part of the
+	 * skipped data.
+	 *
+	 * @return {@link #DATA}
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	public int skipGroup() throws IOException {
+		long start = base + (token == TEXT ? offset : pos);
+		int depth = 0;
+		loop: while (pos < limit || fill()) {
+			switch (buf[pos]) {
+			case '{':
+				depth++;
+				pos++;
+				break;
+			case '}':
+				if (depth == 0) {
+					break loop;
+				}
+				depth--;
+				pos++;
+				break;
+			case '\\':
+				int c = peek(1);
+				if (c < 0) {
+					pos = limit;
+				} else if (isLetter(c)) {
+					scanControlWord();
+					if (binaryLength > 0) {
+						skip(binaryLength);
+						binaryLength = 0;
+					}
+				} else {
+					pos += 2;
+				}
+				break;
+			default:
+				// Hex data makes up most of a picture, so it is passed
+				// over in a tight loop.
+				int p = pos + 1;
+				while (p < limit) {
+					char ch = buf[p];
+					if (ch == '\\' || ch == '{' || ch == '}') {
+						break;
+					}
+					p++;
+				}
+				pos = p;
+				break;
+			}
+		}
+		return setData(start);
+	}
+
+	/**
+	 * Scans the next token.
+	 *
+	 * @return token type
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	private int scan() throws IOException {
+		while (pos < limit || fill()) {
+			switch (buf[pos]) {
+			case '\r':
+			case '\n':
+				// Ignore \r and \n of the source.
+				pos++;
+				break;
+			case '{':
+				pos++;
+				return GROUP_START;
+			case '}':
+				pos++;
+				return GROUP_END;
+			case '\\':
+				return scanControl();
+			default:
+				return scanText();
+			}
+		}
+		return END;
+	}
+
+	/**
+	 * Gets the buffer to which the ranges of control word names and texts
+	 * refer.
+	 *
+	 * @return scanned characters
+	 */
+	public char[] getBuffer() {
+		return buf;
+	}
+
+	/**
+	 * Gets the start of the current control word name or text.
+	 *
+	 * @return position within {@link #getBuffer()}
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Gets the length of the current control word name or text.
+	 *
+	 * @return number of characters
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the parameter of the current control word or control symbol.
+	 *
+	 * @return word parameter (1 if omitted) or the value of a \'hh symbol
+	 */
+	public int getParameter() {
+		return parameter;
+	}
+
+	/**
+	 * Gets the current control symbol.
+	 *
+	 * @return symbol character, e.g. &#42;
+	 */
+	public char getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * Gets the keyword of the current control word.
+	 *
+	 * @return keyword or {@link RtfKeyword#UNKNOWN}
+	 */
+	public RtfKeyword getKeyword() {
+		return keyword;
+	}
+
+	/**
+	 * Gets the current control word name. Known words are not copied, and the
+	 * names of recently seen unknown words are reused.
+	 *
+	 * @return control word, e.g. fs
+	 */
+	public String getWord() {
+		if (keyword != RtfKeyword.UNKNOWN) {
+			return keyword.word;
+		}
+
+		int h = 0;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + buf[i];
+		}
+		int slot = (h ^ (h >>> 16)) & (unknownWords.length - 1);
+		String word = unknownWords[slot];
+		if (word == null || !isWord(word)) {
+			word = new String(buf, offset, length);
+			unknownWords[slot] = word;
+		}
+		return word;
+	}
+
+	/**
+	 * Gets the position behind the current token in the source. Like
+	 * {@link #getDataOffset()}, it is the index in the scanned array or the
+	 * number of characters read from the reader.
+	 *
+	 * @return position in the source
+	 */
+	public long getPosition() {
+		return base + pos;
+	}
+
+	/**
+	 * Gets the start of the current data in the source. In contrast to
+	 * {@link #getOffset()}, the position does not refer to the buffer but is
+	 * the index in the scanned array or the number of characters read from
+	 * the reader before the data.
+	 *
+	 * @return position in the source
+	 */
+	public long getDataOffset() {
+		return dataOffset;
+	}
+
+	/**
+	 * Gets the length of the current data.
+	 *
+	 * @return number of characters
+	 */
+	public long getDataLength() {
+		return dataLength;
+	}
+
+	/**
+	 * Creates a string from the current text.
+	 *
+	 * @return plain text
+	 */
+	public String getText() {
+		return new String(buf, offset, length);
+	}
+
+	/**
+	 * Compares a word with the current control word name.
+	 *
+	 * @param word
+	 *            word to compare
+	 * @return {@code true} if the word has the same letters
+	 */
+	private boolean isWord(String word) {
+		if (word.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != buf[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Scans a control word, a control symbol or an escaped character.
+	 *
+	 * @return token type
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	private int scanControl() throws IOException {
+		int c = peek(1);
+		if (c < 0) {
+			// A trailing backslash carries no information.
+			pos = limit;
+			return END;
+		}
+
+		if (isLetter(c)) {
+			return scanControlWord();
+		}
+
+		// Escaped characters are part of the text.
+		if (c == '\\' || c == '{' || c == '}') {
+			offset = pos + 1;
+			length = 1;
+			pos += 2;
+			return TEXT;
+		}
+
+		// Symbols ordinarily have no parameter. However, if this is \', then it
+		// is followed by a 2-digit hex-code.
+		symbol = (char) c;
+		parameter = 0;
+		int i = 2;
+		if (c == '\'') {
+			for (int h; i < 4 && (h = hexValue(peek(i))) >= 0; i++) {
+				parameter = parameter * 16 + h;
+			}
+		}
+		pos += i;
+		return CONTROL_SYMBOL;
+	}
+
+	/**
+	 * Scans the name and parameter of a control word. All positions are
+	 * relative to the backslash, as the buffer may be compacted in between.
+	 *
+	 * @return token type
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	private int scanControlWord() throws IOException {
+		int i = 2;
+		while (isLetter(peek(i))) {
+			i++;
+		}
+		int nameLength = i - 1;
+
+		// Read parameter (if any) consisting of digits.
+		// Parameter may be negative.
+		boolean negative = false;
+		if (peek(i) == '-' && isDigit(peek(i + 1))) {
+			negative = true;
+			i++;
+		}
+
+		int value = 1;
+		int c = peek(i);
+		if (isDigit(c)) {
+			value = 0;
+			do {
+				value = value * 10 + (c - '0');
+				c = peek(++i);
+			} while (isDigit(c));
+			if (negative) {
+				value = -value;
+			}
+		}
+
+		// If the current character is a space, then it is a delimiter. It is
+		// consumed.
+		if (c == ' ') {
+			i++;
+		}
+
+		// If this is u, then the parameter will be followed by a replacement
+		// character which is jumped over.
+		if (nameLength == 1 && buf[pos + 1] == 'u') {
+			// Convert to UTF unsigned decimal code.
+			if (negative) {
+				value += 65536;
+			}
+			i = skipReplacement(i);
+		}
+
+		offset = pos + 1;
+		length = nameLength;
+		keyword = RtfKeyword.lookup(buf, offset, length);
+		parameter = value;
+		pos += i;
+
+		// The data following \binN is taken as it is by the next call.
+		if (keyword == RtfKeyword.BIN && value > 0) {
+			binaryLength = value;
+		}
+		return CONTROL_WORD;
+	}
+
+	/**
+	 * Jumps over characters without keeping them in the buffer.
+	 *
+	 * @param count
+	 *            number of characters
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	private void skip(int count) throws IOException {
+		while (count > 0 && (pos < limit || fill())) {
+			int n = Math.min(count, limit - pos);
+			pos += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Makes the characters skipped since the given position the current data.
+	 *
+	 * @param start
+	 *            position in the source
+	 * @return {@link #DATA}
+	 */
+	private int setData(long start) {
+		dataOffset = start;
+		dataLength = base + pos - start;
+		return token = DATA;
+	}
+
+	/**
+	 * Jumps over the replacement character following a u control word.
+	 *
+	 * @param i
+	 *            position after the control word, relative to its backslash
+	 * @return relative position after the replacement character
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	private int skipReplacement(int i) throws IOException {
+		int c = peek(i);
+		if (c < 0 || c == '{' || c == '}') {
+			return i;
+		}
+		if (c == '\\') {
+			// The replacement character may be encoded as hexadecimal value
+			// \'hh.
+			if (peek(i + 1) == '\'') {
+				int end = i + 2;
+				while (end < i + 4 && peek(end) >= 0) {
+					end++;
+				}
+				return end;
+			}
+			return i;
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Scans a run of plain text up to the next backslash, brace or line
+	 * break.
+	 *
+	 * @return token type
+	 */
+	private int scanText() {
+		// Texts are not extended by refilling the buffer; the rest follows as
+		// another range. Line breaks of the source are not part of the text,
+		// so they end the range wherever the buffer ends.
+		int p = pos + 1;
+		while (p < limit) {
+			char c = buf[p];
+			if (c == '\\' || c == '{' || c == '}' || c == '\r' || c == '\n') {
+				break;
+			}
+			p++;
+		}
+		offset = pos;
+		length = p - pos;
+		pos = p;
+		return TEXT;
+	}
+
+	/**
+	 * Gets a character ahead of the current token start, refilling the buffer
+	 * if necessary.
+	 *
+	 * @param i
+	 *            position relative to the current token start
+	 * @return character or -1 if the end of the input has been reached
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 */
+	private int peek(int i) throws IOException {
+		while (pos + i >= limit) {
+			if (!fill()) {
+				return -1;
+			}
+		}
+		return buf[pos + i];
+	}
+
+	/**
+	 * Reads the next chunk from the source. Characters before the current
+	 * token start are discarded; the buffer only grows if a single token does
+	 * not fit into it.
+	 *
+	 * @return {@code true} if at least one character was added
+	 * @throws IOException
+	 *             is thrown if the characters cannot be read from the source
+	 * @throws UncheckedRtfLimitException
+	 *             is thrown if a limit is exceeded
+	 */
+	private boolean fill() throws IOException {
+		if (source == null) {
+			return false;
+		}
+
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			base += pos;
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit == buf.length) {
+			buf = Arrays.copyOf(buf, buf.length * 2);
+			window = buf;
+		}
+
+		int n;
+		do {
+			n = source.read(buf, limit, buf.length - limit);
+		} while (n == 0);
+		if (n < 0) {
+			source = null;
+			return false;
+		}
+		limit += n;
+		checkLimits();
+		return true;
+	}
+
+	/**
+	 * Checks the size of the characters read so far, the deadline and the
+	 * cancellation.
+	 *
+	 * @throws UncheckedRtfLimitException
+	 *             is thrown if a limit is exceeded; the reader unwraps it
+	 *             again
+	 */
+	private void checkLimits() {
+		try {
+			limits.checkInputSize(base + limit - start);
+			limits.checkTime(deadline, cancellation);
+		} catch (RtfLimitException e) {
+			throw new UncheckedRtfLimitException(e);
+		}
+	}
+
+	/**
+	 * Checks if a character is a digit.
+	 *
+	 * @param c
+	 *            character to check
+	 * @return {@code true} if the character is one of 0-9
+	 */
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Checks if a character is a letter.
+	 *
+	 * @param c
+	 *            character to check
+	 * @return {@code true} if the character is one of a-z or A-Z
+	 */
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	/**
+	 * Converts a hexadecimal digit to its value.
+	 *
+	 * @param c
+	 *            hex digit, e.g. 'a'
+	 * @return number between 0 and 15 or -1 if it is no hex digit
+	 */
+	private static int hexValue(int c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+}
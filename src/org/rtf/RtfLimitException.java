@@ -0,0 +1,70 @@
+package org.rtf;
+
+/**
+ * This exception is thrown if a conversion exceeds one of its
+ * {@link RtfLimits} or is cancelled.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfLimitException extends RtfParseException {
+	private static final long serialVersionUID = 0L;
+
+	/**
+	 * This enumeration lists the limits that can be exceeded.
+	 */
+	public enum Limit {
+		/**
+		 * The input is larger than {@link RtfLimits#getMaxInputSize()}.
+		 */
+		INPUT_SIZE,
+
+		/**
+		 * Groups are nested deeper than {@link RtfLimits#getMaxDepth()}.
+		 */
+		DEPTH,
+
+		/**
+		 * The input has more nodes than {@link RtfLimits#getMaxNodes()}.
+		 */
+		NODES,
+
+		/**
+		 * The output is larger than {@link RtfLimits#getMaxOutputSize()}.
+		 */
+		OUTPUT_SIZE,
+
+		/**
+		 * The conversion takes longer than {@link RtfLimits#getTimeout()}.
+		 */
+		TIMEOUT,
+
+		/**
+		 * The conversion was stopped by an {@link RtfCancellation}.
+		 */
+		CANCELLED
+	}
+
+	private final Limit limit;
+
+	/**
+	 * Creates the new exception.
+	 *
+	 * @param limit
+	 *            exceeded limit, e.g. {@link Limit#DEPTH}
+	 * @param message
+	 *            error details
+	 */
+	public RtfLimitException(Limit limit, String message) {
+		super(message);
+		this.limit = limit;
+	}
+
+	/**
+	 * Gets the exceeded limit.
+	 *
+	 * @return exceeded limit, e.g. {@link Limit#DEPTH}
+	 */
+	public Limit getLimit() {
+		return limit;
+	}
+}
@@ -0,0 +1,248 @@
+package org.rtf;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class defines how much input, nesting, nodes, output and time a
+ * conversion may take, so that large or hostile documents are rejected early
+ * instead of occupying a thread for minutes:
+ *
+ * <pre>
+ * RtfLimits limits = RtfLimits.builder().maxInputSize(10 * 1024 * 1024).maxDepth(1000).timeout(2000).build();
+ * reader.setLimits(limits);
+ * formatter.setLimits(limits);
+ * </pre>
+ *
+ * A reader or formatter that exceeds a limit throws an
+ * {@link RtfLimitException}. Depth, node count and output size are checked
+ * with every token or write, the input size, the deadline and a
+ * {@link RtfCancellation} only every {@link #CHECK_INTERVAL} tokens or
+ * elements. Limits are immutable and can be shared.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class RtfLimits {
+	/**
+	 * Number of tokens or elements between two checks of the input size, the
+	 * deadline and the cancellation
+	 */
+	public static final int CHECK_INTERVAL = 1024;
+
+	/**
+	 * Limits that never apply
+	 */
+	public static final RtfLimits NONE = builder().build();
+
+	// Largest timeout whose deadline can be compared with the clock
+	private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 2;
+
+	private final long maxInputSize;
+	private final int maxDepth;
+	private final long maxNodes;
+	private final long maxOutputSize;
+	private final long timeout;
+
+	private RtfLimits(Builder builder) {
+		maxInputSize = builder.maxInputSize;
+		maxDepth = builder.maxDepth;
+		maxNodes = builder.maxNodes;
+		maxOutputSize = builder.maxOutputSize;
+		timeout = builder.timeout;
+	}
+
+	/**
+	 * Creates a builder for limits.
+	 *
+	 * @return builder without any limits
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Gets the maximum input size.
+	 *
+	 * @return number of characters
+	 */
+	public long getMaxInputSize() {
+		return maxInputSize;
+	}
+
+	/**
+	 * Gets the maximum group depth.
+	 *
+	 * @return number of nested groups including the root group
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Gets the maximum number of nodes.
+	 *
+	 * @return number of groups, control words, control symbols, texts and
+	 *         data
+	 */
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+
+	/**
+	 * Gets the maximum output size.
+	 *
+	 * @return number of HTML characters
+	 */
+	public long getMaxOutputSize() {
+		return maxOutputSize;
+	}
+
+	/**
+	 * Gets the time a conversion may take.
+	 *
+	 * @return milliseconds or 0 if the time is not limited
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Calculates the deadline of a conversion.
+	 *
+	 * @param startNanos
+	 *            start of the conversion as of {@link System#nanoTime()}
+	 * @return deadline as of {@link System#nanoTime()} or
+	 *         {@link Long#MAX_VALUE} if the time is not limited
+	 */
+	long getDeadline(long startNanos) {
+		if (timeout <= 0) {
+			return Long.MAX_VALUE;
+		}
+		// The conversion of very large timeouts saturates instead of
+		// overflowing. Timeouts beyond the range of the clock comparison
+		// cannot be reached anyway, so they do not limit the time.
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		return nanos < MAX_TIMEOUT_NANOS ? startNanos + nanos : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Checks the size of the input.
+	 *
+	 * @param size
+	 *            number of characters read or to be read
+	 * @throws RtfLimitException
+	 *             is thrown if the input is too large
+	 */
+	void checkInputSize(long size) throws RtfLimitException {
+		if (size > maxInputSize) {
+			throw new RtfLimitException(RtfLimitException.Limit.INPUT_SIZE,
+					"The document is larger than " + maxInputSize + " characters.");
+		}
+	}
+
+	/**
+	 * Checks the deadline and the cancellation.
+	 *
+	 * @param deadline
+	 *            deadline as of {@link System#nanoTime()}
+	 * @param cancellation
+	 *            token of the conversion or {@code null}
+	 * @throws RtfLimitException
+	 *             is thrown if the deadline has passed or the conversion was
+	 *             cancelled
+	 */
+	void checkTime(long deadline, RtfCancellation cancellation) throws RtfLimitException {
+		if (cancellation != null && cancellation.isCancelled()) {
+			throw new RtfLimitException(RtfLimitException.Limit.CANCELLED, "The conversion was cancelled.");
+		}
+		// Comparing the difference also works if the clock overflows.
+		if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+			throw new RtfLimitException(RtfLimitException.Limit.TIMEOUT,
+					"The conversion took longer than " + timeout + " ms.");
+		}
+	}
+
+	/**
+	 * This class collects the limits.
+	 */
+	public static final class Builder {
+		private long maxInputSize = Long.MAX_VALUE;
+		private int maxDepth = Integer.MAX_VALUE;
+		private long maxNodes = Long.MAX_VALUE;
+		private long maxOutputSize = Long.MAX_VALUE;
+		private long timeout;
+
+		private Builder() {
+		}
+
+		/**
+		 * Limits the input size.
+		 *
+		 * @param maxInputSize
+		 *            number of characters (bytes of files and streams)
+		 * @return this builder
+		 */
+		public Builder maxInputSize(long maxInputSize) {
+			this.maxInputSize = maxInputSize;
+			return this;
+		}
+
+		/**
+		 * Limits the group depth.
+		 *
+		 * @param maxDepth
+		 *            number of nested groups including the root group
+		 * @return this builder
+		 */
+		public Builder maxDepth(int maxDepth) {
+			this.maxDepth = maxDepth;
+			return this;
+		}
+
+		/**
+		 * Limits the number of nodes, i.e. groups, control words, control
+		 * symbols, texts and data.
+		 *
+		 * @param maxNodes
+		 *            number of nodes
+		 * @return this builder
+		 */
+		public Builder maxNodes(long maxNodes) {
+			this.maxNodes = maxNodes;
+			return this;
+		}
+
+		/**
+		 * Limits the output size.
+		 *
+		 * @param maxOutputSize
+		 *            number of HTML characters
+		 * @return this builder
+		 */
+		public Builder maxOutputSize(long maxOutputSize) {
+			this.maxOutputSize = maxOutputSize;
+			return this;
+		}
+
+		/**
+		 * Limits the time of a conversion. Parsing and formatting are timed
+		 * separately, unless they are done in one pass by a handler.
+		 *
+		 * @param timeout
+		 *            milliseconds or 0 for no limit
+		 * @return this builder
+		 */
+		public Builder timeout(long timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		/**
+		 * Creates limits with the current values.
+		 *
+		 * @return new limits
+		 */
+		public RtfLimits build() {
+			return new RtfLimits(this);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package org.rtf;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the metadata of an RTF document that
+ * {@link RtfMetadataReader} reads from its header: the code page, the font,
+ * color and style tables, the generator and the information group.
+ * Properties that are missing in the document are {@code null}.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class RtfMetadata {
+	int codePage = RtfCodePage.DEFAULT;
+	int defaultFont;
+	final List<String> fonts = new ArrayList<>();
+	final List<String> colors = new ArrayList<>();
+	final List<String> styles = new ArrayList<>();
+	String generator;
+	String title;
+	String subject;
+	String author;
+	String manager;
+	String company;
+	String operator;
+	String category;
+	String keywords;
+	String comment;
+	LocalDateTime creationTime;
+	LocalDateTime revisionTime;
+	LocalDateTime printTime;
+
+	RtfMetadata() {
+	}
+
+	/**
+	 * Gets the code page of the document.
+	 *
+	 * @return number of the code page of \ansicpgN, 1252 by default
+	 */
+	public int getCodePage() {
+		return codePage;
+	}
+
+	/**
+	 * Gets the default font.
+	 *
+	 * @return number of the font of \deffN, 0 by default
+	 */
+	public int getDefaultFont() {
+		return defaultFont;
+	}
+
+	/**
+	 * Gets the names of the fonts.
+	 *
+	 * @return font names in the order of the font table
+	 */
+	public List<String> getFonts() {
+		return Collections.unmodifiableList(fonts);
+	}
+
+	/**
+	 * Gets the colors.
+	 *
+	 * @return colors like "#ff0000" in the order of the color table;
+	 *         {@code null} for the automatic color
+	 */
+	public List<String> getColors() {
+		return Collections.unmodifiableList(colors);
+	}
+
+	/**
+	 * Gets the names of the styles.
+	 *
+	 * @return style names in the order of the stylesheet
+	 */
+	public List<String> getStyles() {
+		return Collections.unmodifiableList(styles);
+	}
+
+	/**
+	 * Gets the program that has written the document.
+	 *
+	 * @return text of \*\generator
+	 */
+	public String getGenerator() {
+		return generator;
+	}
+
+	/**
+	 * Gets the title.
+	 *
+	 * @return text of \title
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Gets the subject.
+	 *
+	 * @return text of \subject
+	 */
+	public String getSubject() {
+		return subject;
+	}
+
+	/**
+	 * Gets the author.
+	 *
+	 * @return text of \author
+	 */
+	public String getAuthor() {
+		return author;
+	}
+
+	/**
+	 * Gets the manager of the author.
+	 *
+	 * @return text of \manager
+	 */
+	public String getManager() {
+		return manager;
+	}
+
+	/**
+	 * Gets the company of the author.
+	 *
+	 * @return text of \company
+	 */
+	public String getCompany() {
+		return company;
+	}
+
+	/**
+	 * Gets the person who last changed the document.
+	 *
+	 * @return text of \operator
+	 */
+	public String getOperator() {
+		return operator;
+	}
+
+	/**
+	 * Gets the category.
+	 *
+	 * @return text of \category
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * Gets the keywords.
+	 *
+	 * @return text of \keywords
+	 */
+	public String getKeywords() {
+		return keywords;
+	}
+
+	/**
+	 * Gets the comment.
+	 *
+	 * @return text of \doccomm or \comment
+	 */
+	public String getComment() {
+		return comment;
+	}
+
+	/**
+	 * Gets the creation time.
+	 *
+	 * @return date and time of \creatim
+	 */
+	public LocalDateTime getCreationTime() {
+		return creationTime;
+	}
+
+	/**
+	 * Gets the time of the last revision.
+	 *
+	 * @return date and time of \revtim
+	 */
+	public LocalDateTime getRevisionTime() {
+		return revisionTime;
+	}
+
+	/**
+	 * Gets the time of the last printout.
+	 *
+	 * @return date and time of \printim
+	 */
+	public LocalDateTime getPrintTime() {
+		return printTime;
+	}
+}
@@ -0,0 +1,502 @@
+package org.rtf;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * This class reads the metadata of RTF documents, e.g. to list them with
+ * their titles and authors. Only the header of a document is read, i.e. the
+ * code page, the font, color and style tables and the information group:
+ *
+ * <pre>
+ * RtfMetadata metadata = new RtfMetadataReader().read(file);
+ * System.out.println(metadata.getTitle() + " by " + metadata.getAuthor());
+ * </pre>
+ *
+ * The reader stops at the first text of the body, at the first \pard or
+ * \par and at the first picture or object of the body, so that the time
+ * taken depends on the size of the header rather than on the size of the
+ * document. Characters of the tables and the information group written as
+ * \'hh are decoded with the code page of the document. A metadata reader can
+ * be reused for the following documents, but not by several threads at once.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfMetadataReader {
+	private final RtfReader reader = new RtfReader();
+
+	/**
+	 * Reads the metadata of a file.
+	 *
+	 * @param rtfFile
+	 *            local file containing the rich text
+	 * @return metadata of the document
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public RtfMetadata read(File rtfFile) throws RtfParseException {
+		return read(rtfFile.toPath());
+	}
+
+	/**
+	 * Reads the metadata of a file. Only the pages of the header are read.
+	 *
+	 * @param rtfPath
+	 *            local file containing the rich text
+	 * @return metadata of the document
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public RtfMetadata read(Path rtfPath) throws RtfParseException {
+		MetadataHandler handler = new MetadataHandler();
+		reader.parse(rtfPath, handler);
+		return handler.metadata;
+	}
+
+	/**
+	 * Reads the metadata of a stream. The stream is not read beyond the
+	 * header and the following buffer.
+	 *
+	 * @param rtfStream
+	 *            stream containing the rich text
+	 * @return metadata of the document
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public RtfMetadata read(InputStream rtfStream) throws RtfParseException {
+		MetadataHandler handler = new MetadataHandler();
+		reader.parse(rtfStream, handler);
+		return handler.metadata;
+	}
+
+	/**
+	 * Reads the metadata of a document provided by a reader. The reader is
+	 * not read beyond the header and the following buffer.
+	 *
+	 * @param rtfReader
+	 *            reader providing the rich text
+	 * @return metadata of the document
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public RtfMetadata read(Reader rtfReader) throws RtfParseException {
+		MetadataHandler handler = new MetadataHandler();
+		reader.parse(rtfReader, handler);
+		return handler.metadata;
+	}
+
+	/**
+	 * Reads the metadata of an RTF string.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @return metadata of the document
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public RtfMetadata read(String rtfSource) throws RtfParseException {
+		MetadataHandler handler = new MetadataHandler();
+		reader.parse(rtfSource, handler);
+		return handler.metadata;
+	}
+
+	/**
+	 * Checks if a group of the header is skipped.
+	 *
+	 * @param keyword
+	 *            first control word of the group
+	 * @param word
+	 *            name of the control word
+	 * @return {@code true} for tables of the header that are not read
+	 */
+	private static boolean isSkipped(RtfKeyword keyword, String word) {
+		switch (keyword) {
+		case LISTTABLE:
+		case LISTOVERRIDETABLE:
+		case RSIDTBL:
+		case XMLNSTBL:
+		case PGDSCTBL:
+		case LATENTSTYLES:
+		case THEMEDATA:
+		case COLORSCHEMEMAPPING:
+		case DATASTORE:
+		case WGRFFMTFILTER:
+			return true;
+		default:
+			// e.g. \filetbl and \revtbl
+			return keyword == RtfKeyword.UNKNOWN && word.endsWith("tbl");
+		}
+	}
+
+	/**
+	 * This class collects the metadata from the reader events and stops the
+	 * reader at the start of the body.
+	 */
+	private class MetadataHandler implements RtfHandler {
+		private final RtfMetadata metadata = new RtfMetadata();
+		private final StringBuilder text = new StringBuilder();
+		private final int[] date = new int[6];
+		private RtfCodePage codePage = RtfCodePage.get(RtfCodePage.DEFAULT);
+		private int leadByte = -1;
+		private int depth;
+		private boolean groupStarted;
+		private boolean starred;
+		// Table or group of the header being read and its depth
+		private RtfKeyword section;
+		private int sectionDepth;
+		// Depth of a group whose content is not read
+		private int skippedDepth;
+		// Property of the information group being read
+		private RtfKeyword property;
+		private int red;
+		private int green;
+		private int blue;
+		private boolean color;
+
+		@Override
+		public void startDocument() {
+		}
+
+		@Override
+		public void endDocument() {
+		}
+
+		@Override
+		public void startGroup() {
+			depth++;
+			groupStarted = skippedDepth == 0;
+			starred = false;
+			if (section != null && depth == sectionDepth + 1) {
+				// A font, a style or a property of the information group
+				text.setLength(0);
+				property = null;
+				leadByte = -1;
+			}
+		}
+
+		@Override
+		public void endGroup() {
+			groupStarted = false;
+			starred = false;
+			if (skippedDepth == depth) {
+				skippedDepth = 0;
+			} else if (section != null && depth == sectionDepth + 1) {
+				endEntry();
+			} else if (section != null && depth == sectionDepth) {
+				if (section == RtfKeyword.GENERATOR) {
+					metadata.generator = getText();
+				}
+				section = null;
+			}
+			depth--;
+		}
+
+		@Override
+		public void controlWord(RtfKeyword keyword, String word, int parameter) {
+			if (skippedDepth > 0) {
+				return;
+			}
+			if (groupStarted) {
+				groupStarted = false;
+				if (startSection(keyword, word)) {
+					return;
+				}
+			}
+			starred = false;
+
+			if (section == null) {
+				switch (keyword) {
+				case ANSICPG:
+					metadata.codePage = parameter;
+					codePage = RtfCodePage.get(parameter);
+					break;
+				case DEFF:
+					metadata.defaultFont = parameter;
+					break;
+				case PARD:
+				case PAR:
+					// The body starts.
+					reader.stop();
+					break;
+				default:
+					break;
+				}
+				return;
+			}
+
+			switch (keyword) {
+			case RED:
+				red = parameter;
+				color = true;
+				break;
+			case GREEN:
+				green = parameter;
+				color = true;
+				break;
+			case BLUE:
+				blue = parameter;
+				color = true;
+				break;
+			case YR:
+				date[0] = parameter;
+				break;
+			case MO:
+				date[1] = parameter;
+				break;
+			case DY:
+				date[2] = parameter;
+				break;
+			case HR:
+				date[3] = parameter;
+				break;
+			case MIN:
+				date[4] = parameter;
+				break;
+			case SEC:
+				date[5] = parameter;
+				break;
+			case U:
+				leadByte = -1;
+				text.append((char) parameter);
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void controlSymbol(char symbol, int parameter) {
+			if (skippedDepth > 0) {
+				return;
+			}
+			if (groupStarted && symbol == '*') {
+				// The destination word follows.
+				starred = true;
+				return;
+			}
+			groupStarted = false;
+			starred = false;
+			if (section == null) {
+				return;
+			}
+			if (symbol == '\'') {
+				if (leadByte >= 0) {
+					text.append(codePage.decode(leadByte, parameter));
+					leadByte = -1;
+				} else if (codePage.isLeadByte(parameter)) {
+					leadByte = parameter;
+				} else {
+					text.append(codePage.decode(parameter));
+				}
+			} else if (symbol == '~') {
+				text.append('\u00a0');
+			}
+		}
+
+		@Override
+		public void text(char[] buffer, int offset, int length) {
+			if (skippedDepth > 0) {
+				return;
+			}
+			groupStarted = false;
+			starred = false;
+			if (section == null) {
+				// The body starts with the first text except spaces.
+				for (int i = offset; i < offset + length; i++) {
+					if (buffer[i] != ' ') {
+						reader.stop();
+						break;
+					}
+				}
+				return;
+			}
+			if (section == RtfKeyword.COLORTBL) {
+				for (int i = offset; i < offset + length; i++) {
+					if (buffer[i] == ';') {
+						metadata.colors.add(color ? String.format("#%02x%02x%02x", red, green, blue) : null);
+						red = 0;
+						green = 0;
+						blue = 0;
+						color = false;
+					}
+				}
+				return;
+			}
+			if (leadByte >= 0) {
+				text.append(codePage.decode(leadByte, buffer[offset]));
+				leadByte = -1;
+				offset++;
+				length--;
+			}
+			text.append(buffer, offset, length);
+		}
+
+		@Override
+		public void data(RtfKeyword destination, long offset, long length) {
+			groupStarted = false;
+			if (section == null && skippedDepth == 0) {
+				// A picture or object of the body
+				reader.stop();
+			}
+		}
+
+		@Override
+		public boolean isDataRequested(RtfKeyword destination) {
+			return false;
+		}
+
+		/**
+		 * Starts reading or skipping a group by its first control word.
+		 *
+		 * @param keyword
+		 *            first control word of the group
+		 * @param word
+		 *            name of the control word
+		 * @return {@code true} if the control word has been processed
+		 */
+		private boolean startSection(RtfKeyword keyword, String word) {
+			if (section == null) {
+				switch (keyword) {
+				case FONTTBL:
+				case COLORTBL:
+				case STYLESHEET:
+				case INFO:
+					section = keyword;
+					sectionDepth = depth;
+					color = false;
+					return true;
+				case GENERATOR:
+					section = keyword;
+					sectionDepth = depth;
+					text.setLength(0);
+					return true;
+				default:
+					if (starred || isSkipped(keyword, word)) {
+						skippedDepth = depth;
+						return true;
+					}
+					return false;
+				}
+			}
+			if (depth == sectionDepth + 1 && section == RtfKeyword.INFO) {
+				property = keyword;
+				return true;
+			}
+			if (starred && depth > sectionDepth + 1) {
+				// e.g. \*\panose in the font table, but not the \*\csN
+				// entries of the stylesheet
+				skippedDepth = depth;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Stores an entry of the current table or information group.
+		 */
+		private void endEntry() {
+			switch (section) {
+			case FONTTBL:
+				metadata.fonts.add(getText());
+				break;
+			case STYLESHEET:
+				metadata.styles.add(getText());
+				break;
+			case INFO:
+				setProperty();
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * Stores a property of the information group.
+		 */
+		private void setProperty() {
+			if (property == null) {
+				return;
+			}
+			switch (property) {
+			case TITLE:
+				metadata.title = getText();
+				break;
+			case SUBJECT:
+				metadata.subject = getText();
+				break;
+			case AUTHOR:
+				metadata.author = getText();
+				break;
+			case MANAGER:
+				metadata.manager = getText();
+				break;
+			case COMPANY:
+				metadata.company = getText();
+				break;
+			case OPERATOR:
+				metadata.operator = getText();
+				break;
+			case CATEGORY:
+				metadata.category = getText();
+				break;
+			case KEYWORDS:
+				metadata.keywords = getText();
+				break;
+			case DOCCOMM:
+			case COMMENT:
+				metadata.comment = getText();
+				break;
+			case CREATIM:
+				metadata.creationTime = getDate();
+				break;
+			case REVTIM:
+				metadata.revisionTime = getDate();
+				break;
+			case PRINTIM:
+				metadata.printTime = getDate();
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * Gets the collected text without the trailing semicolon of table
+		 * entries.
+		 *
+		 * @return text of the entry
+		 */
+		private String getText() {
+			int end = text.length();
+			while (end > 0 && (text.charAt(end - 1) == ';' || text.charAt(end - 1) == ' ')) {
+				end--;
+			}
+			int start = 0;
+			while (start < end && text.charAt(start) == ' ') {
+				start++;
+			}
+			return text.substring(start, end);
+		}
+
+		/**
+		 * Gets the collected date and resets it for the next one.
+		 *
+		 * @return date and time or {@code null} if it is invalid
+		 */
+		private LocalDateTime getDate() {
+			try {
+				return LocalDateTime.of(date[0], date[1], date[2], date[3], date[4], date[5]);
+			} catch (DateTimeException e) {
+				return null;
+			} finally {
+				for (int i = 0; i < date.length; i++) {
+					date[i] = 0;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,440 @@
+package org.rtf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class aggregates the figures of conversions that are counted by
+ * {@link RtfMetricsHandler}. The durations are recorded in histograms by
+ * phase and input size, and a {@link Snapshot} provides their percentiles:
+ *
+ * <pre>
+ * RtfMetrics metrics = new RtfMetrics();
+ * RtfConverter converter = RtfConverter.builder().metrics(metrics).build();
+ * ...
+ * System.out.println(metrics.snapshot());
+ * </pre>
+ *
+ * The total time is measured, while its split into parse and format time is
+ * an estimate from sampled events, which the snapshot marks as such.
+ * Recording takes no locks, so any number of threads can record at once. The
+ * histograms have four buckets per power of two, i.e. a percentile is at most
+ * 25 percent above the actual duration.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class RtfMetrics {
+	/**
+	 * Duration of a whole conversion
+	 */
+	public static final int TOTAL = 0;
+
+	/**
+	 * Time spent by the reader, estimated from sampled events; see
+	 * {@link RtfMetricsHandler}
+	 */
+	public static final int PARSE = 1;
+
+	/**
+	 * Time spent by the formatter, estimated from sampled events; see
+	 * {@link RtfMetricsHandler}
+	 */
+	public static final int FORMAT = 2;
+
+	/**
+	 * Inputs of less than 16 KB
+	 */
+	public static final int SMALL = 0;
+
+	/**
+	 * Inputs of less than 256 KB
+	 */
+	public static final int MEDIUM = 1;
+
+	/**
+	 * Inputs of less than 4 MB
+	 */
+	public static final int LARGE = 2;
+
+	/**
+	 * Inputs of 4 MB and more
+	 */
+	public static final int HUGE = 3;
+
+	private static final String[] PHASE_NAMES = { "total", "parse (est.)", "format (est.)" };
+	private static final String[] SIZE_NAMES = { "<16K", "<256K", "<4M", ">=4M" };
+
+	private final Histogram[][] histograms = new Histogram[SIZE_NAMES.length][PHASE_NAMES.length];
+	private final LongAdder conversions = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder inputSize = new LongAdder();
+	private final LongAdder groups = new LongAdder();
+	private final LongAdder controlWords = new LongAdder();
+	private final LongAdder controlSymbols = new LongAdder();
+	private final LongAdder texts = new LongAdder();
+	private final LongAdder data = new LongAdder();
+	private final LongAdder skippedSize = new LongAdder();
+
+	/**
+	 * Creates a new, empty registry.
+	 */
+	public RtfMetrics() {
+		for (Histogram[] phases : histograms) {
+			for (int i = 0; i < phases.length; i++) {
+				phases[i] = new Histogram();
+			}
+		}
+	}
+
+	/**
+	 * Gets the bucket of an input size.
+	 *
+	 * @param inputSize
+	 *            number of bytes or characters
+	 * @return {@link #SMALL}, {@link #MEDIUM}, {@link #LARGE} or {@link #HUGE}
+	 */
+	public static int getSizeBucket(long inputSize) {
+		if (inputSize < 16 * 1024) {
+			return SMALL;
+		} else if (inputSize < 256 * 1024) {
+			return MEDIUM;
+		} else if (inputSize < 4 * 1024 * 1024) {
+			return LARGE;
+		}
+		return HUGE;
+	}
+
+	/**
+	 * Records a finished conversion.
+	 *
+	 * @param inputSize
+	 *            number of bytes or characters read, see
+	 *            {@link RtfReader#getInputSize()}
+	 * @param counter
+	 *            handler that has received the events of the conversion
+	 */
+	public void record(long inputSize, RtfMetricsHandler counter) {
+		conversions.increment();
+		this.inputSize.add(inputSize);
+		groups.add(counter.getGroups());
+		controlWords.add(counter.getControlWords());
+		controlSymbols.add(counter.getControlSymbols());
+		texts.add(counter.getTexts());
+		data.add(counter.getData());
+		skippedSize.add(counter.getSkippedSize());
+
+		Histogram[] phases = histograms[getSizeBucket(inputSize)];
+		phases[TOTAL].record(counter.getTotalNanos());
+		phases[PARSE].record(counter.getParseNanos());
+		phases[FORMAT].record(counter.getFormatNanos());
+	}
+
+	/**
+	 * Records a failed conversion. Its figures are not recorded.
+	 */
+	public void recordFailure() {
+		failures.increment();
+	}
+
+	/**
+	 * Takes a snapshot of the figures. Conversions that are recorded while
+	 * the snapshot is taken may be included in some figures only.
+	 *
+	 * @return current figures
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	/**
+	 * This class holds the figures of a registry at a point in time.
+	 */
+	public static final class Snapshot {
+		private final long conversions;
+		private final long failures;
+		private final long inputSize;
+		private final long groups;
+		private final long controlWords;
+		private final long controlSymbols;
+		private final long texts;
+		private final long data;
+		private final long skippedSize;
+		private final Latency[][] latencies = new Latency[SIZE_NAMES.length][PHASE_NAMES.length];
+
+		private Snapshot(RtfMetrics metrics) {
+			conversions = metrics.conversions.sum();
+			failures = metrics.failures.sum();
+			inputSize = metrics.inputSize.sum();
+			groups = metrics.groups.sum();
+			controlWords = metrics.controlWords.sum();
+			controlSymbols = metrics.controlSymbols.sum();
+			texts = metrics.texts.sum();
+			data = metrics.data.sum();
+			skippedSize = metrics.skippedSize.sum();
+			for (int size = 0; size < latencies.length; size++) {
+				for (int phase = 0; phase < latencies[size].length; phase++) {
+					latencies[size][phase] = metrics.histograms[size][phase].snapshot();
+				}
+			}
+		}
+
+		/**
+		 * Gets the number of recorded conversions.
+		 *
+		 * @return number of successful conversions
+		 */
+		public long getConversions() {
+			return conversions;
+		}
+
+		/**
+		 * Gets the number of failed conversions.
+		 *
+		 * @return number of failures
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Gets the size of the converted documents.
+		 *
+		 * @return number of bytes or characters
+		 */
+		public long getInputSize() {
+			return inputSize;
+		}
+
+		/**
+		 * Gets the number of groups.
+		 *
+		 * @return number of groups of all conversions
+		 */
+		public long getGroups() {
+			return groups;
+		}
+
+		/**
+		 * Gets the number of control words.
+		 *
+		 * @return number of control words of all conversions
+		 */
+		public long getControlWords() {
+			return controlWords;
+		}
+
+		/**
+		 * Gets the number of control symbols.
+		 *
+		 * @return number of control symbols of all conversions
+		 */
+		public long getControlSymbols() {
+			return controlSymbols;
+		}
+
+		/**
+		 * Gets the number of texts.
+		 *
+		 * @return number of texts of all conversions
+		 */
+		public long getTexts() {
+			return texts;
+		}
+
+		/**
+		 * Gets the number of skipped pictures, objects and binary data.
+		 *
+		 * @return number of data events of all conversions
+		 */
+		public long getData() {
+			return data;
+		}
+
+		/**
+		 * Gets the size of the content that is not converted.
+		 *
+		 * @return number of characters of all conversions
+		 */
+		public long getSkippedSize() {
+			return skippedSize;
+		}
+
+		/**
+		 * Gets the durations of a phase for an input size.
+		 *
+		 * @param sizeBucket
+		 *            {@link RtfMetrics#SMALL}, {@link RtfMetrics#MEDIUM},
+		 *            {@link RtfMetrics#LARGE} or {@link RtfMetrics#HUGE}
+		 * @param phase
+		 *            {@link RtfMetrics#TOTAL}, {@link RtfMetrics#PARSE} or
+		 *            {@link RtfMetrics#FORMAT}
+		 * @return durations
+		 */
+		public Latency getLatency(int sizeBucket, int phase) {
+			return latencies[sizeBucket][phase];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(
+					"%d conversions, %d failures, %d bytes, %d groups, %d words, %d symbols, %d texts, %d data, %d skipped%n",
+					conversions, failures, inputSize, groups, controlWords, controlSymbols, texts, data,
+					skippedSize));
+			for (int size = 0; size < latencies.length; size++) {
+				if (latencies[size][TOTAL].getCount() == 0) {
+					continue;
+				}
+				for (int phase = 0; phase < latencies[size].length; phase++) {
+					sb.append(String.format("%-6s %-13s %s%n", SIZE_NAMES[size], PHASE_NAMES[phase],
+							latencies[size][phase]));
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * This class holds the percentiles of a histogram.
+	 */
+	public static final class Latency {
+		private final long count;
+		private final long p50;
+		private final long p99;
+		private final long max;
+
+		private Latency(long count, long p50, long p99, long max) {
+			this.count = count;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		/**
+		 * Gets the number of durations.
+		 *
+		 * @return number of recorded conversions
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the median.
+		 *
+		 * @return nanoseconds
+		 */
+		public long getP50() {
+			return p50;
+		}
+
+		/**
+		 * Gets the 99th percentile.
+		 *
+		 * @return nanoseconds
+		 */
+		public long getP99() {
+			return p99;
+		}
+
+		/**
+		 * Gets the longest duration.
+		 *
+		 * @return nanoseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("n=%d p50=%.3f ms p99=%.3f ms max=%.3f ms", count, p50 / 1e6, p99 / 1e6, max / 1e6);
+		}
+	}
+
+	/**
+	 * This class counts durations in buckets that grow exponentially.
+	 */
+	private static class Histogram {
+		// Four buckets per power of two
+		private static final int SUB_BITS = 2;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+		private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long nanos) {
+			long value = Math.max(nanos, 0);
+			counts.incrementAndGet(index(value));
+			long current = max.get();
+			while (value > current && !max.compareAndSet(current, value)) {
+				current = max.get();
+			}
+		}
+
+		Latency snapshot() {
+			long[] snapshot = new long[counts.length()];
+			long count = 0;
+			for (int i = 0; i < snapshot.length; i++) {
+				snapshot[i] = counts.get(i);
+				count += snapshot[i];
+			}
+			long maximum = max.get();
+			return new Latency(count, percentile(snapshot, count, 0.5, maximum),
+					percentile(snapshot, count, 0.99, maximum), maximum);
+		}
+
+		private static long percentile(long[] snapshot, long count, double quantile, long maximum) {
+			long rank = (long) Math.ceil(count * quantile);
+			long seen = 0;
+			for (int i = 0; i < snapshot.length; i++) {
+				seen += snapshot[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(upperBound(i), maximum);
+				}
+			}
+			return 0;
+		}
+
+		private static int index(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		private static long upperBound(int index) {
+			if (index < SUB_BUCKETS) {
+				return index;
+			}
+			int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+			long sub = index % SUB_BUCKETS;
+			long lower = (1L << exponent) + (sub << (exponent - SUB_BITS));
+			long width = 1L << (exponent - SUB_BITS);
+			return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package org.rtf;
+
+/**
+ * This class passes the events of a reader on to another handler and counts
+ * them, so that the figures of a conversion can be recorded by
+ * {@link RtfMetrics}. Readers and handlers themselves do not count anything,
+ * so conversions without this wrapper do not pay for metrics:
+ *
+ * <pre>
+ * RtfMetricsHandler counter = new RtfMetricsHandler(formatter.handler(writer, true));
+ * reader.parse(file, counter);
+ * metrics.record(reader.getInputSize(), counter);
+ * </pre>
+ *
+ * The time spent by the other handler is the format time of a conversion
+ * and the remaining time is the parse time. Timing each event would cost
+ * more than many events themselves, so only every
+ * {@link #SAMPLE_INTERVAL}th event is timed and the format time is
+ * extrapolated from these samples.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfMetricsHandler implements RtfHandler {
+	/**
+	 * Number of events per timed event
+	 */
+	public static final int SAMPLE_INTERVAL = 16;
+
+	private final RtfHandler handler;
+	private long groups;
+	private long controlWords;
+	private long controlSymbols;
+	private long texts;
+	private long data;
+	private long skippedSize;
+	private long events;
+	private long startNanos;
+	private long totalNanos;
+	private long sampledNanos;
+	private long sampleStart;
+	private long documentNanos;
+	private int depth;
+	private int ignoredDepth;
+	private boolean groupStarted;
+
+	/**
+	 * Creates a new counting handler.
+	 *
+	 * @param handler
+	 *            receiver of the events, e.g. a formatter
+	 */
+	public RtfMetricsHandler(RtfHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Gets the number of groups.
+	 *
+	 * @return number of opening braces
+	 */
+	public long getGroups() {
+		return groups;
+	}
+
+	/**
+	 * Gets the number of control words.
+	 *
+	 * @return number of control words
+	 */
+	public long getControlWords() {
+		return controlWords;
+	}
+
+	/**
+	 * Gets the number of control symbols.
+	 *
+	 * @return number of control symbols
+	 */
+	public long getControlSymbols() {
+		return controlSymbols;
+	}
+
+	/**
+	 * Gets the number of texts.
+	 *
+	 * @return number of texts, including those of ignored destinations
+	 */
+	public long getTexts() {
+		return texts;
+	}
+
+	/**
+	 * Gets the number of skipped pictures, objects and binary data.
+	 *
+	 * @return number of data events
+	 */
+	public long getData() {
+		return data;
+	}
+
+	/**
+	 * Gets the size of the content that is not converted, i.e. of skipped
+	 * data and of the texts in \* destinations.
+	 *
+	 * @return number of characters
+	 */
+	public long getSkippedSize() {
+		return skippedSize;
+	}
+
+	/**
+	 * Gets the duration of the conversion.
+	 *
+	 * @return nanoseconds from the start to the end of the document
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the estimated time spent by the other handler.
+	 *
+	 * @return nanoseconds extrapolated from the sampled events
+	 */
+	public long getFormatNanos() {
+		// Few events make the estimate unreliable, but it cannot exceed the
+		// total time.
+		return Math.min(documentNanos + sampledNanos * SAMPLE_INTERVAL, totalNanos);
+	}
+
+	/**
+	 * Gets the estimated time spent by the reader.
+	 *
+	 * @return total nanoseconds minus the estimated format time
+	 */
+	public long getParseNanos() {
+		return totalNanos - getFormatNanos();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#startDocument()
+	 */
+	@Override
+	public void startDocument() throws RtfParseException {
+		groups = 0;
+		controlWords = 0;
+		controlSymbols = 0;
+		texts = 0;
+		data = 0;
+		skippedSize = 0;
+		events = 0;
+		sampledNanos = 0;
+		depth = 0;
+		ignoredDepth = 0;
+		groupStarted = false;
+		startNanos = System.nanoTime();
+		handler.startDocument();
+		documentNanos = System.nanoTime() - startNanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#endDocument()
+	 */
+	@Override
+	public void endDocument() throws RtfParseException {
+		long start = System.nanoTime();
+		handler.endDocument();
+		long end = System.nanoTime();
+		documentNanos += end - start;
+		totalNanos = end - startNanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#startGroup()
+	 */
+	@Override
+	public void startGroup() throws RtfParseException {
+		depth++;
+		groupStarted = true;
+		groups++;
+		startEvent();
+		handler.startGroup();
+		endEvent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#endGroup()
+	 */
+	@Override
+	public void endGroup() throws RtfParseException {
+		if (depth-- == ignoredDepth) {
+			ignoredDepth = 0;
+		}
+		groupStarted = false;
+		startEvent();
+		handler.endGroup();
+		endEvent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#controlWord(org.rtf.RtfKeyword, java.lang.String,
+	 * int)
+	 */
+	@Override
+	public void controlWord(RtfKeyword keyword, String word, int parameter) throws RtfParseException {
+		groupStarted = false;
+		controlWords++;
+		startEvent();
+		handler.controlWord(keyword, word, parameter);
+		endEvent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#controlSymbol(char, int)
+	 */
+	@Override
+	public void controlSymbol(char symbol, int parameter) throws RtfParseException {
+		if (groupStarted && symbol == '*' && ignoredDepth == 0) {
+			ignoredDepth = depth;
+		}
+		groupStarted = false;
+		controlSymbols++;
+		startEvent();
+		handler.controlSymbol(symbol, parameter);
+		endEvent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#text(char[], int, int)
+	 */
+	@Override
+	public void text(char[] buffer, int offset, int length) throws RtfParseException {
+		groupStarted = false;
+		if (ignoredDepth > 0) {
+			skippedSize += length;
+		}
+		texts++;
+		startEvent();
+		handler.text(buffer, offset, length);
+		endEvent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#data(org.rtf.RtfKeyword, long, long)
+	 */
+	@Override
+	public void data(RtfKeyword destination, long offset, long length) throws RtfParseException {
+		groupStarted = false;
+		data++;
+		skippedSize += length;
+		startEvent();
+		handler.data(destination, offset, length);
+		endEvent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#isDataRequested(org.rtf.RtfKeyword)
+	 */
+	@Override
+	public boolean isDataRequested(RtfKeyword destination) {
+		return handler.isDataRequested(destination);
+	}
+
+	/**
+	 * Counts an event that is passed on and starts timing it if it is a
+	 * sample.
+	 */
+	private void startEvent() {
+		if (++events % SAMPLE_INTERVAL == 0) {
+			sampleStart = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Adds the time of the event that was passed on if it is a sample.
+	 */
+	private void endEvent() {
+		if (events % SAMPLE_INTERVAL == 0) {
+			sampledNanos += System.nanoTime() - sampleStart;
+		}
+	}
+}
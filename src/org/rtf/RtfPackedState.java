@@ -0,0 +1,481 @@
+package org.rtf;
+
+/**
+ * This class is the packed, immutable form of {@link RtfState}. The flags are
+ * kept in a bitfield and all values in two longs, and each distinct state
+ * exists only once per {@link Table}. Changing an attribute returns the
+ * instance of the resulting state, so states of the same table can be
+ * compared by reference and no state is copied when a group starts or ends.
+ * <p>
+ * Values are limited to 16 bits; larger values are clamped, which makes no
+ * difference for font and color positions or pixel sizes in practice.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class RtfPackedState {
+	private static final int BOLD = 1;
+	private static final int ITALIC = 2;
+	private static final int UNDERLINE = 4;
+	private static final int STRIKE = 8;
+	private static final int HIDDEN = 16;
+	private static final int SUBSCRIPT = 32;
+	private static final int SUPERSCRIPT = 64;
+
+	// format: flags (bits 0-7), dnup (bits 8-23), font size (bits 24-39)
+	// colors: font (bits 0-15), text color (bits 16-31), background (bits
+	// 32-47)
+	private final long format;
+	private final long colors;
+	private final Table table;
+
+	private RtfPackedState(long format, long colors, Table table) {
+		this.format = format;
+		this.colors = colors;
+		this.table = table;
+	}
+
+	/**
+	 * Checks if text should be written in bold.
+	 *
+	 * @return {@code true} if bold
+	 */
+	public boolean isBold() {
+		return (format & BOLD) != 0;
+	}
+
+	/**
+	 * Checks if text should be written in italic.
+	 *
+	 * @return {@code true} if italic
+	 */
+	public boolean isItalic() {
+		return (format & ITALIC) != 0;
+	}
+
+	/**
+	 * Checks if text should be underlined.
+	 *
+	 * @return {@code true} if underlined
+	 */
+	public boolean isUnderline() {
+		return (format & UNDERLINE) != 0;
+	}
+
+	/**
+	 * Checks if text should be striked through.
+	 *
+	 * @return {@code true} if striked through
+	 */
+	public boolean isStrike() {
+		return (format & STRIKE) != 0;
+	}
+
+	/**
+	 * Checks if text should be hidden.
+	 *
+	 * @return {@code true} if hidden
+	 */
+	public boolean isHidden() {
+		return (format & HIDDEN) != 0;
+	}
+
+	/**
+	 * Checks if text should be subscript.
+	 *
+	 * @return {@code true} if subscript
+	 */
+	public boolean isSubscript() {
+		return (format & SUBSCRIPT) != 0;
+	}
+
+	/**
+	 * Checks if text should be superscript.
+	 *
+	 * @return {@code true} if superscript
+	 */
+	public boolean isSuperscript() {
+		return (format & SUPERSCRIPT) != 0;
+	}
+
+	/**
+	 * Gets the vertical offset.
+	 *
+	 * @return offset in pixels, negative beneath the baseline
+	 */
+	public int getDnup() {
+		return (short) (format >>> 8);
+	}
+
+	/**
+	 * Gets the font size.
+	 *
+	 * @return font size in pixels or 0 if not set
+	 */
+	public int getFontSize() {
+		return (short) (format >>> 24);
+	}
+
+	/**
+	 * Gets the font.
+	 *
+	 * @return position in the font table
+	 */
+	public int getFont() {
+		return (short) colors;
+	}
+
+	/**
+	 * Gets the text color.
+	 *
+	 * @return position in the color table
+	 */
+	public int getTextColor() {
+		return (short) (colors >>> 16);
+	}
+
+	/**
+	 * Gets the background color.
+	 *
+	 * @return position in the color table
+	 */
+	public int getBackground() {
+		return (short) (colors >>> 32);
+	}
+
+	/**
+	 * Gets the state with default values.
+	 *
+	 * @return state of the same table
+	 */
+	public RtfPackedState reset() {
+		return table.getDefault();
+	}
+
+	/**
+	 * Gets the state with another bold attribute.
+	 *
+	 * @param bold
+	 *            {@code true} if bold
+	 * @return state of the same table
+	 */
+	public RtfPackedState withBold(boolean bold) {
+		return withFlag(BOLD, bold);
+	}
+
+	/**
+	 * Gets the state with another italic attribute.
+	 *
+	 * @param italic
+	 *            {@code true} if italic
+	 * @return state of the same table
+	 */
+	public RtfPackedState withItalic(boolean italic) {
+		return withFlag(ITALIC, italic);
+	}
+
+	/**
+	 * Gets the state with another underline attribute.
+	 *
+	 * @param underline
+	 *            {@code true} if underlined
+	 * @return state of the same table
+	 */
+	public RtfPackedState withUnderline(boolean underline) {
+		return withFlag(UNDERLINE, underline);
+	}
+
+	/**
+	 * Gets the state with another strike attribute.
+	 *
+	 * @param strike
+	 *            {@code true} if striked through
+	 * @return state of the same table
+	 */
+	public RtfPackedState withStrike(boolean strike) {
+		return withFlag(STRIKE, strike);
+	}
+
+	/**
+	 * Gets the state with another hidden attribute.
+	 *
+	 * @param hidden
+	 *            {@code true} if hidden
+	 * @return state of the same table
+	 */
+	public RtfPackedState withHidden(boolean hidden) {
+		return withFlag(HIDDEN, hidden);
+	}
+
+	/**
+	 * Gets the state with other subscript and superscript attributes.
+	 *
+	 * @param subscript
+	 *            {@code true} if subscript
+	 * @param superscript
+	 *            {@code true} if superscript
+	 * @return state of the same table
+	 */
+	public RtfPackedState withSubSuper(boolean subscript, boolean superscript) {
+		long newFormat = format & ~(SUBSCRIPT | SUPERSCRIPT);
+		if (subscript) {
+			newFormat |= SUBSCRIPT;
+		}
+		if (superscript) {
+			newFormat |= SUPERSCRIPT;
+		}
+		return table.get(newFormat, colors);
+	}
+
+	/**
+	 * Gets the state with another vertical offset.
+	 *
+	 * @param dnup
+	 *            offset in pixels, negative beneath the baseline
+	 * @return state of the same table
+	 */
+	public RtfPackedState withDnup(int dnup) {
+		return table.get(replace(format, 8, dnup), colors);
+	}
+
+	/**
+	 * Gets the state with another font size.
+	 *
+	 * @param fontSize
+	 *            font size in pixels
+	 * @return state of the same table
+	 */
+	public RtfPackedState withFontSize(int fontSize) {
+		return table.get(replace(format, 24, fontSize), colors);
+	}
+
+	/**
+	 * Gets the state with another font.
+	 *
+	 * @param font
+	 *            position in the font table
+	 * @return state of the same table
+	 */
+	public RtfPackedState withFont(int font) {
+		return table.get(format, replace(colors, 0, font));
+	}
+
+	/**
+	 * Gets the state with another text color.
+	 *
+	 * @param textColor
+	 *            position in the color table
+	 * @return state of the same table
+	 */
+	public RtfPackedState withTextColor(int textColor) {
+		return table.get(format, replace(colors, 16, textColor));
+	}
+
+	/**
+	 * Gets the state with another background color.
+	 *
+	 * @param background
+	 *            position in the color table
+	 * @return state of the same table
+	 */
+	public RtfPackedState withBackground(int background) {
+		return table.get(format, replace(colors, 32, background));
+	}
+
+	/**
+	 * Creates a mutable copy of the layout information.
+	 *
+	 * @return unpacked state
+	 */
+	public RtfState toState() {
+		RtfState state = new RtfState();
+		state.bold = isBold();
+		state.italic = isItalic();
+		state.underline = isUnderline();
+		state.strike = isStrike();
+		state.hidden = isHidden();
+		state.dnup = getDnup();
+		state.subscript = isSubscript();
+		state.superscript = isSuperscript();
+		state.fontSize = getFontSize();
+		state.font = getFont();
+		state.textColor = getTextColor();
+		state.background = getBackground();
+		return state;
+	}
+
+	/**
+	 * Compares two states for equality. States of different tables are equal
+	 * if they contain the same layout information.
+	 *
+	 * @param obj
+	 *            the object to compare with
+	 * @return {@code true} if the argument is a {@code RtfPackedState} with
+	 *         the same layout information
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof RtfPackedState)) {
+			return false;
+		}
+
+		RtfPackedState anotherState = (RtfPackedState) obj;
+		return format == anotherState.format && colors == anotherState.colors;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hash(format, colors);
+	}
+
+	/**
+	 * Sets the flag of an attribute.
+	 *
+	 * @param flag
+	 *            bit of the attribute
+	 * @param value
+	 *            {@code true} to set the bit
+	 * @return state of the same table
+	 */
+	private RtfPackedState withFlag(int flag, boolean value) {
+		return table.get(value ? format | flag : format & ~flag, colors);
+	}
+
+	/**
+	 * Replaces a 16-bit value.
+	 *
+	 * @param bits
+	 *            packed values
+	 * @param shift
+	 *            position of the value
+	 * @param value
+	 *            new value, clamped to 16 bits
+	 * @return packed values
+	 */
+	private static long replace(long bits, int shift, int value) {
+		int clamped = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+		return (bits & ~(0xffffL << shift)) | ((clamped & 0xffffL) << shift);
+	}
+
+	/**
+	 * Spreads the packed values into a hash code.
+	 *
+	 * @param format
+	 *            flags and sizes
+	 * @param colors
+	 *            font and colors
+	 * @return hash code
+	 */
+	private static int hash(long format, long colors) {
+		long h = format * 0x9E3779B97F4A7C15L + colors;
+		h *= 0xC2B2AE3D27D4EB4FL;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * This class holds the distinct states of one or more conversions. Each
+	 * state is created once and then found in an open-addressing table, so
+	 * looking up an existing state does not allocate anything. A table is
+	 * meant to be used by one thread.
+	 */
+	public static final class Table {
+		private RtfPackedState[] states = new RtfPackedState[64];
+		private int size;
+		private final RtfPackedState defaultState;
+
+		/**
+		 * Creates a new table that contains the default state.
+		 */
+		public Table() {
+			defaultState = get(0, 0);
+		}
+
+		/**
+		 * Gets the state with default values.
+		 *
+		 * @return default state
+		 */
+		public RtfPackedState getDefault() {
+			return defaultState;
+		}
+
+		/**
+		 * Gets the number of distinct states.
+		 *
+		 * @return number of states
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the packed form of a mutable state.
+		 *
+		 * @param state
+		 *            layout information
+		 * @return the only state of this table with this layout
+		 */
+		public RtfPackedState get(RtfState state) {
+			long format = (state.bold ? BOLD : 0) | (state.italic ? ITALIC : 0) | (state.underline ? UNDERLINE : 0)
+					| (state.strike ? STRIKE : 0) | (state.hidden ? HIDDEN : 0) | (state.subscript ? SUBSCRIPT : 0)
+					| (state.superscript ? SUPERSCRIPT : 0);
+			format = replace(replace(format, 8, state.dnup), 24, state.fontSize);
+			long colors = replace(replace(replace(0, 0, state.font), 16, state.textColor), 32, state.background);
+			return get(format, colors);
+		}
+
+		/**
+		 * Finds or creates a state.
+		 *
+		 * @param format
+		 *            flags and sizes
+		 * @param colors
+		 *            font and colors
+		 * @return the only state of this table with these values
+		 */
+		RtfPackedState get(long format, long colors) {
+			int mask = states.length - 1;
+			int i = hash(format, colors) & mask;
+			RtfPackedState state;
+			while ((state = states[i]) != null) {
+				if (state.format == format && state.colors == colors) {
+					return state;
+				}
+				i = (i + 1) & mask;
+			}
+
+			state = new RtfPackedState(format, colors, this);
+			states[i] = state;
+			// Keep the load factor below 1/2.
+			if (++size * 2 > states.length) {
+				rehash();
+			}
+			return state;
+		}
+
+		/**
+		 * Doubles the capacity of the table.
+		 */
+		private void rehash() {
+			RtfPackedState[] oldStates = states;
+			states = new RtfPackedState[oldStates.length * 2];
+			int mask = states.length - 1;
+			for (RtfPackedState state : oldStates) {
+				if (state != null) {
+					int i = hash(state.format, state.colors) & mask;
+					while (states[i] != null) {
+						i = (i + 1) & mask;
+					}
+					states[i] = state;
+				}
+			}
+		}
+	}
+}
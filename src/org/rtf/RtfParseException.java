@@ -18,4 +18,16 @@ public class RtfParseException extends Exception {
 	public RtfParseException(String message) {
 		super(message);
 	}
+
+	/**
+	 * Creates the new exception.
+	 *
+	 * @param message
+	 *            error details
+	 * @param cause
+	 *            underlying error, e.g. an I/O error
+	 */
+	public RtfParseException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package org.rtf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This interface receives the pictures of a document while it is converted by
+ * {@link RtfHtml}, so that they can be stored outside of the HTML. The decoded
+ * bytes are written in small portions, so a picture is never held in memory
+ * as a whole.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public interface RtfPictureSink {
+	/**
+	 * Opens the target of a picture.
+	 *
+	 * @param index
+	 *            number of the picture within the document, starting with 0
+	 * @param type
+	 *            MIME type, i.e. image/png or image/jpeg
+	 * @return stream receiving the picture bytes; it is closed at the end of
+	 *         the picture
+	 * @throws IOException
+	 *             is thrown if the target cannot be opened
+	 */
+	OutputStream open(int index, String type) throws IOException;
+
+	/**
+	 * Gets the address of a written picture.
+	 *
+	 * @param index
+	 *            number of the picture within the document, starting with 0
+	 * @param type
+	 *            MIME type, i.e. image/png or image/jpeg
+	 * @return value of the src attribute of the image tag
+	 */
+	String getSource(int index, String type);
+}
@@ -0,0 +1,372 @@
+package org.rtf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class extracts the visible text of RTF documents, e.g. for a search
+ * index. It receives the events of a reader and writes the text straight into
+ * a sink, without tags, entities or an element tree:
+ *
+ * <pre>
+ * reader.parse(file, new RtfPlainText().handler(writer));
+ * </pre>
+ *
+ * The same groups as in {@link RtfHtml} are skipped, i.e. font and color
+ * tables, stylesheets, info, pictures and \* destinations, and hidden text is
+ * left out. Paragraphs and lines end with a line feed, and tabs are written
+ * as tab characters. Characters written as \'hh are decoded with the code
+ * page of the current font, like in HTML. An extractor can be reused for the
+ * following documents, but not by several threads at once.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfPlainText {
+	private final RtfReader reader = new RtfReader();
+	private Appendable output;
+	// Font and hidden flag of the enclosing groups: font << 1 | hidden
+	private int[] states = new int[64];
+	private int depth;
+	private int font;
+	private boolean hidden;
+	private final RtfTextDecoder decoder = new RtfTextDecoder();
+	private final List<RtfCodePage> fontCodePages = new ArrayList<>();
+
+	/**
+	 * Extracts the text of an RTF string.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @return plain text
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public String extract(String rtfSource) throws RtfParseException {
+		StringBuilder text = new StringBuilder(rtfSource.length() / 4);
+		reader.parse(rtfSource, handler(text));
+		return text.toString();
+	}
+
+	/**
+	 * Creates a handler that writes the text of a document while it is
+	 * parsed.
+	 *
+	 * @param out
+	 *            sink receiving the text, e.g. a {@link java.io.Writer} or a
+	 *            {@link StringBuilder}
+	 * @return handler to pass to the reader
+	 */
+	public RtfHandler handler(Appendable out) {
+		return new TextHandler(out);
+	}
+
+	/**
+	 * Appends a character to the output sink.
+	 *
+	 * @param c
+	 *            character to be written
+	 * @throws UncheckedIOException
+	 *             is thrown if the sink cannot be written
+	 */
+	private void write(char c) {
+		try {
+			output.append(c);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends characters to the output sink.
+	 *
+	 * @param buffer
+	 *            characters to be written
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters
+	 * @throws UncheckedIOException
+	 *             is thrown if the sink cannot be written
+	 */
+	private void write(char[] buffer, int offset, int length) {
+		try {
+			if (output instanceof StringBuilder) {
+				((StringBuilder) output).append(buffer, offset, length);
+			} else if (output instanceof Writer) {
+				((Writer) output).write(buffer, offset, length);
+			} else {
+				output.append(CharBuffer.wrap(buffer, offset, length));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes a control word of the body.
+	 *
+	 * @param keyword
+	 *            keyword of the control word
+	 * @param parameter
+	 *            word parameter
+	 */
+	private void formatControlWord(RtfKeyword keyword, int parameter) {
+		// A double-byte character is not interrupted by control words.
+		decoder.interrupt();
+
+		switch (keyword) {
+		case PLAIN:
+		case PARD:
+			font = 0;
+			hidden = false;
+			break;
+		case ANSICPG:
+			decoder.setCodePage(parameter);
+			break;
+		case F:
+			font = parameter;
+			break;
+		case V:
+			hidden = parameter > 0;
+			break;
+		case LQUOTE:
+			writeVisible('\u2018');
+			break;
+		case RQUOTE:
+			writeVisible('\u2019');
+			break;
+		case LDBLQUOTE:
+			writeVisible('\u201c');
+			break;
+		case RDBLQUOTE:
+			writeVisible('\u201d');
+			break;
+		case EMDASH:
+			writeVisible('\u2014');
+			break;
+		case ENDASH:
+			writeVisible('\u2013');
+			break;
+		case EMSPACE:
+			writeVisible('\u2003');
+			break;
+		case ENSPACE:
+			writeVisible('\u2002');
+			break;
+		case BULLET:
+			writeVisible('\u2022');
+			break;
+		case TAB:
+			writeVisible('\t');
+			break;
+		case U:
+			writeVisible((char) parameter);
+			break;
+		case LINE:
+		case PAR:
+		case ROW:
+			writeVisible('\n');
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Writes a control symbol of the body.
+	 *
+	 * @param symbol
+	 *            control symbol
+	 * @param parameter
+	 *            value of \'hh
+	 */
+	private void formatControlSymbol(char symbol, int parameter) {
+		if (symbol == '\'') {
+			int c = decoder.decode(font, parameter);
+			// A first byte waits for the second one.
+			if (c >= 0) {
+				writeVisible((char) c);
+			}
+			return;
+		}
+		decoder.interrupt();
+		if (symbol == '~') {
+			writeVisible('\u00a0');
+		}
+	}
+
+	/**
+	 * Appends a character unless the text is hidden.
+	 *
+	 * @param c
+	 *            character to be written
+	 */
+	private void writeVisible(char c) {
+		if (!hidden) {
+			write(c);
+		}
+	}
+
+	/**
+	 * This class writes the text of the reader events. Like in
+	 * {@link RtfHtml}, fonts are numbered by their position in the font
+	 * table, and only their charset and code page are read.
+	 */
+	private class TextHandler implements RtfHandler {
+		private final Appendable out;
+		private boolean groupStarted;
+		private int ignoredDepth;
+		private boolean fontTable;
+		private int charsetCodePage;
+		private int fontCodePage;
+
+		TextHandler(Appendable out) {
+			this.out = out;
+		}
+
+		@Override
+		public void startDocument() {
+			output = out;
+			depth = 0;
+			font = 0;
+			hidden = false;
+			decoder.reset();
+			fontCodePages.clear();
+			decoder.setFontCodePages(fontCodePages);
+			groupStarted = false;
+			ignoredDepth = 0;
+			fontTable = false;
+		}
+
+		@Override
+		public void endDocument() {
+			output = null;
+		}
+
+		@Override
+		public void startGroup() {
+			if (ignoredDepth > 0) {
+				ignoredDepth++;
+				if (fontTable && ignoredDepth == 2) {
+					charsetCodePage = 0;
+					fontCodePage = 0;
+				}
+				return;
+			}
+			if (depth == states.length) {
+				states = Arrays.copyOf(states, depth * 2);
+			}
+			states[depth++] = font << 1 | (hidden ? 1 : 0);
+			groupStarted = true;
+		}
+
+		@Override
+		public void endGroup() {
+			groupStarted = false;
+			if (ignoredDepth > 0) {
+				if (fontTable && ignoredDepth == 2) {
+					addFont();
+				}
+				if (--ignoredDepth > 0) {
+					return;
+				}
+				fontTable = false;
+			}
+			if (depth > 0) {
+				int state = states[--depth];
+				font = state >> 1;
+				hidden = (state & 1) != 0;
+			}
+		}
+
+		@Override
+		public void controlWord(RtfKeyword keyword, String word, int parameter) {
+			if (ignoredDepth > 0) {
+				if (fontTable && ignoredDepth == 2) {
+					if (keyword == RtfKeyword.FCHARSET) {
+						charsetCodePage = RtfCodePage.getNumber(parameter);
+					} else if (keyword == RtfKeyword.CPG) {
+						fontCodePage = parameter;
+					}
+				}
+				return;
+			}
+			if (groupStarted) {
+				groupStarted = false;
+
+				// Can we ignore this group?
+				if (keyword == RtfKeyword.FONTTBL) {
+					fontTable = true;
+					fontCodePages.clear();
+					ignoredDepth = 1;
+					return;
+				}
+				if (keyword == RtfKeyword.COLORTBL || RtfTextDecoder.isIgnored(word)) {
+					ignoredDepth = 1;
+					return;
+				}
+			}
+			formatControlWord(keyword, parameter);
+		}
+
+		@Override
+		public void controlSymbol(char symbol, int parameter) {
+			if (ignoredDepth > 0) {
+				return;
+			}
+			if (groupStarted) {
+				groupStarted = false;
+
+				// Ignore destinations.
+				if (symbol == '*') {
+					ignoredDepth = 1;
+					return;
+				}
+			}
+			formatControlSymbol(symbol, parameter);
+		}
+
+		@Override
+		public void text(char[] buffer, int offset, int length) {
+			if (ignoredDepth > 0) {
+				return;
+			}
+			groupStarted = false;
+			if (decoder.hasLeadByte()) {
+				// The second byte of a double-byte character is written as
+				// plain character.
+				writeVisible(decoder.decodeTrailByte(font, buffer[offset]));
+				if (--length == 0) {
+					return;
+				}
+				offset++;
+			}
+			if (!hidden) {
+				write(buffer, offset, length);
+			}
+		}
+
+		@Override
+		public void data(RtfKeyword destination, long offset, long length) {
+			// Pictures and objects have no text.
+			groupStarted = false;
+		}
+
+		@Override
+		public boolean isDataRequested(RtfKeyword destination) {
+			return false;
+		}
+
+		/**
+		 * Adds the code page of a font that ends.
+		 */
+		private void addFont() {
+			fontCodePages.add(RtfTextDecoder.getFontCodePage(charsetCodePage, fontCodePage));
+		}
+	}
+}
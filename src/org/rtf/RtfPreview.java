@@ -0,0 +1,131 @@
+package org.rtf;
+
+/**
+ * This class defines how much of a document is converted for a preview, e.g.
+ * the first lines of a message in an inbox:
+ *
+ * <pre>
+ * RtfPreview preview = RtfPreview.builder().maxCharacters(300).maxParagraphs(3).build();
+ * String html = converter.preview(rtf, preview);
+ * </pre>
+ *
+ * The formatter stops at the first limit that is reached, closes the open
+ * tags and stops the reader, so that the rest of the document is not read.
+ * Unlike {@link RtfLimits}, reaching a limit is not an error. Previews are
+ * immutable and can be shared.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public final class RtfPreview {
+	/**
+	 * Preview that converts the complete document
+	 */
+	public static final RtfPreview NONE = builder().build();
+
+	private final long maxCharacters;
+	private final long maxParagraphs;
+	private final long maxOutputSize;
+
+	private RtfPreview(Builder builder) {
+		maxCharacters = builder.maxCharacters;
+		maxParagraphs = builder.maxParagraphs;
+		maxOutputSize = builder.maxOutputSize;
+	}
+
+	/**
+	 * Creates a builder for a preview.
+	 *
+	 * @return builder without any limits
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Gets the maximum number of visible characters.
+	 *
+	 * @return number of characters, special characters and entities count as
+	 *         one
+	 */
+	public long getMaxCharacters() {
+		return maxCharacters;
+	}
+
+	/**
+	 * Gets the maximum number of paragraphs.
+	 *
+	 * @return number of paragraphs and table rows
+	 */
+	public long getMaxParagraphs() {
+		return maxParagraphs;
+	}
+
+	/**
+	 * Gets the maximum output size.
+	 *
+	 * @return number of HTML characters
+	 */
+	public long getMaxOutputSize() {
+		return maxOutputSize;
+	}
+
+	/**
+	 * This class collects the limits of a preview.
+	 */
+	public static final class Builder {
+		private long maxCharacters = Long.MAX_VALUE;
+		private long maxParagraphs = Long.MAX_VALUE;
+		private long maxOutputSize = Long.MAX_VALUE;
+
+		private Builder() {
+		}
+
+		/**
+		 * Limits the visible characters. Hidden text is not counted.
+		 *
+		 * @param maxCharacters
+		 *            number of characters
+		 * @return this builder
+		 */
+		public Builder maxCharacters(long maxCharacters) {
+			this.maxCharacters = maxCharacters;
+			return this;
+		}
+
+		/**
+		 * Limits the paragraphs. The preview ends with the last paragraph
+		 * instead of the start of the next one.
+		 *
+		 * @param maxParagraphs
+		 *            number of paragraphs and table rows
+		 * @return this builder
+		 */
+		public Builder maxParagraphs(long maxParagraphs) {
+			this.maxParagraphs = maxParagraphs;
+			return this;
+		}
+
+		/**
+		 * Limits the output size. Text is only written up to this size, but
+		 * tags, e.g. the closing tags and pictures, are not cut off, so the
+		 * HTML can be somewhat larger.
+		 *
+		 * @param maxOutputSize
+		 *            number of HTML characters
+		 * @return this builder
+		 */
+		public Builder maxOutputSize(long maxOutputSize) {
+			this.maxOutputSize = maxOutputSize;
+			return this;
+		}
+
+		/**
+		 * Creates a preview with the current limits.
+		 *
+		 * @return new preview
+		 */
+		public RtfPreview build() {
+			return new RtfPreview(this);
+		}
+	}
+}
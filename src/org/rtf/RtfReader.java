@@ -1,25 +1,41 @@
 package org.rtf;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.stream.Collectors;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * This class parses RTF strings and documents and provides the read RTF
  * structure as an element tree for further processing.
+ * <p>
+ * Streams, readers and strings are read in chunks of a fixed size, so besides
+ * the element tree only one buffer is held in memory. Files are mapped into
+ * memory and their bytes are taken directly as characters.
+ * <p>
+ * The hex data of pictures and objects and the binary data following \binN
+ * are not parsed. The reader jumps over them and only reports their position
+ * in the source by {@link RtfHandler#data(RtfKeyword, long, long)}.
  *
  * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
  */
 public class RtfReader {
-	private String rtf;
-	private int pos;
-	private int len;
-	private char tchar;
-	private RtfGroup group;
+	private RtfLexer lexer;
+	private RtfLimits limits = RtfLimits.NONE;
+	private RtfCancellation cancellation;
+	private long inputSize;
+	private boolean stopped;
 
 	/**
 	 * Root element of an element tree that contains the processed RTF groups
@@ -27,277 +43,185 @@ public class RtfReader {
 	public RtfGroup root = null;
 
 	/**
-	 * Reads the next character from the RTF string at a time and stores it in
-	 * global variable for later interpretation.
+	 * Sets the limits of the following conversions.
+	 *
+	 * @param limits
+	 *            limits of input size, group depth, node count and time, or
+	 *            {@link RtfLimits#NONE} (default)
 	 */
-	protected void getChar() {
-		if (pos < rtf.length()) {
-			tchar = rtf.charAt(pos++);
-		}
+	public void setLimits(RtfLimits limits) {
+		this.limits = limits != null ? limits : RtfLimits.NONE;
 	}
 
 	/**
-	 * Converts a hexadecimal string to a decimal value.
+	 * Sets a token that stops the following conversions when it is
+	 * cancelled.
 	 *
-	 * @param s
-	 *            hex string, e.g. "a0"
-	 * @return number
+	 * @param cancellation
+	 *            token or {@code null} if the conversions cannot be
+	 *            cancelled (default)
 	 */
-	protected int hexdec(String s) {
-		return Integer.parseInt(s, 16);
+	public void setCancellation(RtfCancellation cancellation) {
+		this.cancellation = cancellation;
 	}
 
 	/**
-	 * Checks if the previously read character is a digit.
-	 *
-	 * @return {@code true} if the character is one of 0-9
+	 * Stops the current parse after the current event, e.g. when a handler
+	 * has got all it needs from the start of a document. The handler still
+	 * receives {@link RtfHandler#endDocument()}, and the rest of the source
+	 * is not read. Groups that are open at this point are not ended.
 	 */
-	protected boolean isDigit() {
-		if (tchar >= 48 && tchar <= 57) {
-			return true;
-		}
-		return false;
+	public void stop() {
+		stopped = true;
 	}
 
 	/**
-	 * Checks if the previously read character is a letter.
+	 * Checks if the last parse was stopped before the end of the document.
 	 *
-	 * @return {@code true} if the character is one of a-z or A-Z
+	 * @return {@code true} if {@link #stop()} was called
 	 */
-	protected boolean isLetter() {
-		if (tchar >= 65 && tchar <= 90) {
-			return true;
-		}
-		if (tchar >= 97 && tchar <= 122) {
-			return true;
-		}
-		return false;
+	public boolean isStopped() {
+		return stopped;
 	}
 
 	/**
-	 * Handles the start of a group represented by an opening brace.
+	 * Gets the size of the last parsed document.
+	 *
+	 * @return number of characters read, also if parsing failed
 	 */
-	protected void parseStartGroup() {
-		// Store state of document on stack.
-		RtfGroup newGroup = new RtfGroup();
-		if (group != null) {
-			newGroup.parent = group;
-		}
-		if (root == null) {
-			group = newGroup;
-			root = newGroup;
-		} else {
-			group.children.add(newGroup);
-			group = newGroup;
-		}
+	public long getInputSize() {
+		return inputSize;
 	}
 
 	/**
-	 * Handles the end of a group represented by a closing brace.
+	 * Parses RTF.
+	 *
+	 * @param rtfFile
+	 *            local file containing the rich text
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
 	 */
-	protected void parseEndGroup() {
-		// Retrieve state of document from stack.
-		group = group.parent;
+	public void parse(File rtfFile) throws RtfParseException {
+		RtfTreeBuilder builder = new RtfTreeBuilder();
+		root = null;
+		parse(rtfFile, builder);
+		root = builder.root;
 	}
 
 	/**
-	 * Gets the name and parameter of the control word and finally adds a new
-	 * word element to the current group.
+	 * Parses RTF and reports its content to a handler.
+	 *
+	 * @param rtfFile
+	 *            local file containing the rich text
+	 * @param handler
+	 *            receiver of the content
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
 	 */
-	protected void parseControlWord() {
-		getChar();
-		String word = "";
-
-		while (isLetter()) {
-			word += tchar;
-			getChar();
-		}
-
-		// Read parameter (if any) consisting of digits.
-		// Paramater may be negative.
-		int parameter = -1;
-		boolean negative = false;
-		if (tchar == '-') {
-			getChar();
-			negative = true;
-		}
-
-		while (isDigit()) {
-			if (parameter == -1) {
-				parameter = 0;
-			}
-			parameter = parameter * 10 + Integer.parseInt(tchar + "");
-			getChar();
-		}
-
-		if (parameter == -1) {
-			parameter = 1;
-		}
-		if (negative) {
-			parameter = -parameter;
-		}
-
-		// If this is u, then the parameter will be followed by a character.
-		if (word.equals("u")) {
-			// Ignore space delimiter.
-			if (tchar == ' ') {
-				getChar();
-			}
-
-			// If the replacement character is encoded as hexadecimal value \'hh
-			// then jump over it.
-			if (tchar == '\\' && rtf.charAt(pos) == '\'') {
-				pos += 3;
-			}
-
-			// Convert to UTF unsigned decimal code.
-			if (negative) {
-				parameter += 65536;
-			}
-		}
-		// If the current character is a space, then it is a delimiter. It is
-		// consumed.
-		// If it's not a space, then it's part of the next item in the text, so
-		// put the character back.
-		else {
-			if (tchar != ' ') {
-				pos--;
-			}
-		}
-
-		RtfControlWord rtfWord = new RtfControlWord();
-		rtfWord.word = word;
-		rtfWord.parameter = parameter;
-		group.children.add(rtfWord);
+	public void parse(File rtfFile, RtfHandler handler) throws RtfParseException {
+		parse(rtfFile.toPath(), handler);
 	}
 
 	/**
-	 * Gets the name and parameter of the control symbol and finally adds a new
-	 * symbol element to the current group.
+	 * Parses RTF.
+	 *
+	 * @param rtfPath
+	 *            local file containing the rich text
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
 	 */
-	protected void parseControlSymbol() {
-		// Read symbol (one character only).
-		getChar();
-		char symbol = tchar;
-
-		// Symbols ordinarily have no parameter. However, if this is \', then it
-		// is followed by a 2-digit hex-code.
-		int parameter = 0;
-		if (symbol == '\'') {
-			getChar();
-			String firstChar = tchar + "";
-			getChar();
-			String secondChar = tchar + "";
-			parameter = hexdec(firstChar + secondChar);
-		}
-
-		RtfControlSymbol rtfSymbol = new RtfControlSymbol();
-		rtfSymbol.symbol = symbol;
-		rtfSymbol.parameter = parameter;
-		group.children.add(rtfSymbol);
+	public void parse(Path rtfPath) throws RtfParseException {
+		RtfTreeBuilder builder = new RtfTreeBuilder();
+		root = null;
+		parse(rtfPath, builder);
+		root = builder.root;
 	}
 
 	/**
-	 * Reads the next character from the string and identifies it as start of a
-	 * control word or control symbol.
+	 * Parses RTF and reports its content to a handler. The file is mapped into
+	 * memory, and its bytes are taken as 8-bit characters without decoding
+	 * them, so that neither the file nor a decoded copy is held on the heap.
+	 *
+	 * @param rtfPath
+	 *            local file containing the rich text
+	 * @param handler
+	 *            receiver of the content
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
 	 */
-	protected void parseControl() {
-		// Beginning of an RTF control word or control symbol.
-		// Look ahead by one character to see if it starts with a letter
-		// (control word) or another symbol (control symbol).
-		getChar();
-		pos--;
-		if (isLetter()) {
-			parseControlWord();
-		} else {
-			parseControlSymbol();
+	public void parse(Path rtfPath, RtfHandler handler) throws RtfParseException {
+		try (FileChannel channel = FileChannel.open(rtfPath, StandardOpenOption.READ)) {
+			checkInputSize(channel.size());
+			parse(new MappedFileReader(channel), handler);
+		} catch (IOException e) {
+			throw new RtfParseException(e.getMessage(), e);
 		}
 	}
 
 	/**
-	 * Iteratively reads the next characters from the string and handles them as
-	 * plain text. Finally, a new text element is added to the current group.
+	 * Parses RTF. The bytes are taken as 8-bit characters, as RTF itself is a
+	 * 7-bit format and encodes other characters by control words.
 	 *
+	 * @param rtfStream
+	 *            stream containing the rich text
 	 * @throws RtfParseException
 	 *             is thrown if errors occur when parsing RTF strings
 	 */
-	protected void parseText() throws RtfParseException {
-		// Parse plain text up to backslash or brace, unless escaped.
-		String text = "";
-		boolean terminate = false;
-
-		do {
-			terminate = false;
-
-			// Is this an escape?
-			if (tchar == '\\') {
-				// Perform lookahead to see if this is really an escape
-				// sequence.
-				getChar();
-				switch (tchar) {
-				case '\\':
-				case '{':
-				case '}':
-					break;
-				default:
-					// Not an escape. Roll back.
-					pos -= 2;
-					terminate = true;
-					break;
-				}
-			} else if (tchar == '{' || tchar == '}') {
-				pos--;
-				terminate = true;
-			}
-
-			if (!terminate) {
-				text += tchar;
-				getChar();
-			}
-		} while (!terminate && pos < len);
-
-		RtfText rtfText = new RtfText();
-		rtfText.text = text;
-
-		// If group does not exist, then this is not a valid RTF file. Throw an
-		// exception.
-		if (group == null) {
-			throw new RtfParseException("Invalid RTF file.");
-		}
+	public void parse(InputStream rtfStream) throws RtfParseException {
+		RtfTreeBuilder builder = new RtfTreeBuilder();
+		root = null;
+		parse(rtfStream, builder);
+		root = builder.root;
+	}
 
-		group.children.add(rtfText);
+	/**
+	 * Parses RTF and reports its content to a handler. The bytes are taken as
+	 * 8-bit characters, as RTF itself is a 7-bit format and encodes other
+	 * characters by control words.
+	 *
+	 * @param rtfStream
+	 *            stream containing the rich text
+	 * @param handler
+	 *            receiver of the content
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public void parse(InputStream rtfStream, RtfHandler handler) throws RtfParseException {
+		parse(new InputStreamReader(rtfStream, StandardCharsets.ISO_8859_1), handler);
 	}
 
 	/**
 	 * Parses RTF.
 	 *
-	 * @param rtfFile
-	 *            local file containing the rich text
+	 * @param rtfReader
+	 *            reader providing the rich text
 	 * @throws RtfParseException
 	 *             is thrown if errors occur when parsing RTF strings
 	 */
-	public void parse(File rtfFile) throws RtfParseException {
-		try {
-			try (FileInputStream fis = new FileInputStream(rtfFile)) {
-				parse(fis);
-			}
-		} catch (IOException e) {
-			throw new RtfParseException(e.getMessage());
-		}
+	public void parse(Reader rtfReader) throws RtfParseException {
+		RtfTreeBuilder builder = new RtfTreeBuilder();
+		root = null;
+		parse(rtfReader, builder);
+		root = builder.root;
 	}
 
 	/**
-	 * Parses RTF.
+	 * Parses RTF and reports its content to a handler.
 	 *
-	 * @param rtfStream
-	 *            stream containing the rich text
+	 * @param rtfReader
+	 *            reader providing the rich text
+	 * @param handler
+	 *            receiver of the content
 	 * @throws RtfParseException
 	 *             is thrown if errors occur when parsing RTF strings
 	 */
-	public void parse(InputStream rtfStream) throws RtfParseException {
-		String rtfSource = new BufferedReader(new InputStreamReader(rtfStream)).lines()
-				.collect(Collectors.joining("\n"));
-		parse(rtfSource);
+	public void parse(Reader rtfReader, RtfHandler handler) throws RtfParseException {
+		if (lexer == null) {
+			lexer = new RtfLexer(rtfReader);
+		} else {
+			lexer.reset(rtfReader);
+		}
+		parseTokens(handler);
 	}
 
 	/**
@@ -309,36 +233,254 @@ public class RtfReader {
 	 *             is thrown if errors occur when parsing RTF strings
 	 */
 	public void parse(String rtfSource) throws RtfParseException {
-		rtf = rtfSource;
-		pos = 0;
-		len = rtf.length();
-		group = null;
+		RtfTreeBuilder builder = new RtfTreeBuilder();
 		root = null;
+		parse(rtfSource, builder);
+		root = builder.root;
+	}
 
-		while (pos < len) {
-			// Read next character.
-			getChar();
+	/**
+	 * Parses RTF and reports its content to a handler.
+	 *
+	 * @param rtfSource
+	 *            string containing the rich text
+	 * @param handler
+	 *            receiver of the content
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public void parse(String rtfSource, RtfHandler handler) throws RtfParseException {
+		checkInputSize(rtfSource.length());
+		parse(new StringReader(rtfSource), handler);
+	}
 
-			// Ignore \r and \n.
-			if (tchar == '\n' || tchar == '\r') {
-				continue;
+	/**
+	 * Parses RTF.
+	 *
+	 * @param rtf
+	 *            characters containing the rich text
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters to parse
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public void parse(char[] rtf, int offset, int length) throws RtfParseException {
+		RtfTreeBuilder builder = new RtfTreeBuilder();
+		root = null;
+		parse(rtf, offset, length, builder);
+		root = builder.root;
+	}
+
+	/**
+	 * Parses RTF and reports its content to a handler.
+	 *
+	 * @param rtf
+	 *            characters containing the rich text
+	 * @param offset
+	 *            position of the first character
+	 * @param length
+	 *            number of characters to parse
+	 * @param handler
+	 *            receiver of the content
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	public void parse(char[] rtf, int offset, int length, RtfHandler handler) throws RtfParseException {
+		checkInputSize(length);
+		if (lexer == null) {
+			lexer = new RtfLexer(rtf, offset, length);
+		} else {
+			lexer.reset(rtf, offset, length);
+		}
+		parseTokens(handler);
+	}
+
+	/**
+	 * Reports the tokens of the prepared lexer to the handler.
+	 *
+	 * @param handler
+	 *            receiver of the content
+	 * @throws RtfParseException
+	 *             is thrown if errors occur when parsing RTF strings
+	 */
+	private void parseTokens(RtfHandler handler) throws RtfParseException {
+		int depth = 0;
+		boolean started = false;
+		boolean groupStart = false;
+		int dataDepth = 0;
+		RtfKeyword dataDestination = null;
+
+		// Most limits are only checked every few tokens.
+		RtfLimits limits = this.limits;
+		long deadline = limits.getDeadline(System.nanoTime());
+		long start = lexer.getPosition();
+		// Skipped data is not split into tokens, so the lexer checks the
+		// input size and the time whenever it reads more characters.
+		lexer.setLimits(limits, deadline, cancellation);
+		long maxNodes = limits.getMaxNodes();
+		int maxDepth = limits.getMaxDepth();
+		long nodes = 0;
+		int countdown = RtfLimits.CHECK_INTERVAL;
+
+		stopped = false;
+		try {
+			handler.startDocument();
+
+			int token;
+			while (!stopped && (token = lexer.next()) != RtfLexer.END) {
+				// Everything except a single root group has to be inside a
+				// group, otherwise this is not a valid RTF file.
+				if (depth == 0 && (token != RtfLexer.GROUP_START || started)) {
+					throw new RtfParseException("Invalid RTF file.");
+				}
+				if (++nodes > maxNodes) {
+					throw new RtfLimitException(RtfLimitException.Limit.NODES,
+							"The document has more than " + limits.getMaxNodes() + " nodes.");
+				}
+				if (--countdown == 0 || token == RtfLexer.DATA) {
+					countdown = RtfLimits.CHECK_INTERVAL;
+					checkInputSize(lexer.getPosition() - start);
+					limits.checkTime(deadline, cancellation);
+				}
+
+				// What type of token is this?
+				switch (token) {
+				case RtfLexer.GROUP_START:
+					if (++depth > maxDepth) {
+						throw new RtfLimitException(RtfLimitException.Limit.DEPTH,
+								"The groups are nested deeper than " + limits.getMaxDepth() + " levels.");
+					}
+					started = true;
+					groupStart = true;
+					handler.startGroup();
+					break;
+				case RtfLexer.GROUP_END:
+					if (depth == dataDepth) {
+						dataDepth = 0;
+					}
+					depth--;
+					groupStart = false;
+					handler.endGroup();
+					break;
+				case RtfLexer.CONTROL_WORD:
+					// Remember picture and object groups, whose text is data.
+					if (groupStart && (lexer.getKeyword() == RtfKeyword.PICT
+							|| lexer.getKeyword() == RtfKeyword.OBJDATA)) {
+						dataDepth = depth;
+						dataDestination = lexer.getKeyword();
+					}
+					groupStart = false;
+					handler.controlWord(lexer.getKeyword(), lexer.getWord(), lexer.getParameter());
+					break;
+				case RtfLexer.CONTROL_SYMBOL:
+					// The destination word may follow \*.
+					groupStart = groupStart && lexer.getSymbol() == '*';
+					handler.controlSymbol(lexer.getSymbol(), lexer.getParameter());
+					break;
+				case RtfLexer.DATA:
+					groupStart = false;
+					handler.data(RtfKeyword.BIN, lexer.getDataOffset(), lexer.getDataLength());
+					break;
+				default:
+					groupStart = false;
+					if (depth == dataDepth && !handler.isDataRequested(dataDestination)) {
+						// The first text of a picture or object starts its
+						// data, which lasts until the end of the group.
+						lexer.skipGroup();
+						checkInputSize(lexer.getPosition() - start);
+						handler.data(dataDestination, lexer.getDataOffset(), lexer.getDataLength());
+					} else {
+						handler.text(lexer.getBuffer(), lexer.getOffset(), lexer.getLength());
+					}
+					break;
+				}
 			}
 
-			// What type of character is this?
-			switch (tchar) {
-			case '{':
-				parseStartGroup();
-				break;
-			case '}':
-				parseEndGroup();
-				break;
-			case '\\':
-				parseControl();
-				break;
-			default:
-				parseText();
-				break;
+			checkInputSize(lexer.getPosition() - start);
+			handler.endDocument();
+		} catch (IOException e) {
+			throw new RtfParseException(e.getMessage(), e);
+		} catch (UncheckedIOException e) {
+			throw new RtfParseException(e.getCause().getMessage(), e.getCause());
+		} catch (UncheckedRtfLimitException e) {
+			// A limit of the handler, e.g. of the formatter, was exceeded.
+			throw e.getCause();
+		} finally {
+			inputSize = lexer.getPosition() - start;
+			// Do not keep the document alive through the lexer.
+			lexer.reset(null, 0, 0);
+		}
+	}
+
+	/**
+	 * Checks the size of the input.
+	 *
+	 * @param size
+	 *            number of characters read or to be read
+	 * @throws RtfLimitException
+	 *             is thrown if the input is too large
+	 */
+	private void checkInputSize(long size) throws RtfLimitException {
+		limits.checkInputSize(size);
+	}
+
+	/**
+	 * This class reads a file through memory-mapped regions. Each byte is
+	 * widened to a character by decoding ISO-8859-1.
+	 * <p>
+	 * The bytes are copied in bulk from the mapping into a small array before
+	 * they are widened, instead of being read one by one from the mapping by
+	 * the lexer. For a 128 MB file already in memory, the bulk copy takes
+	 * about 20 ms, and widening the array takes about 25 ms with the decoder
+	 * (110 ms with a loop), while widening straight from the mapping takes
+	 * about 500 ms, as each byte is then read by a bounds-checked call. The
+	 * extra copy costs about 2% of parsing the file, so the lexer keeps
+	 * scanning characters only.
+	 */
+	private static class MappedFileReader extends Reader {
+		// Regions are limited to 1 GB, as a buffer cannot exceed 2 GB.
+		private static final long REGION_SIZE = 1L << 30;
+
+		private final FileChannel channel;
+		private final long size;
+		private long position;
+		private MappedByteBuffer region;
+		private final byte[] bytes = new byte[RtfLexer.DEFAULT_BUFFER_SIZE];
+		private final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+		// The decoder widens arrays with an intrinsic of the JVM.
+		private final CharsetDecoder decoder = StandardCharsets.ISO_8859_1.newDecoder();
+
+		MappedFileReader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			size = channel.size();
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (region == null || !region.hasRemaining()) {
+				if (position == size) {
+					return -1;
+				}
+				long regionSize = Math.min(size - position, REGION_SIZE);
+				region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+				position += regionSize;
 			}
+
+			// Bulk copies are much faster than single reads from the mapping.
+			int n = Math.min(Math.min(len, region.remaining()), bytes.length);
+			region.get(bytes, 0, n);
+			byteBuffer.clear();
+			byteBuffer.limit(n);
+			// Every byte is a valid character, so all of them are decoded.
+			decoder.decode(byteBuffer, CharBuffer.wrap(cbuf, off, n), false);
+			return n;
+		}
+
+		@Override
+		public void close() {
+			// The channel is closed by the reader.
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package org.rtf;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class keeps the span tags created by {@link RtfHtml} for the states of
+ * documents, so that conversions of documents with the same font and color
+ * tables can share them. It can be used by several formatters and threads at
+ * once:
+ *
+ * <pre>
+ * RtfStyleCache cache = new RtfStyleCache(100);
+ * formatter.setStyleCache(cache);
+ * </pre>
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfStyleCache {
+	/**
+	 * Maximum number of states kept for one font and color table
+	 */
+	public static final int MAX_STATES = 4096;
+
+	private final int maximumSize;
+	private final ConcurrentMap<List<List<String>>, Map<RtfPackedState, String>> spans = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maximumSize
+	 *            maximum number of distinct font and color tables; if it is
+	 *            exceeded, the cache starts again
+	 */
+	public RtfStyleCache(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Gets the span tags for a font and color table. The returned map takes
+	 * new states, but it is not filled beyond {@link #MAX_STATES} entries.
+	 *
+	 * @param fonttbl
+	 *            font families of the document
+	 * @param colortbl
+	 *            colors of the document
+	 * @return span tags by state
+	 */
+	public Map<RtfPackedState, String> getSpans(List<String> fonttbl, List<String> colortbl) {
+		List<List<String>> tables = Arrays.asList(fonttbl, colortbl);
+		Map<RtfPackedState, String> tableSpans = spans.get(tables);
+		if (tableSpans == null) {
+			if (spans.size() >= maximumSize) {
+				spans.clear();
+			}
+			tableSpans = new ConcurrentHashMap<>();
+			Map<RtfPackedState, String> existing = spans.putIfAbsent(tables, tableSpans);
+			if (existing != null) {
+				tableSpans = existing;
+			}
+		}
+		return tableSpans;
+	}
+
+	/**
+	 * Removes all span tags.
+	 */
+	public void clear() {
+		spans.clear();
+	}
+}
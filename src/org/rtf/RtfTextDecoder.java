@@ -0,0 +1,164 @@
+package org.rtf;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the part of reading the body that {@link RtfHtml} and
+ * {@link RtfPlainText} have in common: characters written as \'hh are decoded
+ * with the code page of the current font, including double-byte characters
+ * whose bytes may be split into a symbol and a text, and groups without text
+ * are recognized by their type.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+final class RtfTextDecoder {
+	private RtfCodePage codePage;
+	private List<RtfCodePage> fontCodePages;
+	private int leadByte;
+
+	RtfTextDecoder() {
+		reset();
+	}
+
+	/**
+	 * Prepares a new document with the default code page and without fonts.
+	 */
+	void reset() {
+		codePage = RtfCodePage.get(RtfCodePage.DEFAULT);
+		fontCodePages = Collections.emptyList();
+		leadByte = -1;
+	}
+
+	/**
+	 * Sets the code page of the document.
+	 *
+	 * @param number
+	 *            number of \ansicpgN
+	 */
+	void setCodePage(int number) {
+		codePage = RtfCodePage.get(number);
+	}
+
+	/**
+	 * Sets the code pages of the fonts.
+	 *
+	 * @param codePages
+	 *            code pages by font number; {@code null} for the code page of
+	 *            the document
+	 */
+	void setFontCodePages(List<RtfCodePage> codePages) {
+		fontCodePages = codePages;
+	}
+
+	/**
+	 * Gets the code pages of the fonts.
+	 *
+	 * @return code pages by font number
+	 */
+	List<RtfCodePage> getFontCodePages() {
+		return fontCodePages;
+	}
+
+	/**
+	 * Gets the code page of a font.
+	 *
+	 * @param font
+	 *            number of the font
+	 * @return code page of the font or of the document
+	 */
+	RtfCodePage getCodePage(int font) {
+		if (font >= 0 && font < fontCodePages.size()) {
+			RtfCodePage fontCodePage = fontCodePages.get(font);
+			if (fontCodePage != null) {
+				return fontCodePage;
+			}
+		}
+		return codePage;
+	}
+
+	/**
+	 * Decodes a character written as \'hh.
+	 *
+	 * @param font
+	 *            number of the current font
+	 * @param b
+	 *            value of the symbol
+	 * @return character or -1 if it is the first byte of a double-byte
+	 *         character, which waits for the second byte
+	 */
+	int decode(int font, int b) {
+		RtfCodePage page = getCodePage(font);
+		if (leadByte >= 0) {
+			char c = page.decode(leadByte, b);
+			leadByte = -1;
+			return c;
+		}
+		if (page.isLeadByte(b)) {
+			leadByte = b;
+			return -1;
+		}
+		return page.decode(b);
+	}
+
+	/**
+	 * Checks if the first byte of a double-byte character waits for the
+	 * second byte.
+	 *
+	 * @return {@code true} if the next character completes a character
+	 */
+	boolean hasLeadByte() {
+		return leadByte >= 0;
+	}
+
+	/**
+	 * Completes a double-byte character whose second byte is written as plain
+	 * character instead of \'hh.
+	 *
+	 * @param font
+	 *            number of the current font
+	 * @param trail
+	 *            second byte
+	 * @return decoded character
+	 */
+	char decodeTrailByte(int font, char trail) {
+		char c = getCodePage(font).decode(leadByte, trail);
+		leadByte = -1;
+		return c;
+	}
+
+	/**
+	 * Drops a waiting first byte, as a double-byte character is not
+	 * interrupted by control words or symbols.
+	 */
+	void interrupt() {
+		leadByte = -1;
+	}
+
+	/**
+	 * Gets the code page of a font table entry.
+	 *
+	 * @param charsetCodePage
+	 *            code page of \fcharsetN or 0
+	 * @param fontCodePage
+	 *            code page of \cpgN or 0; it supersedes the charset
+	 * @return code page or {@code null} for the code page of the document
+	 */
+	static RtfCodePage getFontCodePage(int charsetCodePage, int fontCodePage) {
+		int number = fontCodePage != 0 ? fontCodePage : charsetCodePage;
+		return number != 0 ? RtfCodePage.get(number) : null;
+	}
+
+	/**
+	 * Checks if a group has no text because of its type. Font and color
+	 * tables, which are read separately, and \* destinations are not
+	 * included.
+	 *
+	 * @param type
+	 *            group type, i.e. its first control word
+	 * @return {@code true} for stylesheets, info and pictures
+	 */
+	static boolean isIgnored(String type) {
+		return type.equals("stylesheet") || type.equals("info") || type.startsWith("pict");
+	}
+}
@@ -0,0 +1,143 @@
+package org.rtf;
+
+/**
+ * This class builds the element tree from the events of an
+ * {@link RtfReader}.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class RtfTreeBuilder implements RtfHandler {
+	private RtfGroup group;
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * Root element of the element tree that contains the processed RTF groups
+	 */
+	public RtfGroup root = null;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#startDocument()
+	 */
+	@Override
+	public void startDocument() {
+		root = null;
+		group = null;
+		text.setLength(0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#endDocument()
+	 */
+	@Override
+	public void endDocument() {
+		flushText();
+		group = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#startGroup()
+	 */
+	@Override
+	public void startGroup() {
+		flushText();
+
+		// Store state of document on stack.
+		RtfGroup newGroup = new RtfGroup();
+		if (root == null) {
+			root = newGroup;
+		} else {
+			newGroup.parent = group;
+			group.children.add(newGroup);
+		}
+		group = newGroup;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#endGroup()
+	 */
+	@Override
+	public void endGroup() {
+		flushText();
+
+		// Retrieve state of document from stack.
+		group = group.parent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#controlWord(org.rtf.RtfKeyword, java.lang.String,
+	 * int)
+	 */
+	@Override
+	public void controlWord(RtfKeyword keyword, String word, int parameter) {
+		flushText();
+
+		RtfControlWord rtfWord = new RtfControlWord();
+		rtfWord.word = word;
+		rtfWord.keyword = keyword;
+		rtfWord.parameter = parameter;
+		group.children.add(rtfWord);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#controlSymbol(char, int)
+	 */
+	@Override
+	public void controlSymbol(char symbol, int parameter) {
+		flushText();
+
+		RtfControlSymbol rtfSymbol = new RtfControlSymbol();
+		rtfSymbol.symbol = symbol;
+		rtfSymbol.parameter = parameter;
+		group.children.add(rtfSymbol);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#text(char[], int, int)
+	 */
+	@Override
+	public void text(char[] buffer, int offset, int length) {
+		// Adjacent texts, e.g. a text interrupted by escaped braces, are
+		// joined into a single text element.
+		text.append(buffer, offset, length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.rtf.RtfHandler#data(org.rtf.RtfKeyword, long, long)
+	 */
+	@Override
+	public void data(RtfKeyword destination, long offset, long length) {
+		flushText();
+
+		// Only the position is kept, no element is created.
+		group.dataOffset = offset;
+		group.dataLength = length;
+	}
+
+	/**
+	 * Adds the collected text as a new text element to the current group.
+	 */
+	protected void flushText() {
+		if (text.length() > 0) {
+			RtfText rtfText = new RtfText();
+			rtfText.text = text.toString();
+			group.children.add(rtfText);
+			text.setLength(0);
+		}
+	}
+}
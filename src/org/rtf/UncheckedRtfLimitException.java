@@ -0,0 +1,33 @@
+package org.rtf;
+
+/**
+ * This exception wraps an {@link RtfLimitException} where no checked
+ * exception can be thrown, i.e. by the formatter. The reader unwraps it
+ * again, so it only reaches callers of
+ * {@link RtfHtml#format(RtfGroup, Appendable, boolean)} and its overloads.
+ *
+ * @author <a href="mailto:acsf.dev@gmail.com">Kay Schröer</a>
+ */
+public class UncheckedRtfLimitException extends RuntimeException {
+	private static final long serialVersionUID = 0L;
+
+	/**
+	 * Creates the new exception.
+	 *
+	 * @param cause
+	 *            exceeded limit
+	 */
+	public UncheckedRtfLimitException(RtfLimitException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Throwable#getCause()
+	 */
+	@Override
+	public RtfLimitException getCause() {
+		return (RtfLimitException) super.getCause();
+	}
+}
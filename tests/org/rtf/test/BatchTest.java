@@ -0,0 +1,90 @@
+package org.rtf.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.rtf.RtfBatchConverter;
+import org.rtf.RtfConverter;
+
+public class BatchTest {
+	@Test
+	public void testDirectory() throws IOException, InterruptedException {
+		Path directory = Files.createTempDirectory("rtf");
+		List<Path> files = new ArrayList<>();
+		files.add(Files.write(directory.resolve("a.rtf"), "{\\rtf1 A}".getBytes(StandardCharsets.US_ASCII)));
+		files.add(Files.write(directory.resolve("b.RTF"), "{\\rtf1 BB\\par}".getBytes(StandardCharsets.US_ASCII)));
+		files.add(Files.write(directory.resolve("c.rtf"), "\\rtf1 C".getBytes(StandardCharsets.US_ASCII)));
+		files.add(Files.write(directory.resolve("d.txt"), "D".getBytes(StandardCharsets.US_ASCII)));
+
+		Map<Path, String> results = new ConcurrentHashMap<>();
+		Map<Path, Exception> errors = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			RtfBatchConverter batch = new RtfBatchConverter(RtfConverter.builder().build(), executor, 1);
+			RtfBatchConverter.Statistics statistics = batch.convert(directory, sink(results, errors));
+
+			Assert.assertEquals(2, statistics.getDocuments());
+			Assert.assertEquals(1, statistics.getFailures());
+			Assert.assertEquals(9 + 14, statistics.getInputSize());
+			Assert.assertEquals("<p><span style=\"font-family:;\">A", results.get(files.get(0)));
+			Assert.assertEquals("<p><span style=\"font-family:;\">BB</span></p><p>", results.get(files.get(1)));
+			Assert.assertEquals("Invalid RTF file.", errors.get(files.get(2)).getMessage());
+		} finally {
+			executor.shutdown();
+			for (Path file : files) {
+				Files.delete(file);
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testLargestFirst() throws InterruptedException {
+		Map<Integer, String> sources = new LinkedHashMap<>();
+		for (int i = 1; i <= 5; i++) {
+			sources.put(i, "{\\rtf1 " + String.join("", Collections.nCopies(i, "x")) + "}");
+		}
+
+		List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		RtfBatchConverter batch = new RtfBatchConverter(RtfConverter.builder().build(), Runnable::run, 1);
+		batch.convertStrings(sources, new RtfBatchConverter.Sink<Integer>() {
+			@Override
+			public void converted(Integer source, String html) {
+				order.add(source);
+			}
+
+			@Override
+			public void failed(Integer source, Exception error) {
+				Assert.fail(error.getMessage());
+			}
+		});
+
+		Assert.assertEquals("[5, 4, 3, 2, 1]", order.toString());
+	}
+
+	private static RtfBatchConverter.Sink<Path> sink(final Map<Path, String> results, final Map<Path, Exception> errors) {
+		return new RtfBatchConverter.Sink<Path>() {
+			@Override
+			public void converted(Path source, String html) {
+				results.put(source, html);
+			}
+
+			@Override
+			public void failed(Path source, Exception error) {
+				errors.put(source, error);
+			}
+		};
+	}
+}
@@ -0,0 +1,137 @@
+package org.rtf.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.rtf.RtfCachingConverter;
+import org.rtf.RtfConverter;
+import org.rtf.RtfParseException;
+
+public class CacheTest {
+	private static final String SIGNATURE = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}}\\f0 Best regards,\\line {\\b Kay}\\par}";
+
+	@Test
+	public void testHits() throws RtfParseException {
+		RtfConverter converter = RtfConverter.builder().build();
+		RtfCachingConverter cache = new RtfCachingConverter(converter, 1024 * 1024);
+		String expectedString = converter.convert(SIGNATURE);
+
+		Assert.assertEquals(expectedString, cache.convert(SIGNATURE));
+		Assert.assertEquals(expectedString, cache.convert(SIGNATURE));
+		Assert.assertEquals(expectedString, cache.convert(new String(SIGNATURE)));
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(2, cache.getHits());
+
+		// Characters beyond 0xff have a key of their own.
+		String wideString = "{\\rtf1 \u0100}";
+		Assert.assertEquals(converter.convert(wideString), cache.convert(wideString));
+		Assert.assertEquals(converter.convert(wideString), cache.convert(wideString));
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(3, cache.getHits());
+
+		// Other options give other results.
+		RtfCachingConverter pageCache = new RtfCachingConverter(RtfConverter.builder().page(true).build(),
+				1024 * 1024);
+		Assert.assertFalse(expectedString.equals(pageCache.convert(SIGNATURE)));
+	}
+
+	@Test
+	public void testEviction() throws RtfParseException {
+		RtfCachingConverter cache = new RtfCachingConverter(RtfConverter.builder().build(), 2000);
+		for (int i = 0; i < 10; i++) {
+			cache.convert("{\\rtf1 Document " + i + "}");
+		}
+		Assert.assertTrue(cache.getEvictions() > 0);
+		Assert.assertTrue(cache.getMemorySize() <= 2000);
+
+		// The last document is still cached, the first one is not.
+		cache.convert("{\\rtf1 Document 9}");
+		Assert.assertEquals(1, cache.getHits());
+		cache.convert("{\\rtf1 Document 0}");
+		Assert.assertEquals(11, cache.getMisses());
+	}
+
+	@Test
+	public void testDirectory() throws IOException, RtfParseException {
+		Path directory = Files.createTempDirectory("rtf");
+		Path file = Files.write(directory.resolve("signature.rtf"), SIGNATURE.getBytes(StandardCharsets.US_ASCII));
+		try {
+			RtfConverter converter = RtfConverter.builder().build();
+			String expectedString = converter.convert(SIGNATURE);
+
+			RtfCachingConverter cache = new RtfCachingConverter(converter, 1024 * 1024, directory);
+			Assert.assertEquals(expectedString, cache.convert(file));
+			// The same document as string is not converted again.
+			Assert.assertEquals(expectedString, cache.convert(SIGNATURE));
+			Assert.assertEquals(1, cache.getMisses());
+			Assert.assertEquals(1, cache.getHits());
+
+			// A new cache finds the results of the old one.
+			cache = new RtfCachingConverter(converter, 1024 * 1024, directory);
+			Assert.assertEquals(expectedString, cache.convert(file));
+			Assert.assertEquals(expectedString, cache.convert(SIGNATURE));
+			Assert.assertEquals(0, cache.getMisses());
+			Assert.assertEquals(1, cache.getDiskHits());
+			Assert.assertEquals(1, cache.getHits());
+		} finally {
+			// The document and the results
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path entry : (Iterable<Path>) files::iterator) {
+					Files.delete(entry);
+				}
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testConcurrentMisses() throws Exception {
+		RtfConverter converter = RtfConverter.builder().build();
+		StringBuilder rtfBuilder = new StringBuilder("{\\rtf1\\ansi ");
+		for (int i = 0; i < 20000; i++) {
+			rtfBuilder.append("{\\b Text} ");
+		}
+		final String rtfString = rtfBuilder.append('}').toString();
+		final RtfCachingConverter cache = new RtfCachingConverter(converter, 64 * 1024 * 1024);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int k = 0; k < 32; k++) {
+				futures.add(executor.submit(() -> cache.convert(rtfString)));
+			}
+			String expectedString = converter.convert(rtfString);
+			for (Future<String> future : futures) {
+				Assert.assertEquals(expectedString, future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(31, cache.getHits() + cache.getCoalesced());
+	}
+
+	@Test
+	public void testFailure() {
+		RtfCachingConverter cache = new RtfCachingConverter(RtfConverter.builder().build(), 1024 * 1024);
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.convert("text outside of a group");
+				Assert.fail();
+			} catch (RtfParseException e) {
+				// expected
+			}
+		}
+		Assert.assertEquals(2, cache.getMisses());
+	}
+}
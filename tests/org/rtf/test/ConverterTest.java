@@ -0,0 +1,156 @@
+package org.rtf.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.rtf.RtfConverter;
+import org.rtf.RtfHtml;
+import org.rtf.RtfMetrics;
+import org.rtf.RtfParseException;
+import org.rtf.RtfPreview;
+import org.rtf.RtfReader;
+import org.rtf.RtfStyleCache;
+
+public class ConverterTest {
+	@Test
+	public void testSameHtmlAsFormatter() throws RtfParseException {
+		String rtfString = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}}\\f0\\fs22 Hello {\\b World}\\par}";
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+		String expectedString = new RtfHtml().format(reader.root, true);
+
+		RtfConverter converter = RtfConverter.builder().page(true).build();
+		Assert.assertEquals(expectedString, converter.convert(rtfString));
+		Assert.assertEquals(expectedString, converter.convert(rtfString));
+	}
+
+	@Test
+	public void testConcurrentConversions() throws Exception {
+		final List<String> rtfStrings = new ArrayList<>();
+		final List<String> expectedStrings = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			StringBuilder rtfBuilder = new StringBuilder();
+			rtfBuilder.append("{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}{\\f1\\fnil Arial;}}");
+			rtfBuilder.append("{\\colortbl ;\\red255\\green0\\blue0;}");
+			for (int j = 0; j <= i; j++) {
+				rtfBuilder.append("\\f" + (j % 2) + "\\fs" + (20 + i) + " Text " + j + " {\\cf1\\b " + i + "}\\par\r\n");
+			}
+			rtfBuilder.append("}");
+			rtfStrings.add(rtfBuilder.toString());
+
+			RtfReader reader = new RtfReader();
+			reader.parse(rtfBuilder.toString());
+			expectedStrings.add(new RtfHtml().format(reader.root));
+		}
+
+		final RtfConverter converter = RtfConverter.builder().styleCache(new RtfStyleCache(4)).poolSize(2).build();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int k = 0; k < 400; k++) {
+				final String rtfString = rtfStrings.get(k % rtfStrings.size());
+				futures.add(executor.submit(() -> converter.convert(rtfString)));
+			}
+			for (int k = 0; k < futures.size(); k++) {
+				Assert.assertEquals(expectedStrings.get(k % expectedStrings.size()), futures.get(k).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testMetrics() throws RtfParseException {
+		String rtfString = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}}{\\*\\generator Writer;}\\f0 Hello\\~{\\b World}"
+				+ "{\\pict\\pngblip 0102}\\par}";
+		RtfMetrics metrics = new RtfMetrics();
+		RtfConverter converter = RtfConverter.builder().metrics(metrics).build();
+		Assert.assertEquals(RtfConverter.builder().build().convert(rtfString), converter.convert(rtfString));
+		converter.convert(rtfString);
+		try {
+			converter.convert("text outside of a group");
+			Assert.fail();
+		} catch (RtfParseException e) {
+			// expected
+		}
+
+		RtfMetrics.Snapshot snapshot = metrics.snapshot();
+		Assert.assertEquals(2, snapshot.getConversions());
+		Assert.assertEquals(1, snapshot.getFailures());
+		Assert.assertEquals(2 * rtfString.length(), snapshot.getInputSize());
+		Assert.assertEquals(2 * 6, snapshot.getGroups());
+		Assert.assertEquals(2 * 11, snapshot.getControlWords());
+		Assert.assertEquals(2 * 2, snapshot.getControlSymbols());
+		Assert.assertEquals(2, snapshot.getData());
+		// "Writer;" and "0102"
+		Assert.assertEquals(2 * 11, snapshot.getSkippedSize());
+
+		RtfMetrics.Latency total = snapshot.getLatency(RtfMetrics.SMALL, RtfMetrics.TOTAL);
+		Assert.assertEquals(2, total.getCount());
+		Assert.assertTrue(total.getP50() > 0);
+		Assert.assertTrue(total.getP50() <= total.getP99());
+		Assert.assertTrue(total.getP99() <= total.getMax());
+		Assert.assertTrue(snapshot.getLatency(RtfMetrics.SMALL, RtfMetrics.PARSE).getMax() <= total.getMax());
+		Assert.assertEquals(0, snapshot.getLatency(RtfMetrics.HUGE, RtfMetrics.TOTAL).getCount());
+		Assert.assertEquals(RtfMetrics.LARGE, RtfMetrics.getSizeBucket(1024 * 1024));
+	}
+
+	@Test
+	public void testPreview() throws RtfParseException {
+		String rtfString = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}}\\f0 Hello {\\b World}\\par Second\\par}";
+		RtfConverter converter = RtfConverter.builder().build();
+		String html = converter.preview(rtfString, RtfPreview.builder().maxCharacters(8).build());
+		Assert.assertEquals("<p><span style=\"font-family:'Calibri';\">Hello </span>"
+				+ "<span style=\"font-family:'Calibri';font-weight:bold;\">Wo</span></p>", html);
+		html = converter.preview(rtfString, RtfPreview.builder().maxParagraphs(1).build());
+		Assert.assertTrue(html.contains("World") && html.endsWith("</p>"));
+		Assert.assertFalse(html.contains("Second"));
+		// The preview is not kept for the next conversion.
+		Assert.assertTrue(converter.convert(rtfString).contains("Second"));
+
+		// The tree-based conversion stops at the same place.
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+		RtfHtml formatter = new RtfHtml();
+		formatter.setPreview(RtfPreview.builder().maxCharacters(8).build());
+		Assert.assertEquals(converter.preview(rtfString, RtfPreview.builder().maxCharacters(8).build()),
+				formatter.format(reader.root));
+		Assert.assertTrue(formatter.isTruncated());
+	}
+
+	@Test
+	public void testPreviewStopsReading() throws RtfParseException {
+		StringBuilder rtfBuilder = new StringBuilder("{\\rtf1\\ansi\\pard ");
+		for (int i = 0; i < 100000; i++) {
+			rtfBuilder.append("{\\b Paragraph} ").append(i).append("\\par\r\n");
+		}
+		rtfBuilder.append("}");
+		byte[] rtf = rtfBuilder.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+		final int[] read = new int[1];
+		ByteArrayInputStream rtfStream = new ByteArrayInputStream(rtf) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				int n = super.read(b, off, len);
+				read[0] += Math.max(n, 0);
+				return n;
+			}
+		};
+		StringBuilder html = new StringBuilder();
+		RtfConverter.builder().page(true).build().preview(rtfStream, html,
+				RtfPreview.builder().maxCharacters(300).maxOutputSize(4096).build());
+
+		Assert.assertTrue(html.toString().contains("> 0</span>"));
+		Assert.assertFalse(html.toString().contains("> 99999</span>"));
+		Assert.assertTrue(html.toString().endsWith("</p>\n  </body>\n</html>\n"));
+		Assert.assertTrue(rtf.length > 2000000);
+		Assert.assertTrue(read[0] < 64 * 1024);
+	}
+}
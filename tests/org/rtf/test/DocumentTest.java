@@ -0,0 +1,64 @@
+package org.rtf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.rtf.RtfDocument;
+import org.rtf.RtfHtml;
+import org.rtf.RtfKeyword;
+import org.rtf.RtfParseException;
+import org.rtf.RtfReader;
+
+public class DocumentTest {
+	@Test
+	public void testNodes() throws RtfParseException {
+		RtfDocument document = RtfDocument.parse("{\\rtf1{\\b\\xyz5 Hi}\\'e4 A\\{B}");
+
+		Assert.assertEquals(RtfDocument.GROUP, document.getKind(0));
+		Assert.assertEquals(document.size(), document.getEnd(0));
+
+		StringBuilder children = new StringBuilder();
+		for (int child = 1; child < document.getEnd(0); child = document.getEnd(child)) {
+			switch (document.getKind(child)) {
+			case RtfDocument.GROUP:
+				children.append("{").append(document.getEnd(child) - child - 1).append("}");
+				break;
+			case RtfDocument.CONTROL_WORD:
+				children.append("\\").append(document.getWord(child));
+				break;
+			case RtfDocument.CONTROL_SYMBOL:
+				children.append("\\").append(document.getSymbol(child)).append(document.getParameter(child));
+				break;
+			default:
+				children.append("[").append(document.getText(child)).append("]");
+				break;
+			}
+		}
+		Assert.assertEquals("\\rtf{3}\\'228[ A][{][B]", children.toString());
+
+		Assert.assertEquals(RtfKeyword.B, document.getKeyword(3));
+		Assert.assertEquals(RtfKeyword.UNKNOWN, document.getKeyword(4));
+		Assert.assertEquals("xyz", document.getWord(4));
+		Assert.assertEquals(5, document.getParameter(4));
+	}
+
+	@Test
+	public void testSameHtmlAsTree() throws RtfParseException {
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append("{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0\\fnil\\fcharset0 Calibri;}{\\f1\\fswiss Arial;}}\r\n");
+		rtfBuilder.append("{\\colortbl ;\\red143\\green176\\blue140;}{\\*\\generator Riched20}\r\n");
+		rtfBuilder.append("\\pard\\cf1\\f0\\fs22 Hello {\\b\\f1 bold \\{World\\}}{\\pict\\pngblip 89504e47}\\i Schr\\'f6er\\par\r\n");
+		rtfBuilder.append("}\r\n");
+		String rtfString = rtfBuilder.toString();
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+		String expectedString = new RtfHtml().format(reader.root, true);
+
+		RtfDocument document = RtfDocument.parse(rtfString);
+		Assert.assertEquals(expectedString, new RtfHtml().format(document.toGroup(), true));
+
+		StringBuilder htmlBuilder = new StringBuilder();
+		document.accept(new RtfHtml().handler(htmlBuilder, true));
+		Assert.assertEquals(expectedString, htmlBuilder.toString());
+	}
+}
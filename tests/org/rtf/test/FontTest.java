@@ -2,6 +2,7 @@ package org.rtf.test;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.rtf.RtfHeaderCache;
 import org.rtf.RtfHtml;
 import org.rtf.RtfParseException;
 import org.rtf.RtfReader;
@@ -222,4 +223,51 @@ public class FontTest {
 
 		Assert.assertEquals(expectedString, htmlString);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testHeaderCache() throws RtfParseException {
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append("{\\rtf1\\ansi\\ansicpg1252\\deff0{\\fonttbl{\\f0\\fswiss\\fcharset0 Arial;}");
+		rtfBuilder.append("{\\f1\\fnil\\fcharset204 Schr\\'f6er \\{1\\};}{\\f2\\fnil\\fcharset128 \\u26126?\\u26397?;}");
+		rtfBuilder.append("{\\f3\\froman\\fcharset2 Symbol;}}\r\n");
+		rtfBuilder.append("{\\colortbl ;\\red255\\green0\\blue0;\\red0\\green128\\blue255;}\r\n");
+		rtfBuilder.append("\\f0 A {\\f1 \\'cf\\'f0}{\\f2\\cf2 \\'82\\'a0}{\\f3\\cf1 C}\\par\r\n");
+		rtfBuilder.append("}\r\n");
+		String rtfString = rtfBuilder.toString();
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+		String expectedString = new RtfHtml().format(reader.root);
+
+		RtfHeaderCache cache = new RtfHeaderCache(10);
+		for (int i = 0; i < 2; i++) {
+			RtfHtml formatter = new RtfHtml();
+			formatter.setHeaderCache(cache);
+			Assert.assertEquals(expectedString, formatter.format(reader.root));
+
+			StringBuilder htmlBuilder = new StringBuilder();
+			reader.parse(rtfString, formatter.handler(htmlBuilder, false));
+			Assert.assertEquals(expectedString, htmlBuilder.toString());
+		}
+		// Both tables are extracted once and found three times.
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(6, cache.getHits());
+	}
+
+	@Test
+	public void testHeaderCacheEviction() throws RtfParseException {
+		RtfHeaderCache cache = new RtfHeaderCache(2);
+		RtfHtml formatter = new RtfHtml();
+		formatter.setHeaderCache(cache);
+		String[] fonts = { "Arial", "Calibri", "Verdana", "Verdana", "Calibri", "Arial" };
+		for (String font : fonts) {
+			String rtfString = "{\\rtf1{\\fonttbl{\\f0 " + font + ";}}\\f0 Text}";
+			StringBuilder htmlBuilder = new StringBuilder();
+			new RtfReader().parse(rtfString, formatter.handler(htmlBuilder, false));
+			Assert.assertTrue(htmlBuilder.toString().contains(font));
+		}
+		// Only the least recently used table is evicted.
+		Assert.assertEquals(4, cache.getMisses());
+		Assert.assertEquals(2, cache.getHits());
+	}
+}
@@ -0,0 +1,157 @@
+package org.rtf.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.rtf.RtfGroup;
+import org.rtf.RtfHandler;
+import org.rtf.RtfHtml;
+import org.rtf.RtfKeyword;
+import org.rtf.RtfParseException;
+import org.rtf.RtfPictureSink;
+import org.rtf.RtfReader;
+
+public class HandlerTest {
+	@Test
+	public void testOnePassEqualsTree() throws RtfParseException {
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append("{\\rtf1\\ansi\\ansicpg1252\\deff0\\nouicompat\\deflang1031");
+		rtfBuilder.append("{\\fonttbl{\\f0\\fnil\\fcharset0 Calibri;}{\\f1\\fswiss Arial;}}\r\n");
+		rtfBuilder.append("{\\colortbl ;\\red143\\green176\\blue140;\\red0\\green0\\blue255;}\r\n");
+		rtfBuilder.append("{\\*\\generator Riched20 6.3.9600}{\\info{\\title Test}}\\viewkind4\\uc1 \r\n");
+		rtfBuilder.append("\\pard\\sa200\\sl276\\slmult1\\cf1\\f0\\fs22\\lang7 Hello {\\b\\f1 bold \\{World\\}}");
+		rtfBuilder.append("{\\pict\\pngblip 89504e47}\\cf2\\i Schr\\'f6er\\endash\\~\\u8364?\\par\r\n");
+		rtfBuilder.append("{{\\ul nested} groups}\\line\\sub sub\\nosupersub\\par\r\n");
+		rtfBuilder.append("}\r\n");
+		String rtfString = rtfBuilder.toString();
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+		String expectedString = new RtfHtml().format(reader.root, true);
+
+		StringBuilder htmlBuilder = new StringBuilder();
+		new RtfReader().parse(rtfString, new RtfHtml().handler(htmlBuilder, true));
+
+		Assert.assertEquals(expectedString, htmlBuilder.toString());
+	}
+
+	@Test
+	public void testEvents() throws RtfParseException {
+		Assert.assertEquals("[{\\rtf1{\\*0\\x1Hi}\\'228}]", events("{\\rtf1{\\*\\x Hi}\\'e4}"));
+	}
+
+	@Test
+	public void testDataIsSkipped() throws RtfParseException {
+		String rtf = "{\\rtf1{\\pict\\pngblip\\picw2 8950{4e}47}{\\*\\objdata 0105}\\bin3 a}b Text}";
+
+		Assert.assertEquals("[{\\rtf1{\\pict1\\pngblip1\\picw2<pict27,10>}{\\*0\\objdata1<objdata50,4>}"
+				+ "\\bin3<bin61,3> Text}]", events(rtf));
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtf);
+		RtfGroup pict = (RtfGroup) reader.root.children.get(1);
+		Assert.assertEquals(3, pict.children.size());
+		Assert.assertEquals(27, pict.dataOffset);
+		Assert.assertEquals(10, pict.dataLength);
+		Assert.assertEquals("8950{4e}47", rtf.substring(27, 37));
+	}
+
+	@Test
+	public void testInlinePicture() throws RtfParseException {
+		String rtf = "{\\rtf1 A{\\*\\shppict{\\pict\\pngblip\\picwgoal300\\pichgoal150 89504e47\r\n0d0a}}"
+				+ "{\\nonshppict{\\pict\\wmetafile8 0102}}B}";
+		RtfHtml formatter = new RtfHtml();
+		formatter.setInlinePictures(true);
+		StringBuilder htmlBuilder = new StringBuilder();
+		new RtfReader().parse(rtf, formatter.handler(htmlBuilder, false));
+
+		Assert.assertTrue(htmlBuilder.toString(), htmlBuilder.toString()
+				.contains("A<img width=\"20\" height=\"10\" src=\"data:image/png;base64,iVBORw0K\">B"));
+		Assert.assertFalse(htmlBuilder.toString().contains("wmetafile"));
+	}
+
+	@Test
+	public void testPictureSink() throws RtfParseException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		RtfHtml formatter = new RtfHtml();
+		formatter.setPictureSink(new RtfPictureSink() {
+			@Override
+			public OutputStream open(int index, String type) {
+				return bytes;
+			}
+
+			@Override
+			public String getSource(int index, String type) {
+				return "img" + index + "?a&b";
+			}
+		});
+		StringBuilder htmlBuilder = new StringBuilder();
+		new RtfReader().parse("{\\rtf1 {\\pict\\jpegblip ffd8FFe0}}", formatter.handler(htmlBuilder, false));
+
+		Assert.assertTrue(htmlBuilder.toString(), htmlBuilder.toString().contains("<img src=\"img0?a&amp;b\">"));
+		Assert.assertArrayEquals(new byte[] { (byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0 }, bytes.toByteArray());
+	}
+
+	private String events(String rtf) throws RtfParseException {
+		final StringBuilder events = new StringBuilder();
+		RtfHandler handler = new RtfHandler() {
+			@Override
+			public void startDocument() {
+				events.append("[");
+			}
+
+			@Override
+			public void endDocument() {
+				events.append("]");
+			}
+
+			@Override
+			public void startGroup() {
+				events.append("{");
+			}
+
+			@Override
+			public void endGroup() {
+				events.append("}");
+			}
+
+			@Override
+			public void controlWord(RtfKeyword keyword, String word, int parameter) {
+				events.append("\\").append(word).append(parameter);
+			}
+
+			@Override
+			public void controlSymbol(char symbol, int parameter) {
+				events.append("\\").append(symbol).append(parameter);
+			}
+
+			@Override
+			public void text(char[] buffer, int offset, int length) {
+				events.append(buffer, offset, length);
+			}
+
+			@Override
+			public void data(RtfKeyword destination, long offset, long length) {
+				events.append("<").append(destination.word).append(offset).append(",").append(length).append(">");
+			}
+		};
+
+		new RtfReader().parse(rtf, handler);
+		return events.toString();
+	}
+
+	@Test
+	public void testTextOutsideGroup() {
+		Throwable t = null;
+
+		try {
+			new RtfReader().parse("{\\rtf1 Hello} World", new RtfHtml().handler(new StringBuilder(), false));
+		} catch (Exception e) {
+			t = e;
+		}
+
+		Assert.assertTrue(t instanceof RtfParseException);
+	}
+}
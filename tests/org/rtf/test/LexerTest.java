@@ -0,0 +1,178 @@
+package org.rtf.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.rtf.RtfKeyword;
+import org.rtf.RtfLexer;
+import org.rtf.RtfParseException;
+import org.rtf.RtfReader;
+import org.rtf.RtfText;
+
+public class LexerTest {
+	@Test
+	public void testTokens() throws IOException {
+		char[] rtf = "{\\rtf1\\b0 Hello\\'f6\\~\\fi-360 World}".toCharArray();
+		RtfLexer lexer = new RtfLexer(rtf, 0, rtf.length);
+
+		Assert.assertEquals(RtfLexer.GROUP_START, lexer.next());
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertEquals("rtf", lexer.getWord());
+		Assert.assertEquals(1, lexer.getParameter());
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertEquals("b", lexer.getWord());
+		Assert.assertEquals(0, lexer.getParameter());
+		Assert.assertEquals(RtfLexer.TEXT, lexer.next());
+		Assert.assertEquals("Hello", lexer.getText());
+		Assert.assertSame(rtf, lexer.getBuffer());
+		Assert.assertEquals(RtfLexer.CONTROL_SYMBOL, lexer.next());
+		Assert.assertEquals('\'', lexer.getSymbol());
+		Assert.assertEquals(0xf6, lexer.getParameter());
+		Assert.assertEquals(RtfLexer.CONTROL_SYMBOL, lexer.next());
+		Assert.assertEquals('~', lexer.getSymbol());
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertEquals("fi", lexer.getWord());
+		Assert.assertEquals(-360, lexer.getParameter());
+		Assert.assertEquals(RtfLexer.TEXT, lexer.next());
+		Assert.assertEquals("World", lexer.getText());
+		Assert.assertEquals(RtfLexer.GROUP_END, lexer.next());
+		Assert.assertEquals(RtfLexer.END, lexer.next());
+	}
+
+	@Test
+	public void testKeywords() throws IOException {
+		for (RtfKeyword keyword : RtfKeyword.values()) {
+			if (keyword != RtfKeyword.UNKNOWN) {
+				Assert.assertSame(keyword, RtfKeyword.lookup(keyword.word));
+			}
+		}
+
+		char[] rtf = "\\fs22\\foo\\foo".toCharArray();
+		RtfLexer lexer = new RtfLexer(rtf, 0, rtf.length);
+
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertSame(RtfKeyword.FS, lexer.getKeyword());
+		Assert.assertSame(RtfKeyword.FS.word, lexer.getWord());
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertSame(RtfKeyword.UNKNOWN, lexer.getKeyword());
+		String word = lexer.getWord();
+		Assert.assertEquals("foo", word);
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertSame(word, lexer.getWord());
+	}
+
+	@Test
+	public void testUnicodeReplacement() throws IOException {
+		char[] rtf = "\\u-4064 ?a\\u246\\'f6b".toCharArray();
+		RtfLexer lexer = new RtfLexer(rtf, 0, rtf.length);
+
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertEquals(61472, lexer.getParameter());
+		Assert.assertEquals(RtfLexer.TEXT, lexer.next());
+		Assert.assertEquals("a", lexer.getText());
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertEquals(246, lexer.getParameter());
+		Assert.assertEquals(RtfLexer.TEXT, lexer.next());
+		Assert.assertEquals("b", lexer.getText());
+		Assert.assertEquals(RtfLexer.END, lexer.next());
+	}
+
+	@Test
+	public void testChunkBoundaries() throws IOException {
+		String rtf = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil\\fcharset0 Calibri;}}\r\n"
+				+ "\\pard\\sa200\\sl276\\slmult1\\f0\\fs22\\lang7 Kay Schr\\'f6er\\u8364\\'80 \\{x\\}\\par\r\n}";
+		char[] chars = rtf.toCharArray();
+		RtfLexer expected = new RtfLexer(chars, 0, chars.length);
+		RtfLexer actual = new RtfLexer(new StringReader(rtf), 16);
+
+		StringBuilder expectedTokens = new StringBuilder();
+		StringBuilder actualTokens = new StringBuilder();
+		int token;
+		while ((token = expected.next()) != RtfLexer.END) {
+			appendToken(expectedTokens, expected, token);
+		}
+		while ((token = actual.next()) != RtfLexer.END) {
+			appendToken(actualTokens, actual, token);
+		}
+
+		Assert.assertEquals(expectedTokens.toString(), actualTokens.toString());
+	}
+
+	@Test
+	public void testLineBreaksAtEveryBufferSize() throws IOException {
+		String rtf = "{\\rtf1\\ansi\r\n\\f0 HelloWorl\nd, this line\r\nis wrapped\rin the\n\nmiddle\\par\r\n"
+				+ "{\\b bold\r\ntext}\r\n and an escaped \\{\r\n brace\\par\r\n}";
+		char[] chars = rtf.toCharArray();
+		RtfLexer expected = new RtfLexer(chars, 0, chars.length);
+		StringBuilder expectedTokens = new StringBuilder();
+		int token;
+		while ((token = expected.next()) != RtfLexer.END) {
+			appendToken(expectedTokens, expected, token);
+		}
+		// Line breaks of the source are not part of the text.
+		Assert.assertEquals(-1, expectedTokens.indexOf("\r"));
+		Assert.assertEquals(-1, expectedTokens.indexOf("\n"));
+		Assert.assertTrue(expectedTokens.indexOf("HelloWorld, this lineis wrappedin themiddle") >= 0);
+
+		for (int bufferSize = 16; bufferSize <= rtf.length() + 1; bufferSize++) {
+			RtfLexer actual = new RtfLexer(new StringReader(rtf), bufferSize);
+			StringBuilder actualTokens = new StringBuilder();
+			while ((token = actual.next()) != RtfLexer.END) {
+				appendToken(actualTokens, actual, token);
+			}
+			Assert.assertEquals("buffer size " + bufferSize, expectedTokens.toString(), actualTokens.toString());
+		}
+	}
+
+	@Test
+	public void testSkipGroup() throws IOException {
+		StringBuilder rtf = new StringBuilder("{\\pict\\wmetafile8 ");
+		for (int i = 0; i < 100; i++) {
+			rtf.append("0123456789abcdef");
+		}
+		rtf.append("{\\*\\x \\}}\\bin4 }{\\ 89}Hi");
+		RtfLexer lexer = new RtfLexer(new StringReader(rtf.toString()), 16);
+
+		Assert.assertEquals(RtfLexer.GROUP_START, lexer.next());
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertEquals(RtfLexer.CONTROL_WORD, lexer.next());
+		Assert.assertEquals(RtfLexer.TEXT, lexer.next());
+		Assert.assertEquals(RtfLexer.DATA, lexer.skipGroup());
+		Assert.assertEquals(18, lexer.getDataOffset());
+		Assert.assertEquals(rtf.indexOf("Hi") - 1 - 18, lexer.getDataLength());
+		Assert.assertEquals(RtfLexer.GROUP_END, lexer.next());
+		Assert.assertEquals(RtfLexer.TEXT, lexer.next());
+		Assert.assertEquals("Hi", lexer.getText());
+		Assert.assertEquals(RtfLexer.END, lexer.next());
+	}
+
+	@Test
+	public void testEscapedTextIsJoined() throws RtfParseException {
+		RtfReader reader = new RtfReader();
+		reader.parse("{\\rtf1 \\{Hello\\} \\\\ World}");
+
+		Assert.assertEquals(2, reader.root.children.size());
+		Assert.assertEquals("{Hello} \\ World", ((RtfText) reader.root.children.get(1)).text);
+	}
+
+	private void appendToken(StringBuilder tokens, RtfLexer lexer, int token) {
+		switch (token) {
+		case RtfLexer.CONTROL_WORD:
+			tokens.append('\\').append(lexer.getWord()).append(lexer.getParameter());
+			break;
+		case RtfLexer.CONTROL_SYMBOL:
+			tokens.append('\\').append(lexer.getSymbol()).append(lexer.getParameter());
+			break;
+		case RtfLexer.TEXT:
+			// Texts may be split at the buffer end, so join them.
+			tokens.append(lexer.getText());
+			return;
+		default:
+			tokens.append(token == RtfLexer.GROUP_START ? '{' : '}');
+			break;
+		}
+		tokens.append('|');
+	}
+}
@@ -1,14 +1,34 @@
 package org.rtf.test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.rtf.RtfCancellation;
+import org.rtf.RtfConverter;
+import org.rtf.RtfGroup;
 import org.rtf.RtfHtml;
+import org.rtf.RtfLimitException;
+import org.rtf.RtfLimitException.Limit;
+import org.rtf.RtfLimits;
+import org.rtf.RtfMetadata;
+import org.rtf.RtfMetadataReader;
 import org.rtf.RtfParseException;
+import org.rtf.RtfPreview;
 import org.rtf.RtfReader;
+import org.rtf.RtfTreeBuilder;
+import org.rtf.UncheckedRtfLimitException;
 
 public class ReaderTest {
 	@Test
@@ -42,6 +62,50 @@ public class ReaderTest {
 		Assert.assertEquals(expectedString, htmlString);
 	}
 
+	@Test
+	public void testHtmlPageToWriter() throws IOException, RtfParseException {
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append(
+				"{\\rtf1\\ansi\\ansicpg1252\\deff0\\nouicompat\\deflang1031{\\fonttbl{\\f0\\fnil\\fcharset0 Calibri;}}\r\n");
+		rtfBuilder.append("{\\*\\generator Riched20 6.3.9600}\\viewkind4\\uc1 \r\n");
+		rtfBuilder.append("\\pard\\sa200\\sl276\\slmult1\\f0\\fs22\\lang7 Hello World\\par\r\n");
+		rtfBuilder.append("}\r\n");
+		String rtfString = rtfBuilder.toString();
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+
+		RtfHtml formatter = new RtfHtml();
+		StringWriter writer = new StringWriter();
+		formatter.format(reader.root, writer, true);
+
+		Assert.assertEquals(formatter.format(reader.root, true), writer.toString());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testWrapTags() throws IOException, RtfParseException {
+		String rtfString = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}}\\f0\\fs22 Hello {\\b World}\\par}";
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+
+		// Subclasses that wrapped the output themselves get the same page.
+		RtfHtml formatter = new RtfHtml() {
+			@Override
+			protected void formatGroup(RtfGroup group) {
+				super.formatGroup(group);
+				wrapTags();
+			}
+		};
+		Assert.assertEquals(new RtfHtml().format(reader.root, true), formatter.format(reader.root));
+		try {
+			formatter.format(reader.root, new StringWriter(), false);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// Other sinks cannot take back what has been written.
+		}
+	}
+
 	@Test
 	public void testFormatDump() throws IOException, RtfParseException {
 		StringBuilder dumpBuilder = new StringBuilder();
@@ -156,6 +220,181 @@ public class ReaderTest {
 		}
 	}
 
+	@Test
+	public void testMappedFile() throws IOException, RtfParseException {
+		String rtfString = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}}\\f0 Hello \u00e4 World\\'f6\\par\r\n}";
+		Path path = Files.createTempFile("test", ".rtf");
+		// A mapped file cannot be deleted on every platform right away.
+		path.toFile().deleteOnExit();
+		Files.write(path, rtfString.getBytes(StandardCharsets.ISO_8859_1));
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+		String expectedString = new RtfHtml().format(reader.root, true);
+
+		reader.parse(path);
+		Assert.assertEquals(expectedString, new RtfHtml().format(reader.root, true));
+		reader.parse(path.toFile());
+		Assert.assertEquals(expectedString, new RtfHtml().format(reader.root, true));
+	}
+
+	@Test
+	public void testDeepNesting() throws RtfParseException {
+		String expectedString = "<p><span style=\"font-family:;\">x";
+
+		// Nesting a million groups deep neither overflows the stack nor
+		// takes more than linear time.
+		long[] millis = new long[2];
+		int[] depths = { 100000, 1000000 };
+		for (int k = 0; k < depths.length; k++) {
+			String rtfString = nest(depths[k]);
+			long start = System.nanoTime();
+			StringBuilder html = new StringBuilder();
+			new RtfReader().parse(rtfString, new RtfHtml().handler(html, false));
+			millis[k] = (System.nanoTime() - start) / 1000000;
+			Assert.assertEquals(expectedString, html.toString());
+		}
+		Assert.assertTrue(millis[1] < 50 * millis[0] + 1000);
+
+		RtfReader reader = new RtfReader();
+		reader.parse(nest(1000000));
+		Assert.assertEquals(expectedString, new RtfHtml().format(reader.root));
+	}
+
+	@Test
+	public void testLimits() throws RtfParseException {
+		String rtfString = nest(100);
+		Assert.assertEquals(Limit.DEPTH, limit(rtfString, RtfLimits.builder().maxDepth(100)));
+		Assert.assertEquals(Limit.NODES, limit(rtfString, RtfLimits.builder().maxNodes(150)));
+		Assert.assertEquals(Limit.INPUT_SIZE, limit(rtfString, RtfLimits.builder().maxInputSize(500)));
+		Assert.assertEquals(Limit.OUTPUT_SIZE, limit(rtfString, RtfLimits.builder().maxOutputSize(20)));
+		Assert.assertEquals(Limit.TIMEOUT, limit(nest(1000000), RtfLimits.builder().timeout(1)));
+		// Timeouts too large for the clock do not expire at once.
+		Assert.assertNull(limit(rtfString, RtfLimits.builder().timeout(Long.MAX_VALUE)));
+		Assert.assertNull(limit(rtfString, RtfLimits.builder().maxDepth(101).maxNodes(2000)));
+
+		// The input size is also checked while reading from a stream.
+		RtfReader reader = new RtfReader();
+		reader.setLimits(RtfLimits.builder().maxInputSize(10000).build());
+		try {
+			reader.parse(new StringReader(nest(100000)));
+			Assert.fail();
+		} catch (RtfLimitException e) {
+			Assert.assertEquals(Limit.INPUT_SIZE, e.getLimit());
+		}
+
+		// The formatter also checks its limits on its own.
+		reader = new RtfReader();
+		reader.parse(rtfString);
+		RtfHtml formatter = new RtfHtml();
+		formatter.setLimits(RtfLimits.builder().maxOutputSize(20).build());
+		try {
+			formatter.format(reader.root);
+			Assert.fail();
+		} catch (UncheckedRtfLimitException e) {
+			Assert.assertEquals(Limit.OUTPUT_SIZE, e.getCause().getLimit());
+		}
+	}
+
+	@Test
+	public void testLimitsWhileSkipping() {
+		// Endless picture data and binary data are skipped without tokens.
+		for (String rtfString : new String[] { "{\\rtf1 {\\pict\\pngblip ", "{\\rtf1 {\\bin2000000000 " }) {
+			EndlessReader rtfReader = new EndlessReader(rtfString);
+			RtfReader reader = new RtfReader();
+			reader.setLimits(RtfLimits.builder().maxInputSize(1000000).build());
+			try {
+				reader.parse(rtfReader, new RtfTreeBuilder());
+				Assert.fail();
+			} catch (RtfParseException e) {
+				Assert.assertEquals(Limit.INPUT_SIZE, ((RtfLimitException) e).getLimit());
+			}
+			Assert.assertTrue(rtfReader.read < 1100000);
+
+			rtfReader = new EndlessReader(rtfString);
+			reader.setLimits(RtfLimits.builder().timeout(50).build());
+			try {
+				reader.parse(rtfReader, new RtfTreeBuilder());
+				Assert.fail();
+			} catch (RtfParseException e) {
+				Assert.assertEquals(Limit.TIMEOUT, ((RtfLimitException) e).getLimit());
+			}
+
+			RtfCancellation cancellation = new RtfCancellation();
+			cancellation.cancel();
+			reader.setLimits(RtfLimits.NONE);
+			reader.setCancellation(cancellation);
+			try {
+				reader.parse(new EndlessReader(rtfString), new RtfTreeBuilder());
+				Assert.fail();
+			} catch (RtfParseException e) {
+				Assert.assertEquals(Limit.CANCELLED, ((RtfLimitException) e).getLimit());
+			}
+		}
+	}
+
+	@Test
+	public void testCancellation() {
+		RtfCancellation cancellation = new RtfCancellation();
+		cancellation.cancel();
+		RtfConverter converter = RtfConverter.builder().build();
+		try {
+			converter.convert(nest(10000), cancellation);
+			Assert.fail();
+		} catch (RtfParseException e) {
+			Assert.assertEquals(Limit.CANCELLED, ((RtfLimitException) e).getLimit());
+		}
+		char[] rtf = nest(10000).toCharArray();
+		try {
+			converter.convert(rtf, 0, rtf.length, cancellation);
+			Assert.fail();
+		} catch (RtfParseException e) {
+			Assert.assertEquals(Limit.CANCELLED, ((RtfLimitException) e).getLimit());
+		}
+		StringBuilder out = new StringBuilder();
+		try {
+			converter.convert(new ByteArrayInputStream(nest(10000).getBytes(StandardCharsets.US_ASCII)), out,
+					cancellation);
+			Assert.fail();
+		} catch (RtfParseException e) {
+			Assert.assertEquals(Limit.CANCELLED, ((RtfLimitException) e).getLimit());
+		}
+		try {
+			converter.preview(nest(10000), RtfPreview.builder().maxCharacters(1).build(), cancellation);
+			Assert.fail();
+		} catch (RtfParseException e) {
+			Assert.assertEquals(Limit.CANCELLED, ((RtfLimitException) e).getLimit());
+		}
+		// The pooled worker of the failed conversions is still usable.
+		try {
+			Assert.assertTrue(converter.convert(rtf, 0, rtf.length).contains("x"));
+		} catch (RtfParseException e) {
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static Limit limit(String rtfString, RtfLimits.Builder limits) throws RtfParseException {
+		RtfConverter converter = RtfConverter.builder().limits(limits.build()).build();
+		try {
+			converter.convert(rtfString);
+			return null;
+		} catch (RtfLimitException e) {
+			return e.getLimit();
+		}
+	}
+
+	private static String nest(int depth) {
+		StringBuilder rtfBuilder = new StringBuilder("{\\rtf1 ");
+		for (int i = 0; i < depth; i++) {
+			rtfBuilder.append(i % 2 == 0 ? "{\\b " : "{\\b0 ");
+		}
+		rtfBuilder.append("x");
+		for (int i = 0; i < depth; i++) {
+			rtfBuilder.append('}');
+		}
+		return rtfBuilder.append('}').toString();
+	}
+
 	@Test
 	public void testParseError() {
 		String rtfString = "This text is not a valid RTF string.";
@@ -171,4 +410,75 @@ public class ReaderTest {
 		Assert.assertNotNull(t);
 		Assert.assertTrue(t instanceof RtfParseException);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testMetadata() throws RtfParseException {
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append("{\\rtf1\\ansi\\ansicpg1251\\deff1{\\fonttbl{\\f0\\fswiss\\fcharset0 Arial;}");
+		rtfBuilder.append("{\\f1\\froman{\\*\\panose 02020603050405020304} Times New Roman;}}\r\n");
+		rtfBuilder.append("{\\colortbl ;\\red255\\green0\\blue0;\\red0\\green128\\blue255;}\r\n");
+		rtfBuilder.append("{\\stylesheet{\\s0 Normal;}{\\*\\cs10 Default Paragraph Font;}}\r\n");
+		rtfBuilder.append("{\\*\\listtable{\\list{\\listlevel Level;}}}{\\*\\generator Riched20 10.0.19041}");
+		rtfBuilder.append("{\\info{\\title \\'cf\\'f0\\'e8\\'e2\\'e5\\'f2}{\\author Kay}{\\*\\company ACME}");
+		rtfBuilder.append("{\\creatim\\yr2024\\mo2\\dy29\\hr13\\min45}{\\revtim\\yr2024\\mo13\\dy1}}\r\n");
+		rtfBuilder.append("\\viewkind4\\uc1 \\pard\\f0 ");
+		for (int i = 0; i < 100000; i++) {
+			rtfBuilder.append("{\\b Body} {\\info{\\title Not the title}}\\par\r\n");
+		}
+		rtfBuilder.append("}");
+		byte[] rtf = rtfBuilder.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+		final int[] read = new int[1];
+		ByteArrayInputStream rtfStream = new ByteArrayInputStream(rtf) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				int n = super.read(b, off, len);
+				read[0] += Math.max(n, 0);
+				return n;
+			}
+		};
+		RtfMetadata metadata = new RtfMetadataReader().read(rtfStream);
+
+		Assert.assertEquals(1251, metadata.getCodePage());
+		Assert.assertEquals(1, metadata.getDefaultFont());
+		Assert.assertEquals(Arrays.asList("Arial", "Times New Roman"), metadata.getFonts());
+		Assert.assertEquals(Arrays.asList(null, "#ff0000", "#0080ff"), metadata.getColors());
+		Assert.assertEquals(Arrays.asList("Normal", "Default Paragraph Font"), metadata.getStyles());
+		Assert.assertEquals("Riched20 10.0.19041", metadata.getGenerator());
+		Assert.assertEquals("\u041f\u0440\u0438\u0432\u0435\u0442", metadata.getTitle());
+		Assert.assertEquals("Kay", metadata.getAuthor());
+		Assert.assertEquals("ACME", metadata.getCompany());
+		Assert.assertNull(metadata.getSubject());
+		Assert.assertEquals(LocalDateTime.of(2024, 2, 29, 13, 45), metadata.getCreationTime());
+		// Month 13 is invalid.
+		Assert.assertNull(metadata.getRevisionTime());
+
+		// The body is not read.
+		Assert.assertTrue(rtf.length > 3000000);
+		Assert.assertTrue(read[0] < 64 * 1024);
+	}
+
+	/**
+	 * This class provides a document whose last group never ends.
+	 */
+	private static class EndlessReader extends Reader {
+		private final String start;
+		private long read;
+
+		EndlessReader(String start) {
+			this.start = start;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			for (int i = 0; i < len; i++, read++) {
+				cbuf[off + i] = read < start.length() ? start.charAt((int) read) : 'a';
+			}
+			return len;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
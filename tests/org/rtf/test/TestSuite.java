@@ -5,7 +5,7 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 
-@Suite.SuiteClasses({ FontTest.class, ReaderTest.class, TextTest.class })
+@Suite.SuiteClasses({ BatchTest.class, CacheTest.class, ConverterTest.class, DocumentTest.class, FontTest.class, HandlerTest.class, LexerTest.class, ReaderTest.class, TextTest.class })
 
 public class TestSuite {
 }
\ No newline at end of file
@@ -1,10 +1,15 @@
 package org.rtf.test;
 
+import java.io.StringReader;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.rtf.RtfHtml;
+import org.rtf.RtfPackedState;
 import org.rtf.RtfParseException;
+import org.rtf.RtfPlainText;
 import org.rtf.RtfReader;
+import org.rtf.RtfStyleCache;
 
 public class TextTest {
 	@Test
@@ -76,7 +81,7 @@ public class TextTest {
 
 	@Test
 	public void testUnicodeCharacters() throws RtfParseException {
-		String expectedString = "<p><span style=\"font-family:'Calibri';font-size:15px;\">Kay Schr&#246;er</span></p><p>";
+		String expectedString = "<p><span style=\"font-family:'Calibri';font-size:15px;\">Kay Schr\u00f6er</span></p><p>";
 
 		StringBuilder rtfBuilder = new StringBuilder();
 		rtfBuilder.append(
@@ -95,6 +100,91 @@ public class TextTest {
 		Assert.assertEquals(expectedString, htmlString);
 	}
 
+	@Test
+	public void testCodePages() throws RtfParseException {
+		String expectedString = "<p><span style=\"font-family:'Arial';\">\u041f\u0440\u0438 &lt;&amp;&gt; </span>"
+				+ "<span style=\"font-family:'Arial CE';\">\u0105 </span>"
+				+ "<span style=\"font-family:'MS Mincho';\">\u3042\u30c6</span></p><p>";
+
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append("{\\rtf1\\ansi\\ansicpg1251\\deff0{\\fonttbl{\\f0\\fnil\\fcharset0 Arial;}");
+		rtfBuilder.append("{\\f1\\fnil\\fcharset238 Arial CE;}{\\f2\\fnil\\fcharset128 MS Mincho;}}\r\n");
+		rtfBuilder.append("\\f0 \\'cf\\'f0\\'e8 \\'3c\\'26\\'3e {\\f1 \\'b9 }{\\f2 \\'82\\'a0\\'83e}\\par\r\n");
+		rtfBuilder.append("}\r\n");
+		String rtfString = rtfBuilder.toString();
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+
+		RtfHtml formatter = new RtfHtml();
+		String htmlString = formatter.format(reader.root);
+
+		Assert.assertEquals(expectedString, htmlString);
+
+		StringBuilder htmlBuilder = new StringBuilder();
+		reader.parse(rtfString, new RtfHtml().handler(htmlBuilder, false));
+		Assert.assertEquals(expectedString, htmlBuilder.toString());
+	}
+
+	@Test
+	public void testStyleCache() throws RtfParseException {
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append("{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}{\\f1\\fswiss Arial;}}");
+		rtfBuilder.append("{\\colortbl ;\\red255\\green0\\blue0;}\r\n");
+		for (int i = 0; i < 10; i++) {
+			rtfBuilder.append("\\f0 A {\\b\\f1 B} {\\cf1\\i C}\\par\r\n");
+		}
+		rtfBuilder.append("}\r\n");
+		String rtfString = rtfBuilder.toString();
+
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+		String expectedString = new RtfHtml().format(reader.root);
+
+		RtfStyleCache cache = new RtfStyleCache(10);
+		for (int i = 0; i < 2; i++) {
+			RtfHtml formatter = new RtfHtml();
+			formatter.setStyleCache(cache);
+			Assert.assertEquals(expectedString, formatter.format(reader.root));
+		}
+	}
+
+	@Test
+	public void testStyleClasses() throws RtfParseException {
+		String rtfString = "{\\rtf1\\ansi{\\fonttbl{\\f0\\fnil Calibri;}}\\f0 A {\\b B} C {\\b D}}";
+		RtfReader reader = new RtfReader();
+		reader.parse(rtfString);
+
+		RtfHtml formatter = new RtfHtml();
+		formatter.setStyleClasses(true);
+		String expectedString = "<p><span class=\"r0\">A </span><span class=\"r1\">B</span><span class=\"r0\"> C </span><span class=\"r1\">D";
+		Assert.assertEquals(expectedString, formatter.format(reader.root));
+		Assert.assertEquals(".r0{font-family:'Calibri';}\n.r1{font-family:'Calibri';font-weight:bold;}\n",
+				formatter.getStyleSheet());
+
+		String page = formatter.format(reader.root, true);
+		Assert.assertTrue(page.contains("<style type=\"text/css\">\n      .r0{font-family:'Calibri';}\n"));
+		Assert.assertTrue(page.indexOf("</head>") < page.indexOf(expectedString));
+		Assert.assertTrue(expectedString.length() < new RtfHtml().format(reader.root).length());
+	}
+
+	@Test
+	public void testPackedStates() {
+		RtfPackedState.Table table = new RtfPackedState.Table();
+		RtfPackedState state = table.getDefault();
+		Assert.assertSame(state, state.withBold(true).withBold(false));
+		Assert.assertSame(state.withFont(2).withTextColor(1), state.withTextColor(1).withFont(2));
+		Assert.assertSame(state, state.withItalic(true).withFontSize(12).reset());
+
+		RtfPackedState packedState = state.withDnup(-5).withFontSize(100000).withSubSuper(false, true);
+		Assert.assertEquals(-5, packedState.getDnup());
+		Assert.assertEquals(Short.MAX_VALUE, packedState.getFontSize());
+		Assert.assertTrue(packedState.isSuperscript());
+		Assert.assertSame(packedState, table.get(packedState.toState()));
+		Assert.assertEquals(packedState, new RtfPackedState.Table().get(packedState.toState()));
+		Assert.assertEquals(10, table.size());
+	}
+
 	@Test
 	public void testEntities() throws RtfParseException {
 		String expectedString = "<p><span style=\"font-family:'Calibri';font-size:15px;\">Hello </span><span style=\"font-family:'Tahoma';font-size:15px;\">&ndash; &nbsp; World</span></p><p>";
@@ -116,4 +206,38 @@ public class TextTest {
 
 		Assert.assertEquals(expectedString, htmlString);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testPlainText() throws RtfParseException {
+		String expectedString = "Hello World\n\u041f\u0440\u0438 <&>\t\u0105 \u3042\u30c6\nLine\nEnd \u2014 \u20ac\u00a0{x}\n";
+
+		StringBuilder rtfBuilder = new StringBuilder();
+		rtfBuilder.append("{\\rtf1\\ansi\\ansicpg1251\\deff0{\\fonttbl{\\f0\\fnil\\fcharset0 Arial;}");
+		rtfBuilder.append("{\\f1\\fnil\\fcharset238 Arial CE;}{\\f2\\fnil\\fcharset128 MS Mincho;}}\r\n");
+		rtfBuilder.append("{\\colortbl ;\\red255\\green0\\blue0;}{\\stylesheet{\\s0 Normal;}}");
+		rtfBuilder.append("{\\info{\\title Title}{\\author Kay}}{\\*\\generator Writer;}\r\n");
+		rtfBuilder.append("\\f0\\b Hello {\\v hidden }World\\b0\\par\r\n");
+		rtfBuilder.append("\\'cf\\'f0\\'e8 \\'3c\\'26\\'3e\\tab{\\f1 \\'b9 }{\\f2 \\'82\\'a0\\'83e}\\par\r\n");
+		rtfBuilder.append("{\\pict\\pngblip 0102}Line\\line End \\emdash  \\u8364?\\~\\{x\\}\\v  hidden\\v0\\par\r\n");
+		rtfBuilder.append("}\r\n");
+		String rtfString = rtfBuilder.toString();
+
+		RtfPlainText extractor = new RtfPlainText();
+		Assert.assertEquals(expectedString, extractor.extract(rtfString));
+		Assert.assertEquals(expectedString, extractor.extract(rtfString));
+	}
+
+	@Test
+	public void testPlainTextWithWrappedLines() throws RtfParseException {
+		// Line breaks of the source are not part of the text.
+		RtfPlainText extractor = new RtfPlainText();
+		Assert.assertEquals("HelloWorld\n", extractor.extract("{\\rtf1\\ansi Hello\r\nWorld\\par}"));
+		Assert.assertEquals("A long line that is wrapped twice.\n",
+				extractor.extract("{\\rtf1\\ansi A long line th\nat is wrapped\r\n twice.\\par\r\n}"));
+
+		StringBuilder text = new StringBuilder();
+		new RtfReader().parse(new StringReader("{\\rtf1\\ansi\\ansicpg932{\\fonttbl{\\f0\\fcharset128 MS Mincho;}}"
+				+ "\\f0 \\'82\r\n\\'a0 Hello\r\nWorld\\par}"), extractor.handler(text));
+		Assert.assertEquals("\u3042 HelloWorld\n", text.toString());
+	}
+}